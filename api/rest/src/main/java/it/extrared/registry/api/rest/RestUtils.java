@@ -15,13 +15,75 @@
  */
 package it.extrared.registry.api.rest;
 
+import it.extrared.registry.metadata.DPPMetadataEntry;
+import jakarta.ws.rs.core.EntityTag;
 import jakarta.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.List;
 import org.jboss.resteasy.reactive.RestResponse;
 
 public class RestUtils {
 
+    /** Media type of newline delimited JSON payloads. */
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
     public static <T> RestResponse<T> respWithBodyAndStatus(Response.Status status, T body) {
         RestResponse.ResponseBuilder<T> builder = RestResponse.ResponseBuilder.create(status);
         return builder.entity(body).build();
     }
+
+    /**
+     * Build a response with the entry as body and its entity tag as ETag header.
+     *
+     * @param status the response status.
+     * @param entry the entry.
+     * @return the response.
+     */
+    public static RestResponse<DPPMetadataEntry> respWithTag(
+            Response.Status status, DPPMetadataEntry entry) {
+        RestResponse.ResponseBuilder<DPPMetadataEntry> builder =
+                RestResponse.ResponseBuilder.create(status);
+        return builder.entity(entry).tag(new EntityTag(entry.getEntityTag())).build();
+    }
+
+    /**
+     * Extract the entity tags from an If-Match header value, a comma separated list of tags or *,
+     * dropping the quotes. If-Match requires the strong comparison, which a weak tag never passes:
+     * weak tags are left out, so that a header with weak tags only matches no entry.
+     *
+     * @param header the header value, possibly null.
+     * @return the strong entity tags, [*] or null if the header is missing.
+     */
+    public static List<String> entityTags(String header) {
+        if (header == null || header.isBlank()) return null;
+        String value = header.strip();
+        if (value.equals("*")) return List.of("*");
+        List<String> tags = new ArrayList<>();
+        int i = 0;
+        while (i < value.length()) {
+            char c = value.charAt(i);
+            if (c == ',' || Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            boolean weak = value.startsWith("W/", i);
+            if (weak) i += 2;
+            int end;
+            String tag;
+            // a quoted tag may contain commas.
+            if (i < value.length() && value.charAt(i) == '"') {
+                end = value.indexOf('"', i + 1);
+                if (end < 0) end = value.length();
+                tag = value.substring(i + 1, end);
+                end++;
+            } else {
+                end = value.indexOf(',', i);
+                if (end < 0) end = value.length();
+                tag = value.substring(i, end).strip();
+            }
+            if (!weak) tags.add(tag);
+            i = end;
+        }
+        return tags;
+    }
 }
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.api.rest.admin;
+
+import io.smallrye.common.annotation.Blocking;
+import io.smallrye.mutiny.Uni;
+import it.extrared.registry.api.rest.RestUtils;
+import it.extrared.registry.metadata.BulkImportReport;
+import it.extrared.registry.metadata.index.IndexState;
+import it.extrared.registry.metadata.shard.RebalanceReport;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import java.io.InputStream;
+import java.util.List;
+import org.eclipse.microprofile.openapi.annotations.Operation;
+import org.jboss.resteasy.reactive.RestResponse;
+
+@Path("/admin/v1")
+public interface AdminResource {
+
+    @GET
+    @Path("/indexes")
+    @Operation(
+            summary = "Retrieve the state of the DPP metadata indexes",
+            description =
+                    """
+                    Retrieve the indexes managed by the registry on the DPP metadata fields: the ones required by the current
+                    JSON schema, i.e. on the registry.autocompletion-enabled-for fields and on the properties flagged with
+                    "x-searchable": true, with their status (PRESENT, MISSING, INVALID) and the no longer required ones (OBSOLETE).
+                    """)
+    Uni<RestResponse<List<IndexState>>> getIndexes();
+
+    @POST
+    @Path("/indexes/reconcile")
+    @Operation(
+            summary = "Reconcile the DPP metadata indexes",
+            description =
+                    """
+                    Create the missing or invalid indexes required by the current JSON schema and drop the obsolete ones.
+                    The response includes the state of the indexes after the reconciliation.
+                    """)
+    Uni<RestResponse<List<IndexState>>> reconcileIndexes();
+
+    @POST
+    @Path("/import")
+    @Consumes(RestUtils.APPLICATION_NDJSON)
+    @Blocking
+    @Operation(
+            summary = "Bulk import DPP metadata",
+            description =
+                    """
+                    Import DPP metadata entries provided as newline delimited JSON, one entry per line, through the datastore
+                    bulk loading facility (PostgreSQL only). Entries are validated against the current JSON schema and the
+                    valid ones are stored in a single transaction honouring the configured update strategy. DPP validation
+                    and autocompletion are not applied. The response reports the number of read, rejected, inserted and
+                    updated entries.
+                    """)
+    RestResponse<BulkImportReport> importMetadata(InputStream body);
+
+    @POST
+    @Path("/shards/rebalance")
+    @Operation(
+            summary = "Rebalance the DPP metadata shards",
+            description =
+                    """
+                    Move the DPP metadata entries stored in a shard other than the one their UPI is routed to, e.g. after
+                    datasources have been added to registry.shards. Writes should be paused while the rebalance runs. The
+                    response reports the number of scanned UPIs and of moved UPIs and entries.
+                    """)
+    Uni<RestResponse<RebalanceReport>> rebalanceShards();
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.api.rest.admin;
+
+import static it.extrared.registry.utils.CommonUtils.debug;
+
+import io.smallrye.mutiny.Uni;
+import it.extrared.registry.exceptions.InvalidOperationException;
+import it.extrared.registry.metadata.AutoCompletionCache;
+import it.extrared.registry.metadata.BulkImportReport;
+import it.extrared.registry.metadata.BulkImporter;
+import it.extrared.registry.metadata.filter.UpiFilter;
+import it.extrared.registry.metadata.index.IndexState;
+import it.extrared.registry.metadata.index.MetadataIndexManager;
+import it.extrared.registry.metadata.shard.MetadataShards;
+import it.extrared.registry.metadata.shard.RebalanceReport;
+import it.extrared.registry.metadata.shard.ShardRebalancer;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Instance;
+import jakarta.inject.Inject;
+import java.io.InputStream;
+import java.util.List;
+import org.jboss.logging.Logger;
+import org.jboss.resteasy.reactive.RestResponse;
+
+@ApplicationScoped
+public class AdminResourceImpl implements AdminResource {
+
+    @Inject MetadataIndexManager indexManager;
+
+    @Inject Instance<BulkImporter> bulkImporter;
+
+    @Inject UpiFilter upiFilter;
+
+    @Inject AutoCompletionCache autoCompletionCache;
+
+    @Inject MetadataShards shards;
+
+    @Inject ShardRebalancer rebalancer;
+
+    private static final Logger LOGGER = Logger.getLogger(AdminResourceImpl.class);
+
+    @Override
+    public Uni<RestResponse<List<IndexState>>> getIndexes() {
+        debug(LOGGER, () -> "Controller method to get the indexes state invoked");
+        return indexManager.getIndexes().map(RestResponse::ok);
+    }
+
+    @Override
+    public Uni<RestResponse<List<IndexState>>> reconcileIndexes() {
+        debug(LOGGER, () -> "Controller method to reconcile the indexes invoked");
+        return indexManager.reconcile().map(RestResponse::ok);
+    }
+
+    @Override
+    public RestResponse<BulkImportReport> importMetadata(InputStream body) {
+        debug(LOGGER, () -> "Controller method to bulk import metadata invoked");
+        if (!bulkImporter.isResolvable())
+            throw new InvalidOperationException(
+                    "Bulk import is not supported by the configured datastore");
+        if (shards.isSharded())
+            throw new InvalidOperationException(
+                    "Bulk import is not supported when DPP metadata are sharded");
+        BulkImportReport report = bulkImporter.get().importEntries(body);
+        // imported UPIs are not added one by one to the UPI filter.
+        upiFilter.rebuildInBackground();
+        autoCompletionCache.invalidateAll();
+        return RestResponse.ok(report);
+    }
+
+    @Override
+    public Uni<RestResponse<RebalanceReport>> rebalanceShards() {
+        debug(LOGGER, () -> "Controller method to rebalance the shards invoked");
+        return rebalancer.rebalance().map(RestResponse::ok);
+    }
+}
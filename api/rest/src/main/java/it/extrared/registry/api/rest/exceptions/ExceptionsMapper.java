@@ -18,9 +18,11 @@ package it.extrared.registry.api.rest.exceptions;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import it.extrared.registry.api.rest.RestUtils;
+import it.extrared.registry.exceptions.ConcurrentUpdateException;
 import it.extrared.registry.exceptions.InvalidDPPException;
 import it.extrared.registry.exceptions.InvalidOperationException;
 import it.extrared.registry.exceptions.JsonSchemaException;
+import it.extrared.registry.exceptions.PreconditionFailedException;
 import it.extrared.registry.exceptions.SchemaValidationException;
 import jakarta.enterprise.inject.spi.CDI;
 import jakarta.ws.rs.core.Response;
@@ -58,6 +60,18 @@ public class ExceptionsMapper {
                 new ErrorPayload("The operation is not valid:\n %s".formatted(e.getMessage())));
     }
 
+    @ServerExceptionMapper
+    public RestResponse<ErrorPayload> mapException(ConcurrentUpdateException e) {
+        return RestUtils.respWithBodyAndStatus(
+                Response.Status.CONFLICT, new ErrorPayload(e.getMessage()));
+    }
+
+    @ServerExceptionMapper
+    public RestResponse<ErrorPayload> mapException(PreconditionFailedException e) {
+        return RestUtils.respWithBodyAndStatus(
+                Response.Status.PRECONDITION_FAILED, new ErrorPayload(e.getMessage()));
+    }
+
     @ServerExceptionMapper
     public RestResponse<ErrorPayload> mapException(
             it.extrared.registry.exceptions.ValidatorException e) {
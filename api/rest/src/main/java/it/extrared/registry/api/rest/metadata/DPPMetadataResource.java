@@ -17,13 +17,22 @@ package it.extrared.registry.api.rest.metadata;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import io.smallrye.mutiny.Uni;
+import it.extrared.registry.api.rest.RestUtils;
+import it.extrared.registry.metadata.BatchItemResult;
 import it.extrared.registry.metadata.DPPMetadataEntry;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.GET;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
+import jakarta.ws.rs.core.MediaType;
+import java.io.InputStream;
+import java.time.LocalDateTime;
 import java.util.List;
 import org.eclipse.microprofile.openapi.annotations.Operation;
 import org.eclipse.microprofile.openapi.annotations.enums.ParameterIn;
 import org.eclipse.microprofile.openapi.annotations.parameters.Parameter;
+import org.jboss.resteasy.reactive.RestHeader;
+import org.jboss.resteasy.reactive.RestPath;
 import org.jboss.resteasy.reactive.RestQuery;
 import org.jboss.resteasy.reactive.RestResponse;
 
@@ -52,9 +61,20 @@ public interface DPPMetadataResource {
                     equal to the corresponding ones in the first found metadata with same reoId.
                     """,
             in = ParameterIn.QUERY)
+    @Parameter(
+            name = "If-Match",
+            description =
+                    """
+                    The ETag of the stored entry, as returned by a previous read or write of the same UPI: the entry is written
+                    only if it has not changed since, otherwise a PRECONDITION FAILED response is returned. A comma separated
+                    list of ETags matches any of them; weak ETags (W/"...") never match.
+                    """,
+            in = ParameterIn.HEADER)
     @POST
     Uni<RestResponse<DPPMetadataEntry>> addDPPMetadata(
-            @RestQuery List<String> autocompleteBy, JsonNode jsonNode);
+            @RestQuery List<String> autocompleteBy,
+            @RestHeader("If-Match") String ifMatch,
+            JsonNode jsonNode);
 
     @Operation(
             summary = "Add DPP metadata",
@@ -78,8 +98,65 @@ public interface DPPMetadataResource {
                     equal to the corresponding ones in the first found metadata with same reoId.
                     """,
             in = ParameterIn.QUERY)
+    @Parameter(
+            name = "If-Match",
+            description =
+                    """
+                    The ETag of the stored entry, as returned by a previous read or write of the same UPI: the entry is written
+                    only if it has not changed since, otherwise a PRECONDITION FAILED response is returned. A comma separated
+                    list of ETags matches any of them; weak ETags (W/"...") never match.
+                    """,
+            in = ParameterIn.HEADER)
     @Path("/registerDPP")
     @POST
     Uni<RestResponse<DPPMetadataEntry>> registerDPP(
-            @RestQuery List<String> autocompleteBy, JsonNode jsonNode);
+            @RestQuery List<String> autocompleteBy,
+            @RestHeader("If-Match") String ifMatch,
+            JsonNode jsonNode);
+
+    @Operation(
+            summary = "Add DPP metadata in batch",
+            description =
+                    """
+                    Add or updates several DPP metadata entries, provided either as a JSON array or as newline delimited JSON
+                    (Content-Type application/x-ndjson), one entry per line. Each entry is validated and persisted as done by
+                    the single entry endpoint, except that autocompletion is not applied. Entries with the same UPI are applied
+                    in the order they appear. A failing entry does not abort the batch: the response lists, in input order,
+                    the outcome of each entry, i.e. its registry id or the reason of its failure. The payload is parsed as a
+                    stream and the entries are checked against the JSON schema while being parsed, so that an invalid entry
+                    is rejected without being read in full.
+                    """)
+    @Path("/batch")
+    @POST
+    @Consumes({MediaType.APPLICATION_JSON, RestUtils.APPLICATION_NDJSON})
+    Uni<RestResponse<List<BatchItemResult>>> addDPPMetadataBatch(
+            @RestHeader("Content-Type") String contentType, InputStream body);
+
+    @Operation(
+            summary = "Get DPP metadata",
+            description =
+                    """
+                    Retrieve the current DPP metadata entry of a UPI or, when asOf is provided, the entry that was current
+                    at that time, with its ETag. A NOT FOUND response is returned if there is no such entry.
+                    """)
+    @Parameter(
+            name = "asOf",
+            description =
+                    "A local date time, e.g. 2025-01-31T12:00:00, at which the entry was current.",
+            in = ParameterIn.QUERY)
+    @Path("/{upi}")
+    @GET
+    Uni<RestResponse<DPPMetadataEntry>> getDPPMetadata(
+            @RestPath String upi, @RestQuery LocalDateTime asOf);
+
+    @Operation(
+            summary = "Get the versions of DPP metadata",
+            description =
+                    """
+                    Retrieve every stored version of the DPP metadata of a UPI, the most recent first. Previous versions
+                    are kept only with the APPEND_WITH_NEW_ID update strategy.
+                    """)
+    @Path("/{upi}/versions")
+    @GET
+    Uni<RestResponse<List<DPPMetadataEntry>>> getDPPMetadataVersions(@RestPath String upi);
 }
@@ -18,13 +18,27 @@ package it.extrared.registry.api.rest.metadata;
 import static it.extrared.registry.utils.CommonUtils.debug;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
+import it.extrared.registry.MetadataRegistryConfig;
 import it.extrared.registry.api.rest.RestUtils;
+import it.extrared.registry.exceptions.InvalidOperationException;
+import it.extrared.registry.jsonschema.Schema;
+import it.extrared.registry.jsonschema.SchemaCache;
+import it.extrared.registry.metadata.BatchItemResult;
 import it.extrared.registry.metadata.DPPMetadataEntry;
 import it.extrared.registry.metadata.DPPMetadataService;
+import it.extrared.registry.metadata.MetadataStreamReader;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.core.Response;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import org.jboss.logging.Logger;
 import org.jboss.resteasy.reactive.RestResponse;
@@ -34,28 +48,134 @@ public class DPPMetadataResourceImpl implements DPPMetadataResource {
 
     @Inject DPPMetadataService service;
 
+    @Inject MetadataRegistryConfig config;
+
+    @Inject ObjectMapper objectMapper;
+
+    @Inject SchemaCache schemaCache;
+
     private static final Logger LOGGER = Logger.getLogger(DPPMetadataResourceImpl.class);
 
     @Override
     public Uni<RestResponse<DPPMetadataEntry>> addDPPMetadata(
-            List<String> autocompleteBy, JsonNode jsonNode) {
-        return addDPPMetadataInternal(autocompleteBy, jsonNode);
+            List<String> autocompleteBy, String ifMatch, JsonNode jsonNode) {
+        return addDPPMetadataInternal(autocompleteBy, ifMatch, jsonNode);
     }
 
     @Override
     public Uni<RestResponse<DPPMetadataEntry>> registerDPP(
-            List<String> autocompleteBy, JsonNode jsonNode) {
-        return addDPPMetadataInternal(autocompleteBy, jsonNode);
+            List<String> autocompleteBy, String ifMatch, JsonNode jsonNode) {
+        return addDPPMetadataInternal(autocompleteBy, ifMatch, jsonNode);
     }
 
     private Uni<RestResponse<DPPMetadataEntry>> addDPPMetadataInternal(
-            List<String> autocompleteBy, JsonNode jsonNode) {
+            List<String> autocompleteBy, String ifMatch, JsonNode jsonNode) {
         debug(
                 LOGGER,
                 () ->
                         "Controller method to add new DPP metadata invoked with autocomplete by %s and body \n%s"
                                 .formatted(autocompleteBy, jsonNode));
-        return service.saveOrUpdate(jsonNode, autocompleteBy)
-                .map(m -> RestUtils.respWithBodyAndStatus(Response.Status.CREATED, m));
+        return service.saveOrUpdate(jsonNode, autocompleteBy, RestUtils.entityTags(ifMatch))
+                .map(m -> RestUtils.respWithTag(Response.Status.CREATED, m));
+    }
+
+    @Override
+    public Uni<RestResponse<DPPMetadataEntry>> getDPPMetadata(String upi, LocalDateTime asOf) {
+        debug(
+                LOGGER,
+                () ->
+                        "Controller method to get DPP metadata invoked with upi %s as of %s"
+                                .formatted(upi, asOf));
+        return service.findByUpi(upi, asOf)
+                .map(
+                        m ->
+                                m != null
+                                        ? RestUtils.respWithTag(Response.Status.OK, m)
+                                        : RestResponse.notFound());
+    }
+
+    @Override
+    public Uni<RestResponse<List<DPPMetadataEntry>>> getDPPMetadataVersions(String upi) {
+        debug(
+                LOGGER,
+                () ->
+                        "Controller method to get DPP metadata versions invoked with upi %s"
+                                .formatted(upi));
+        return service.findVersions(upi).map(RestResponse::ok);
+    }
+
+    @Override
+    public Uni<RestResponse<List<BatchItemResult>>> addDPPMetadataBatch(
+            String contentType, InputStream body) {
+        debug(
+                LOGGER,
+                () ->
+                        "Controller method to add DPP metadata in batch invoked with content type %s"
+                                .formatted(contentType));
+        // the body is parsed on a worker thread, since reading it may block.
+        return schemaCache
+                .get()
+                .emitOn(Infrastructure.getDefaultWorkerPool())
+                .map(schema -> readBatch(schema, contentType, body))
+                .flatMap(
+                        batch ->
+                                service.saveOrUpdateAll(batch.items())
+                                        .map(results -> RestResponse.ok(batch.merge(results))));
+    }
+
+    private ParsedBatch readBatch(Schema schema, String contentType, InputStream body) {
+        ParsedBatch batch =
+                new ParsedBatch(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        MetadataStreamReader reader =
+                new MetadataStreamReader(objectMapper, schema, config.upiFieldName());
+        MetadataStreamReader.DocumentHandler handler =
+                d -> {
+                    int index = batch.size();
+                    if (index == config.batchMaxItems())
+                        throw new InvalidOperationException(
+                                "A batch can contain at most %s items"
+                                        .formatted(config.batchMaxItems()));
+                    if (d.isValid()) {
+                        batch.positions().add(index);
+                        batch.items().add(d.metadata());
+                    } else {
+                        BatchItemResult rejected =
+                                new BatchItemResult(index, null, BatchItemResult.Status.FAILED);
+                        rejected.setError(d.error());
+                        batch.rejected().add(rejected);
+                    }
+                };
+        try {
+            if (contentType != null && contentType.startsWith(RestUtils.APPLICATION_NDJSON))
+                reader.readNdjson(body, handler);
+            else reader.readArray(body, handler);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return batch;
+    }
+
+    /**
+     * The documents of a batch accepted while parsing, with their position in the batch, and the
+     * results of the rejected ones.
+     */
+    private record ParsedBatch(
+            List<JsonNode> items, List<Integer> positions, List<BatchItemResult> rejected) {
+
+        int size() {
+            return items.size() + rejected.size();
+        }
+
+        // the results of the accepted documents are indexed by their position among them.
+        List<BatchItemResult> merge(List<BatchItemResult> results) {
+            List<BatchItemResult> merged = new ArrayList<>(results.size() + rejected.size());
+            for (BatchItemResult r : results) {
+                r.setIndex(positions.get(r.getIndex()));
+                merged.add(r);
+            }
+            merged.addAll(rejected);
+            merged.sort(Comparator.comparingInt(BatchItemResult::getIndex));
+            return merged;
+        }
     }
 }
@@ -21,6 +21,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import io.smallrye.mutiny.Uni;
 import it.extrared.registry.jsonschema.JsonSchemaService;
 import it.extrared.registry.jsonschema.SchemaCache;
+import it.extrared.registry.metadata.index.MetadataIndexManager;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import org.jboss.logging.Logger;
@@ -30,6 +31,7 @@ import org.jboss.resteasy.reactive.RestResponse;
 public class SchemaResourceImpl implements SchemaResource {
     @Inject JsonSchemaService service;
     @Inject SchemaCache schemaCache;
+    @Inject MetadataIndexManager indexManager;
 
     private static final Logger LOGGER = Logger.getLogger(SchemaResourceImpl.class);
 
@@ -41,7 +43,8 @@ public class SchemaResourceImpl implements SchemaResource {
                         "Controller method to add a new JSON schema invoked with body \n%s"
                                 .formatted(node));
         return service.addSchema(node)
-                .invoke(r -> schemaCache.invalidate())
+                .call(r -> schemaCache.reload())
+                .invoke(r -> indexManager.reconcileInBackground())
                 .map(n -> RestResponse.status(201));
     }
 
@@ -55,6 +58,7 @@ public class SchemaResourceImpl implements SchemaResource {
     public Uni<RestResponse<Void>> removeCurrent() {
         debug(LOGGER, () -> "Controller method to remove current JSON schema invoked");
         Uni<RestResponse<Void>> res = service.removeLastSchema().map(v -> RestResponse.noContent());
-        return res.invoke(r -> schemaCache.invalidate());
+        return res.call(r -> schemaCache.reload())
+                .invoke(r -> indexManager.reconcileInBackground());
     }
 }
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.api.rest;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.is;
+
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+public class AdminResourceTest {
+
+    @Test
+    public void testReconcileAndGetIndexes() {
+        given().when()
+                .post("/admin/v1/indexes/reconcile")
+                .then()
+                .statusCode(200)
+                .body("field", hasItems("commodityCode", "dataCarrierTypes"))
+                .body("status", everyItem(is("PRESENT")));
+        given().when()
+                .get("/admin/v1/indexes")
+                .then()
+                .statusCode(200)
+                .body("field", hasItems("commodityCode", "dataCarrierTypes"))
+                .body("status", everyItem(is("PRESENT")));
+    }
+}
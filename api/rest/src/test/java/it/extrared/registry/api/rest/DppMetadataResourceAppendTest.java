@@ -128,4 +128,39 @@ public class DppMetadataResourceAppendTest {
         assertEquals("233367221", metadata.getMetadata().get("commodityCode").asText());
         assertNotEquals(registryId, metadata.getRegistryId());
     }
+
+    @Test
+    public void testGetDppMetadataVersions() {
+        for (String body : List.of(METADATA_2, METADATA_UPD_2))
+            given().when()
+                    .body(body)
+                    .contentType(ContentType.JSON)
+                    .post("/metadata/v1")
+                    .then()
+                    .statusCode(201);
+        DPPMetadataEntry[] versions =
+                given().when()
+                        .get("/metadata/v1/555667/versions")
+                        .then()
+                        .statusCode(200)
+                        .extract()
+                        .body()
+                        .as(DPPMetadataEntry[].class);
+        assertEquals(2, versions.length);
+        assertEquals("233367221", versions[0].getMetadata().get("commodityCode").asText());
+        DPPMetadataEntry current =
+                given().when()
+                        .get("/metadata/v1/555667")
+                        .then()
+                        .statusCode(200)
+                        .extract()
+                        .body()
+                        .as(DPPMetadataEntry.class);
+        assertEquals(versions[0].getRegistryId(), current.getRegistryId());
+        given().when()
+                .queryParam("asOf", "2000-01-01T00:00:00")
+                .get("/metadata/v1/555667")
+                .then()
+                .statusCode(404);
+    }
 }
@@ -21,6 +21,7 @@ import static org.junit.jupiter.api.Assertions.*;
 import com.fasterxml.jackson.databind.JsonNode;
 import io.quarkus.test.junit.QuarkusTest;
 import io.restassured.http.ContentType;
+import it.extrared.registry.metadata.BatchItemResult;
 import it.extrared.registry.metadata.DPPMetadataEntry;
 import java.util.List;
 import org.junit.jupiter.api.Test;
@@ -65,6 +66,15 @@ public class DppMetadataResourceTest {
               }
             """;
 
+    private static final String METADATA_4 =
+            """
+            {
+                "reoId":"12345",
+                "upi":"77777",
+                "commodityCode":"122267310"
+              }
+            """;
+
     @Test
     public void testAddDppMetadataAndUpdate() {
         DPPMetadataEntry metadata =
@@ -124,4 +134,89 @@ public class DppMetadataResourceTest {
         assertEquals("122267310", metadata.getMetadata().get("commodityCode").asText());
         assertEquals(carriers, metadata.getMetadata().get("dataCarrierTypes"));
     }
+
+    @Test
+    public void testAddDppMetadataBatch() {
+        String ndjson =
+                """
+                {"reoId":"777","upi":"7771","commodityCode":"122267310"}
+                {"reoId":"777","upi":"7772","commodityCode":"invalid"}
+                not json
+                {"reoId":"777","upi":"7771","dataCarrierTypes":["RFID"]}
+                """;
+        List<BatchItemResult> results =
+                given().when()
+                        .body(ndjson)
+                        .contentType("application/x-ndjson")
+                        .post("/metadata/v1/batch")
+                        .then()
+                        .statusCode(200)
+                        .extract()
+                        .body()
+                        .jsonPath()
+                        .getList(".", BatchItemResult.class);
+        assertEquals(4, results.size());
+        assertEquals(BatchItemResult.Status.CREATED, results.get(0).getStatus());
+        assertEquals(BatchItemResult.Status.FAILED, results.get(1).getStatus());
+        assertEquals(BatchItemResult.Status.FAILED, results.get(2).getStatus());
+        assertEquals(results.get(0).getRegistryId(), results.get(3).getRegistryId());
+        results =
+                given().when()
+                        .body("[{\"reoId\":\"777\",\"upi\":\"7771\"}]")
+                        .contentType(ContentType.JSON)
+                        .post("/metadata/v1/batch")
+                        .then()
+                        .statusCode(200)
+                        .extract()
+                        .body()
+                        .jsonPath()
+                        .getList(".", BatchItemResult.class);
+        assertEquals(BatchItemResult.Status.UPDATED, results.getFirst().getStatus());
+    }
+
+    @Test
+    public void testIfMatch() {
+        String etag =
+                given().when()
+                        .body(METADATA_4)
+                        .contentType(ContentType.JSON)
+                        .post("/metadata/v1")
+                        .then()
+                        .statusCode(201)
+                        .extract()
+                        .header("ETag");
+        assertNotNull(etag);
+        String updated =
+                given().when()
+                        .header("If-Match", etag)
+                        .body(METADATA_4)
+                        .contentType(ContentType.JSON)
+                        .post("/metadata/v1")
+                        .then()
+                        .statusCode(201)
+                        .extract()
+                        .header("ETag");
+        assertNotEquals(etag, updated);
+        given().when()
+                .header("If-Match", etag)
+                .body(METADATA_4)
+                .contentType(ContentType.JSON)
+                .post("/metadata/v1")
+                .then()
+                .statusCode(412);
+        given().when()
+                .header("If-Match", "W/" + updated)
+                .body(METADATA_4)
+                .contentType(ContentType.JSON)
+                .post("/metadata/v1")
+                .then()
+                .statusCode(412);
+        given().when()
+                .header("If-Match", etag + ", " + updated)
+                .body(METADATA_4)
+                .contentType(ContentType.JSON)
+                .post("/metadata/v1")
+                .then()
+                .statusCode(201);
+    }
 }
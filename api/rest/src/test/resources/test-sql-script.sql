@@ -9,6 +9,15 @@ modified_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
 metadata JSONB NOT NULL
 );
 
+ALTER TABLE dpp_metadata
+ADD COLUMN IF NOT EXISTS upi TEXT GENERATED ALWAYS AS (metadata ->> 'upi') STORED;
+
+CREATE INDEX IF NOT EXISTS dpp_metadata_upi_created_at_idx ON dpp_metadata (upi, created_at DESC);
+
+ALTER TABLE dpp_metadata ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+
+ALTER TABLE dpp_metadata ADD COLUMN IF NOT EXISTS content_hash CHAR(64);
+
 CREATE SEQUENCE IF NOT EXISTS json_schema_seq;
 
 CREATE TABLE IF NOT EXISTS json_schemas (
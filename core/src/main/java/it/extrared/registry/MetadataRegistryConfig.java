@@ -22,6 +22,7 @@ import io.smallrye.config.WithDefault;
 import it.extrared.registry.metadata.update.UpdateType;
 import it.extrared.registry.security.Roles;
 import it.extrared.registry.utils.MultiMap;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -45,6 +46,24 @@ public interface MetadataRegistryConfig {
     @WithConverter(ListStringConverter.class)
     Optional<List<String>> autocompletionEnabledFor();
 
+    /**
+     * @return true if the entries the autocompletion reads its values from are cached.
+     */
+    @WithDefault("false")
+    boolean autocompletionCacheEnabled();
+
+    /**
+     * @return the maximum number of filter values whose autocompletion entry is cached.
+     */
+    @WithDefault("1000")
+    int autocompletionCacheSize();
+
+    /**
+     * @return the time after which a cached autocompletion entry is looked up again.
+     */
+    @WithDefault("5m")
+    Duration autocompletionCacheTtl();
+
     /**
      * @return the update strategy for DPP metadata.
      */
@@ -52,6 +71,72 @@ public interface MetadataRegistryConfig {
     @WithConverter(UpdateStrategyConverter.class)
     UpdateType updateStrategy();
 
+    /**
+     * @return true if updates with the {@link UpdateType#MODIFY} strategy should merge and write
+     *     the entry with a single upsert statement. It requires the unique UPI index created by the
+     *     schema/v1_1_0/upsert.sql script.
+     */
+    @WithDefault("false")
+    boolean upsertEnabled();
+
+    /**
+     * @return true if the registry should create and drop the indexes on the autocompletion fields
+     *     and on the schema properties flagged as searchable when the schema changes.
+     */
+    @WithDefault("false")
+    boolean indexManagementEnabled();
+
+    /**
+     * @return the maximum number of items accepted by a single batch registration request.
+     */
+    @WithDefault("10000")
+    int batchMaxItems();
+
+    /**
+     * @return the number of entries looked up and written together, each chunk of writes in its own
+     *     transaction, when registering a batch.
+     */
+    @WithDefault("500")
+    int batchChunkSize();
+
+    /**
+     * @return the number of batch items validated concurrently.
+     */
+    @WithDefault("8")
+    int batchParallelism();
+
+    /**
+     * @return the JDBC url used by the bulk import. If absent it is derived from the reactive
+     *     datasource url.
+     */
+    Optional<String> bulkImportJdbcUrl();
+
+    /**
+     * @return true if the registry should keep an in-memory Bloom filter of the stored UPIs, used
+     *     to skip the lookup of the stored entry when registering a UPI never seen before.
+     */
+    @WithDefault("false")
+    boolean upiFilterEnabled();
+
+    /**
+     * @return the number of UPIs the first slice of the UPI filter is sized for. The filter grows
+     *     with further slices when they are exceeded.
+     */
+    @WithDefault("1000000")
+    int upiFilterExpectedUpis();
+
+    /**
+     * @return the target false positive probability of the UPI filter.
+     */
+    @WithDefault("0.01")
+    double upiFilterFpp();
+
+    /**
+     * @return the interval between two rebuilds of the UPI filter from the datastore.
+     */
+    @WithDefault("6h")
+    Duration upiFilterRebuildInterval();
+
     /**
      * @return the field name of the unique product identifier in the JSON. Default is upi
      */
@@ -84,6 +169,135 @@ public interface MetadataRegistryConfig {
     @WithDefault("liveURL")
     String liveUrlFieldName();
 
+    /**
+     * @return true if the DPP metadata schema should be compiled into a specialised validator when
+     *     loaded. If false, or if the schema cannot be compiled, entries are validated by
+     *     networknt.
+     */
+    @WithDefault("true")
+    boolean compiledValidationEnabled();
+
+    /**
+     * @return the maximum number of SQL templates of the lookups by metadata fields kept by each
+     *     datastore.
+     */
+    @WithDefault("256")
+    int queryTemplateCacheSize();
+
+    /**
+     * @return true if the registry should listen for JSON schema changes made through other nodes
+     *     and reload the schema when they happen.
+     */
+    @WithDefault("true")
+    boolean schemaSyncEnabled();
+
+    /**
+     * @return the interval between two checks of the JSON schema version, for the datastores
+     *     without a notification channel (MariaDB).
+     */
+    @WithDefault("30s")
+    Duration schemaSyncPollInterval();
+
+    /**
+     * @return true if concurrent identical lookups of UPIs and autocompletion entries share a
+     *     single query.
+     */
+    @WithDefault("false")
+    boolean lookupCoalescingEnabled();
+
+    /**
+     * @return true if the single entry writes are collected and committed in groups, each in a
+     *     single transaction.
+     */
+    @WithDefault("false")
+    boolean groupCommitEnabled();
+
+    /**
+     * @return the maximum time a single entry write waits for other writes to be committed with.
+     */
+    @WithDefault("2ms")
+    Duration groupCommitWindow();
+
+    /**
+     * @return the maximum number of writes committed in a single transaction.
+     */
+    @WithDefault("256")
+    int groupCommitMaxItems();
+
+    /**
+     * @return true if concurrent submissions of the same UPI are merged in memory and written
+     *     together. Only applied with the MODIFY update strategy.
+     */
+    @WithDefault("false")
+    boolean writeCoalescingEnabled();
+
+    /**
+     * @return true if the lookups by UPI read the most recent entry through the
+     *     dpp_metadata_current table (see the current.sql script) instead of sorting the entries of
+     *     the UPI.
+     */
+    @WithDefault("false")
+    boolean currentTableEnabled();
+
+    /**
+     * @return true if the dpp_metadata table is partitioned by month of created_at (see the
+     *     partitioning.sql script) and the registry should maintain its partitions.
+     */
+    @WithDefault("false")
+    boolean partitioningEnabled();
+
+    /**
+     * @return the number of months ahead of the current one for which partitions are created.
+     */
+    @WithDefault("3")
+    int partitionPremakeMonths();
+
+    /**
+     * @return the number of months of entries kept attached to the dpp_metadata table: older
+     *     partitions are detached. If missing no partition is detached.
+     */
+    Optional<Integer> partitionRetentionMonths();
+
+    /**
+     * @return the interval between two maintenances of the dpp_metadata partitions.
+     */
+    @WithDefault("24h")
+    Duration partitionMaintenanceInterval();
+
+    /**
+     * @return the names of the reactive datasources across which the DPP metadata are sharded by
+     *     UPI, {@code <default>} being the default datasource. Without it all the entries are
+     *     stored in the default datasource.
+     */
+    Optional<List<String>> shards();
+
+    /**
+     * @return the registry.shards list before the last shards were appended to it, to be set until
+     *     a rebalance moved the entries to their new shard: the entries not found in the shard of
+     *     their UPI are then looked up in the one this list routes it to, and moved before being
+     *     written.
+     */
+    Optional<List<String>> previousShards();
+
+    /**
+     * @return true if the reads tolerating slightly stale data should use the read replica
+     *     datasource quarkus.datasource.read, when its lag is acceptable.
+     */
+    @WithDefault("false")
+    boolean readReplicaEnabled();
+
+    /**
+     * @return the maximum replication lag of the read replica: above it reads use the primary.
+     */
+    @WithDefault("5s")
+    Duration readReplicaMaxLag();
+
+    /**
+     * @return the interval between two checks of the read replica lag.
+     */
+    @WithDefault("10s")
+    Duration readReplicaCheckInterval();
+
     /**
      * @return true if the registry should try to validate the DPP data associated with the input
      *     metadata entry.
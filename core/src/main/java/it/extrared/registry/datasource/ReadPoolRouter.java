@@ -0,0 +1,124 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.datasource;
+
+import static it.extrared.registry.utils.CommonUtils.debug;
+
+import io.quarkus.reactive.datasource.ReactiveDataSource;
+import io.quarkus.scheduler.Scheduled;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.Pool;
+import io.vertx.mutiny.sqlclient.SqlConnection;
+import it.extrared.registry.MetadataRegistryConfig;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Instance;
+import jakarta.inject.Inject;
+import java.time.Duration;
+import java.util.function.Function;
+import org.jboss.logging.Logger;
+
+/**
+ * Routes the reads that tolerate slightly stale data to the optional read replica datasource
+ * {@value #READ_DATASOURCE}, to offload them from the primary. The replica is used only when
+ * registry.read-replica-enabled is true and its replication lag, checked every
+ * registry.read-replica-check-interval, is below registry.read-replica-max-lag. Reads fall back to
+ * the primary when the replica is lagging behind or cannot be reached. Reads that must see the
+ * latest committed data, as the ones made while writing, must use the primary pool.
+ */
+@ApplicationScoped
+public class ReadPoolRouter {
+
+    /** Name of the reactive datasource of the read replica. */
+    public static final String READ_DATASOURCE = "read";
+
+    @Inject MetadataRegistryConfig config;
+
+    @Inject Pool primary;
+
+    @Inject
+    @ReactiveDataSource(READ_DATASOURCE)
+    Instance<Pool> replica;
+
+    @Inject Instance<ReplicaLagProbe> probe;
+
+    // the replica is not used until its lag has been checked once.
+    private volatile boolean replicaUsable;
+
+    private static final Logger LOG = Logger.getLogger(ReadPoolRouter.class);
+
+    /**
+     * @return the pool of the read replica if it is usable, otherwise the primary one.
+     */
+    public Pool readPool() {
+        return replicaUsable ? replica.get() : primary;
+    }
+
+    /**
+     * Run a read on a connection of the read replica, if usable, or of the primary. If a connection
+     * to the replica cannot be obtained the replica is flagged as not usable until the next check
+     * and the read runs on the primary.
+     *
+     * @param function the read to run.
+     * @return the result of the read.
+     * @param <T> the type of the result.
+     */
+    public <T> Uni<T> withReadConnection(Function<SqlConnection, Uni<T>> function) {
+        Pool pool = readPool();
+        if (pool == primary) return primary.withConnection(function);
+        return pool.getConnection()
+                .onFailure()
+                .recoverWithUni(
+                        e -> {
+                            LOG.warn("Read replica unreachable, reading from the primary", e);
+                            replicaUsable = false;
+                            return primary.getConnection();
+                        })
+                .flatMap(c -> function.apply(c).eventually(c::close));
+    }
+
+    @Scheduled(
+            every = "${registry.read-replica-check-interval}",
+            concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    Uni<Void> checkReplica() {
+        if (!config.readReplicaEnabled()) return Uni.createFrom().voidItem();
+        if (!replica.isResolvable() || !probe.isResolvable()) {
+            LOG.warnf("Read replica enabled but datasource %s is not configured", READ_DATASOURCE);
+            return Uni.createFrom().voidItem();
+        }
+        Duration maxLag = config.readReplicaMaxLag();
+        return probe.get()
+                .lag(replica.get())
+                .invoke(
+                        lag -> {
+                            boolean usable = lag.compareTo(maxLag) <= 0;
+                            if (usable != replicaUsable)
+                                LOG.infof(
+                                        "Read replica %s, lag is %s",
+                                        usable ? "in use" : "not in use", lag);
+                            debug(LOG, () -> "Read replica lag is %s".formatted(lag));
+                            replicaUsable = usable;
+                        })
+                .onFailure()
+                .invoke(
+                        e -> {
+                            LOG.error("Error while checking the read replica lag", e);
+                            replicaUsable = false;
+                        })
+                .onFailure()
+                .recoverWithNull()
+                .replaceWithVoid();
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.datasource;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.Pool;
+import java.time.Duration;
+
+/** Datastore specific measure of how far a read replica is behind the primary. */
+public interface ReplicaLagProbe {
+
+    /**
+     * @param replica the pool of the read replica.
+     * @return the replication lag of the replica, {@link Duration#ZERO} if it is not replicating
+     *     from a primary. Fails if the lag cannot be determined, e.g. because the replication is
+     *     stopped.
+     */
+    Uni<Duration> lag(Pool replica);
+}
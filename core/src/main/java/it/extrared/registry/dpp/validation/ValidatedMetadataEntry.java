@@ -33,6 +33,7 @@ public class ValidatedMetadataEntry extends DPPMetadataEntry {
         setRegistryId(baseEntry.getRegistryId());
         setCreatedAt(baseEntry.getCreatedAt());
         setModifiedAt(baseEntry.getModifiedAt());
+        setVersion(baseEntry.getVersion());
         setValidation(report);
     }
 
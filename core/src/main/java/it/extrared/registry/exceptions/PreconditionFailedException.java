@@ -0,0 +1,28 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.exceptions;
+
+/**
+ * Thrown when a write is conditioned to a version of the stored entry of a UPI, e.g. through an
+ * If-Match header, that is not the current one.
+ */
+public class PreconditionFailedException extends RuntimeException {
+    public PreconditionFailedException(String upi) {
+        super(
+                "DPP registry entry for product with upi %s does not match the expected version"
+                        .formatted(upi));
+    }
+}
@@ -31,7 +31,13 @@ public class SchemaValidationException extends RuntimeException {
         super(errorMessage(messages));
     }
 
-    private static String errorMessage(Set<ValidationMessage> messages) {
+    /**
+     * Format a set of validation messages as the message of this exception.
+     *
+     * @param messages the validation messages.
+     * @return the error message.
+     */
+    public static String errorMessage(Set<ValidationMessage> messages) {
         String msg =
                 String.join(
                         "\n",
@@ -0,0 +1,547 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.jsonschema;
+
+import static it.extrared.registry.utils.CommonUtils.debug;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.networknt.schema.JsonNodePath;
+import com.networknt.schema.JsonSchema;
+import com.networknt.schema.PathType;
+import com.networknt.schema.SchemaLocation;
+import com.networknt.schema.ValidationMessage;
+import com.networknt.schema.ValidatorTypeCode;
+import com.networknt.schema.i18n.DefaultMessageSource;
+import java.math.BigDecimal;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.regex.Pattern;
+import org.jboss.logging.Logger;
+
+/**
+ * A validator specialised for the flat DPP metadata schemas, whose properties are primitives or
+ * arrays of primitives (see {@link Schema#validateSchemaCompliancy()}). The schema is compiled once
+ * into a plan of checks per property, with patterns and constraint values already parsed, so that
+ * validating an entry does not go through the generic networknt validators. Messages are built from
+ * the networknt message templates and locations, so that they are the same of a networknt
+ * validation.
+ *
+ * <p>A property using keywords outside of the supported ones (eg. format) is validated by networknt
+ * on its own, as are the root keywords other than type, properties, required and
+ * additionalProperties (eg. if/then/else). Schemas with keywords changing which properties are
+ * evaluated (eg. $ref, patternProperties, unevaluatedProperties) are not compiled at all.
+ *
+ * <p>Besides the validation of a whole entry, a single property value can be pre-validated with
+ * {@link #prevalidate(String, JsonNode)} while an entry is being parsed. Only the checks whose
+ * outcome cannot change when the entry is merged with a stored one are applied there.
+ */
+public final class CompiledSchemaValidator {
+
+    private static final Set<String> ANNOTATIONS =
+            Set.of(
+                    "$schema",
+                    "$id",
+                    "$comment",
+                    "title",
+                    "description",
+                    "examples",
+                    "default",
+                    "deprecated",
+                    "readOnly",
+                    "writeOnly");
+
+    private static final Set<String> PROPERTY_KEYWORDS =
+            Set.of(
+                    "type",
+                    "minLength",
+                    "maxLength",
+                    "pattern",
+                    "enum",
+                    "const",
+                    "minimum",
+                    "maximum",
+                    "exclusiveMinimum",
+                    "exclusiveMaximum",
+                    "minItems",
+                    "maxItems",
+                    "uniqueItems",
+                    "items");
+
+    // keywords whose outcome depends on the whole array, that a merge of an update can change.
+    private static final Set<String> CARDINALITY_KEYWORDS =
+            Set.of("minItems", "maxItems", "uniqueItems");
+
+    private static final Set<String> NOT_COMPILABLE_ROOT_KEYWORDS =
+            Set.of(
+                    "$ref",
+                    "$defs",
+                    "definitions",
+                    "$anchor",
+                    "$dynamicRef",
+                    "$dynamicAnchor",
+                    "patternProperties",
+                    "unevaluatedProperties",
+                    "propertyNames",
+                    "dependentSchemas");
+
+    private static final ResourceBundle MESSAGES =
+            ResourceBundle.getBundle(DefaultMessageSource.BUNDLE_BASE_NAME, Locale.getDefault());
+
+    private static final JsonNodePath ROOT = new JsonNodePath(PathType.LEGACY);
+
+    private static final Logger LOG = Logger.getLogger(CompiledSchemaValidator.class);
+
+    private final List<Check> rootChecks;
+
+    private final Map<String, List<Check>> properties;
+
+    private final Map<String, List<Check>> valueChecks;
+
+    private final Map<String, JsonSchema> delegatedProperties;
+
+    private final JsonSchema delegatedRoot;
+
+    // null when additional properties are allowed.
+    private final Set<String> knownProperties;
+
+    private CompiledSchemaValidator(
+            List<Check> rootChecks,
+            Map<String, List<Check>> properties,
+            Map<String, List<Check>> valueChecks,
+            Map<String, JsonSchema> delegatedProperties,
+            JsonSchema delegatedRoot,
+            Set<String> knownProperties) {
+        this.rootChecks = rootChecks;
+        this.properties = properties;
+        this.valueChecks = valueChecks;
+        this.delegatedProperties = delegatedProperties;
+        this.delegatedRoot = delegatedRoot;
+        this.knownProperties = knownProperties;
+    }
+
+    /**
+     * Compile the validation plan of a DPP metadata schema.
+     *
+     * @param schema the JSON schema, already checked for compliancy.
+     * @return the compiled validator or an empty optional if the schema cannot be compiled.
+     */
+    public static Optional<CompiledSchemaValidator> compile(JsonNode schema) {
+        JsonNode props = schema.get(Schema.PROPERTIES_KEY);
+        JsonNode additional = schema.get("additionalProperties");
+        for (String keyword : fieldNames(schema)) {
+            if (NOT_COMPILABLE_ROOT_KEYWORDS.contains(keyword)) {
+                debug(LOG, () -> "Schema keyword %s prevents compilation".formatted(keyword));
+                return Optional.empty();
+            }
+        }
+        if ((props != null && !props.isObject()) || (additional != null && !additional.isBoolean()))
+            return Optional.empty();
+
+        SchemaLocation root = SchemaLocation.DOCUMENT;
+        List<Check> rootChecks = new ArrayList<>();
+        ObjectNode delegated = JsonNodeFactory.instance.objectNode();
+        for (String keyword : fieldNames(schema)) {
+            JsonNode value = schema.get(keyword);
+            switch (keyword) {
+                case Schema.TYPE_KEY ->
+                        rootChecks.add(typeCheck(value, root.append(keyword), evalPath(keyword)));
+                case Schema.PROPERTIES_KEY -> {}
+                case "required" -> {}
+                case "additionalProperties" -> {}
+                default -> {
+                    if (!ANNOTATIONS.contains(keyword) && !keyword.startsWith("x-"))
+                        delegated.set(keyword, value);
+                }
+            }
+        }
+
+        Map<String, List<Check>> properties = new LinkedHashMap<>();
+        Map<String, List<Check>> valueChecks = new LinkedHashMap<>();
+        Map<String, JsonSchema> delegatedProperties = new LinkedHashMap<>();
+        if (props != null) {
+            for (Map.Entry<String, JsonNode> e : props.properties()) {
+                String name = e.getKey();
+                SchemaLocation loc = root.append(Schema.PROPERTIES_KEY).append(name);
+                JsonNodePath eval = evalPath(Schema.PROPERTIES_KEY, name);
+                List<Check> checks = compileNode(e.getValue(), loc, eval, false);
+                if (checks != null) {
+                    properties.put(name, checks);
+                    valueChecks.put(name, compileNode(e.getValue(), loc, eval, true));
+                } else {
+                    debug(LOG, () -> "Property %s is validated by networknt".formatted(name));
+                    ObjectNode wrapper = JsonNodeFactory.instance.objectNode();
+                    wrapper.putObject(Schema.PROPERTIES_KEY).set(name, e.getValue());
+                    delegatedProperties.put(name, toJsonSchema(schema, wrapper));
+                }
+            }
+        }
+
+        JsonNode required = schema.get("required");
+        if (required != null && required.isArray())
+            rootChecks.add(requiredCheck(required, root.append("required")));
+        Set<String> knownProperties = null;
+        if (additional != null && !additional.booleanValue()) {
+            knownProperties = props != null ? new HashSet<>(fieldNames(props)) : Set.of();
+            rootChecks.add(additionalPropertiesCheck(knownProperties));
+        }
+
+        JsonSchema delegatedRoot = delegated.isEmpty() ? null : toJsonSchema(schema, delegated);
+        if (delegatedRoot != null)
+            debug(
+                    LOG,
+                    () ->
+                            "Root keywords %s are validated by networknt"
+                                    .formatted(fieldNames(delegated)));
+        return Optional.of(
+                new CompiledSchemaValidator(
+                        rootChecks,
+                        properties,
+                        valueChecks,
+                        delegatedProperties,
+                        delegatedRoot,
+                        knownProperties));
+    }
+
+    /**
+     * Validate a JSON against the compiled schema.
+     *
+     * @param data the data to validate.
+     * @return the set of {@link ValidationMessage}, empty if the validation was successful.
+     */
+    public Set<ValidationMessage> validate(JsonNode data) {
+        Set<ValidationMessage> messages = new LinkedHashSet<>();
+        if (data.isObject()) {
+            properties.forEach(
+                    (name, checks) -> {
+                        JsonNode value = data.get(name);
+                        if (value == null) return;
+                        JsonNodePath path = ROOT.append(name);
+                        for (Check c : checks) c.validate(value, path, messages);
+                    });
+            delegatedProperties.forEach(
+                    (name, schema) -> {
+                        JsonNode value = data.get(name);
+                        if (value == null) return;
+                        ObjectNode single = JsonNodeFactory.instance.objectNode();
+                        single.set(name, value);
+                        messages.addAll(schema.validate(single));
+                    });
+        }
+        for (Check c : rootChecks) c.validate(data, ROOT, messages);
+        if (delegatedRoot != null) messages.addAll(delegatedRoot.validate(data));
+        return messages;
+    }
+
+    /**
+     * Pre-validate a single property value of an entry being parsed. The value is checked against
+     * the compiled keywords of the property and the property name against additionalProperties.
+     * Required properties, array cardinality and the keywords validated by networknt are left to
+     * the validation of the whole entry, since they can depend on the other properties or on the
+     * stored entry the value is merged with.
+     *
+     * @param name the property name.
+     * @param value the property value.
+     * @return the set of {@link ValidationMessage}, empty if the value is valid so far.
+     */
+    public Set<ValidationMessage> prevalidate(String name, JsonNode value) {
+        List<Check> checks = valueChecks.get(name);
+        if (checks == null && knownProperties != null && !knownProperties.contains(name))
+            return Set.of(additionalPropertyMessage(name, value));
+        if (checks == null || checks.isEmpty()) return Set.of();
+        Set<ValidationMessage> messages = new LinkedHashSet<>();
+        JsonNodePath path = ROOT.append(name);
+        for (Check c : checks) c.validate(value, path, messages);
+        return messages;
+    }
+
+    @FunctionalInterface
+    private interface Check {
+        void validate(JsonNode node, JsonNodePath path, Set<ValidationMessage> messages);
+    }
+
+    // returns null if the property schema uses keywords that are not compiled.
+    // with valueOnly the checks on the array cardinality are left out.
+    private static List<Check> compileNode(
+            JsonNode schema, SchemaLocation location, JsonNodePath evalPath, boolean valueOnly) {
+        if (!schema.isObject()) return null;
+        List<Check> checks = new ArrayList<>();
+        for (String keyword : fieldNames(schema)) {
+            JsonNode value = schema.get(keyword);
+            SchemaLocation loc = location.append(keyword);
+            JsonNodePath eval = evalPath.append(keyword);
+            if (ANNOTATIONS.contains(keyword) || keyword.startsWith("x-")) continue;
+            if (!PROPERTY_KEYWORDS.contains(keyword)) return null;
+            if (valueOnly && CARDINALITY_KEYWORDS.contains(keyword)) continue;
+            Check check =
+                    switch (keyword) {
+                        case "type" -> typeCheck(value, loc, eval);
+                        case "minLength", "maxLength" -> lengthCheck(keyword, value, loc, eval);
+                        case "pattern" -> patternCheck(value, loc, eval);
+                        case "enum" -> enumCheck(value, loc, eval);
+                        case "const" -> constCheck(value, loc, eval);
+                        case "minimum", "maximum", "exclusiveMinimum", "exclusiveMaximum" ->
+                                boundCheck(keyword, value, loc, eval);
+                        case "minItems", "maxItems" -> itemsCountCheck(keyword, value, loc, eval);
+                        case "uniqueItems" -> uniqueItemsCheck(value, loc, eval);
+                        default -> itemsCheck(value, loc, eval);
+                    };
+            if (check == null) return null;
+            checks.add(check);
+        }
+        return checks;
+    }
+
+    private static Check typeCheck(JsonNode value, SchemaLocation loc, JsonNodePath eval) {
+        List<String> allowed = new ArrayList<>();
+        if (value.isTextual()) allowed.add(value.textValue());
+        else if (value.isArray()) value.forEach(t -> allowed.add(t.asText()));
+        else return null;
+        String expected = value.isTextual() ? value.textValue() : allowed.toString();
+        return (node, path, messages) -> {
+            String found = typeOf(node);
+            boolean valid =
+                    allowed.contains(found)
+                            || ("integer".equals(found) && allowed.contains("number"));
+            if (!valid)
+                messages.add(message("type", loc, eval, path, node, value, null, found, expected));
+        };
+    }
+
+    private static Check lengthCheck(
+            String keyword, JsonNode value, SchemaLocation loc, JsonNodePath eval) {
+        if (!value.canConvertToExactIntegral()) return null;
+        int limit = value.intValue();
+        boolean min = "minLength".equals(keyword);
+        return (node, path, messages) -> {
+            if (!node.isTextual()) return;
+            String text = node.textValue();
+            int length = text.codePointCount(0, text.length());
+            if (min ? length < limit : length > limit)
+                messages.add(message(keyword, loc, eval, path, node, value, null, limit));
+        };
+    }
+
+    private static Check patternCheck(JsonNode value, SchemaLocation loc, JsonNodePath eval) {
+        if (!value.isTextual()) return null;
+        Pattern pattern = Pattern.compile(value.textValue());
+        return (node, path, messages) -> {
+            if (node.isTextual() && !pattern.matcher(node.textValue()).find())
+                messages.add(
+                        message("pattern", loc, eval, path, node, value, null, value.textValue()));
+        };
+    }
+
+    private static Check enumCheck(JsonNode value, SchemaLocation loc, JsonNodePath eval) {
+        if (!value.isArray()) return null;
+        List<JsonNode> allowed = fieldValues(value);
+        StringBuilder text = new StringBuilder("[");
+        for (JsonNode n : allowed) {
+            if (text.length() > 1) text.append(", ");
+            text.append(n.isTextual() || n.isContainerNode() ? n.toString() : n.asText());
+        }
+        String allowedText = text.append(']').toString();
+        return (node, path, messages) -> {
+            for (JsonNode a : allowed) if (sameValue(a, node)) return;
+            messages.add(message("enum", loc, eval, path, node, value, null, allowedText));
+        };
+    }
+
+    private static Check constCheck(JsonNode value, SchemaLocation loc, JsonNodePath eval) {
+        return (node, path, messages) -> {
+            if (!sameValue(value, node))
+                messages.add(
+                        message(
+                                "const",
+                                loc,
+                                eval,
+                                path,
+                                node,
+                                value,
+                                null,
+                                value.asText(),
+                                node.asText()));
+        };
+    }
+
+    private static Check boundCheck(
+            String keyword, JsonNode value, SchemaLocation loc, JsonNodePath eval) {
+        if (!value.isNumber()) return null;
+        BigDecimal limit = value.decimalValue();
+        String limitText = value.asText();
+        return (node, path, messages) -> {
+            if (!node.isNumber()) return;
+            int cmp = node.decimalValue().compareTo(limit);
+            boolean valid =
+                    switch (keyword) {
+                        case "minimum" -> cmp >= 0;
+                        case "maximum" -> cmp <= 0;
+                        case "exclusiveMinimum" -> cmp > 0;
+                        default -> cmp < 0;
+                    };
+            if (!valid)
+                messages.add(message(keyword, loc, eval, path, node, value, null, limitText));
+        };
+    }
+
+    private static Check itemsCountCheck(
+            String keyword, JsonNode value, SchemaLocation loc, JsonNodePath eval) {
+        if (!value.canConvertToExactIntegral()) return null;
+        int limit = value.intValue();
+        boolean min = "minItems".equals(keyword);
+        return (node, path, messages) -> {
+            if (!node.isArray()) return;
+            int size = node.size();
+            if (min ? size < limit : size > limit)
+                messages.add(message(keyword, loc, eval, path, node, value, null, limit, size));
+        };
+    }
+
+    private static Check uniqueItemsCheck(JsonNode value, SchemaLocation loc, JsonNodePath eval) {
+        if (!value.isBoolean()) return null;
+        if (!value.booleanValue()) return (node, path, messages) -> {};
+        return (node, path, messages) -> {
+            if (!node.isArray()) return;
+            Set<JsonNode> seen = new HashSet<>();
+            for (JsonNode item : node) {
+                if (!seen.add(item)) {
+                    messages.add(message("uniqueItems", loc, eval, path, node, value, null));
+                    return;
+                }
+            }
+        };
+    }
+
+    private static Check itemsCheck(JsonNode value, SchemaLocation loc, JsonNodePath eval) {
+        List<Check> itemChecks = compileNode(value, loc, eval, false);
+        if (itemChecks == null) return null;
+        return (node, path, messages) -> {
+            if (!node.isArray()) return;
+            for (int i = 0; i < node.size(); i++) {
+                JsonNode item = node.get(i);
+                JsonNodePath itemPath = path.append(i);
+                for (Check c : itemChecks) c.validate(item, itemPath, messages);
+            }
+        };
+    }
+
+    private static Check requiredCheck(JsonNode value, SchemaLocation loc) {
+        List<String> names = fieldValues(value).stream().map(JsonNode::asText).toList();
+        JsonNodePath eval = evalPath("required");
+        return (node, path, messages) -> {
+            if (!node.isObject()) return;
+            for (String name : names)
+                if (!node.has(name))
+                    messages.add(message("required", loc, eval, path, node, value, name, name));
+        };
+    }
+
+    private static Check additionalPropertiesCheck(Set<String> known) {
+        return (node, path, messages) -> {
+            if (!node.isObject()) return;
+            for (String name : fieldNames(node))
+                if (!known.contains(name)) messages.add(additionalPropertyMessage(name, node));
+        };
+    }
+
+    private static ValidationMessage additionalPropertyMessage(String name, JsonNode node) {
+        return message(
+                "additionalProperties",
+                SchemaLocation.DOCUMENT.append("additionalProperties"),
+                evalPath("additionalProperties"),
+                ROOT,
+                node,
+                JsonNodeFactory.instance.booleanNode(false),
+                name,
+                name);
+    }
+
+    private static ValidationMessage message(
+            String keyword,
+            SchemaLocation loc,
+            JsonNodePath eval,
+            JsonNodePath path,
+            JsonNode node,
+            JsonNode schemaNode,
+            String property,
+            Object... arguments) {
+        ValidatorTypeCode type = ValidatorTypeCode.fromValue(keyword);
+        return ValidationMessage.builder()
+                .type(keyword)
+                .code(type.getErrorCode())
+                .messageKey(keyword)
+                .schemaLocation(loc)
+                .evaluationPath(eval)
+                .instanceLocation(path)
+                .property(property)
+                .arguments(arguments)
+                .format(new MessageFormat(MESSAGES.getString(keyword), Locale.getDefault()))
+                .instanceNode(node)
+                .schemaNode(schemaNode)
+                .build();
+    }
+
+    // JSON schema type of a value: numbers with no fractional part are integers.
+    private static String typeOf(JsonNode node) {
+        return switch (node.getNodeType()) {
+            case NULL, MISSING -> "null";
+            case BOOLEAN -> "boolean";
+            case STRING -> "string";
+            case ARRAY -> "array";
+            case NUMBER -> node.canConvertToExactIntegral() ? "integer" : "number";
+            default -> "object";
+        };
+    }
+
+    private static boolean sameValue(JsonNode a, JsonNode b) {
+        if (a.isNumber() && b.isNumber()) return a.decimalValue().compareTo(b.decimalValue()) == 0;
+        return a.equals(b);
+    }
+
+    private static JsonSchema toJsonSchema(JsonNode schema, ObjectNode keywords) {
+        JsonNode version = schema.get("$schema");
+        if (version != null) keywords.set("$schema", version);
+        return Schema.FACTORY.getSchema(keywords);
+    }
+
+    private static JsonNodePath evalPath(String... names) {
+        JsonNodePath path = ROOT;
+        for (String n : names) path = path.append(n);
+        return path;
+    }
+
+    private static List<String> fieldNames(JsonNode node) {
+        List<String> names = new ArrayList<>();
+        node.fieldNames().forEachRemaining(names::add);
+        return names;
+    }
+
+    private static List<JsonNode> fieldValues(JsonNode node) {
+        List<JsonNode> values = new ArrayList<>();
+        node.forEach(values::add);
+        return values;
+    }
+}
@@ -17,8 +17,6 @@ package it.extrared.registry.jsonschema;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.networknt.schema.JsonSchema;
-import com.networknt.schema.JsonSchemaFactory;
-import com.networknt.schema.SpecVersion;
 import io.smallrye.mutiny.Uni;
 import it.extrared.registry.MetadataRegistryConfig;
 import it.extrared.registry.exceptions.JsonSchemaException;
@@ -43,8 +41,7 @@ public class JsonSchemaLoaderChain {
 
     private MetadataRegistryConfig config;
 
-    private static final Function<JsonNode, JsonSchema> JN_TO_SCHEMA =
-            jn -> JsonSchemaFactory.getInstance(SpecVersion.VersionFlag.V202012).getSchema(jn);
+    private static final Function<JsonNode, JsonSchema> JN_TO_SCHEMA = Schema.FACTORY::getSchema;
 
     private static final Logger LOG = Logger.getLogger(JsonSchemaLoaderChain.class);
 
@@ -79,6 +76,8 @@ public class JsonSchemaLoaderChain {
                     List<String> msgs = schema.validateSchemaCompliancy();
                     if (!msgs.isEmpty()) throw new JsonSchemaException(String.join(". ", msgs));
                     CommonUtils.debug(LOG, () -> "Schema is valid");
+                    if (config.compiledValidationEnabled() && !schema.compile())
+                        LOG.info("The schema cannot be compiled, it is validated by networknt");
                     return schema;
                 });
     }
@@ -20,13 +20,23 @@ import static it.extrared.registry.utils.JsonUtils.nodeIsNotNull;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.networknt.schema.JsonMetaSchema;
 import com.networknt.schema.JsonSchema;
+import com.networknt.schema.JsonSchemaFactory;
+import com.networknt.schema.NonValidationKeyword;
+import com.networknt.schema.SpecVersion;
 import com.networknt.schema.ValidationMessage;
 import it.extrared.registry.MetadataRegistryConfig;
+import it.extrared.registry.exceptions.InvalidOperationException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Stream;
 import org.jboss.logging.Logger;
 
 /**
@@ -43,48 +53,149 @@ public class Schema {
 
     public static final String PROPERTIES_KEY = "properties";
 
+    /**
+     * Custom keyword flagging a property whose values are used to look up metadata entries, so that
+     * the registry keeps an index on it.
+     */
+    public static final String SEARCHABLE_KEY = "x-searchable";
+
+    /**
+     * Factory of the DPP metadata JSON schemas, defaulting to draft 2020-12, whose meta-schemas
+     * declare {@value #SEARCHABLE_KEY} as a keyword not involved in the validation.
+     */
+    public static final JsonSchemaFactory FACTORY =
+            JsonSchemaFactory.getInstance(
+                    SpecVersion.VersionFlag.V202012,
+                    b ->
+                            b.metaSchemas(
+                                    Stream.of(
+                                                    JsonMetaSchema.getV4(),
+                                                    JsonMetaSchema.getV6(),
+                                                    JsonMetaSchema.getV7(),
+                                                    JsonMetaSchema.getV201909(),
+                                                    JsonMetaSchema.getV202012())
+                                            .map(Schema::withSearchableKeyword)
+                                            .toList()));
+
     public static final Set<String> PRIMITIVE_TYPES =
             Set.of("string", "number", "integer", "boolean", "null");
 
     private final MetadataRegistryConfig config;
 
+    private CompiledSchemaValidator compiled;
+
+    // descriptors of the top level properties, built once at load time.
+    private final Map<String, SchemaProperty> properties;
+
     private static final Logger LOG = Logger.getLogger(Schema.class);
 
+    private static JsonMetaSchema withSearchableKeyword(JsonMetaSchema metaSchema) {
+        return JsonMetaSchema.builder(metaSchema)
+                .keyword(new NonValidationKeyword(SEARCHABLE_KEY))
+                .build();
+    }
+
     public Schema(JsonSchema schema, MetadataRegistryConfig config) {
         this.schema = schema;
         this.config = config;
+        this.properties = describeProperties(schema.getSchemaNode());
+    }
+
+    private static Map<String, SchemaProperty> describeProperties(JsonNode schemaNode) {
+        Map<String, SchemaProperty> properties = new LinkedHashMap<>();
+        JsonNode props = schemaNode.get(PROPERTIES_KEY);
+        if (nodeIsNotNull(props) && props.isObject())
+            props.properties()
+                    .forEach(
+                            e ->
+                                    properties.put(
+                                            e.getKey(),
+                                            SchemaProperty.of(e.getKey(), e.getValue())));
+        return Collections.unmodifiableMap(properties);
     }
 
     /**
-     * Validate a JSON against the underlying JSON schema.
+     * Validate a JSON against the underlying JSON schema, using the compiled validator if any.
      *
      * @param data the data to validate.
      * @return the set of {@link ValidationMessage}, empty if the validation was successful.
      */
     public Set<ValidationMessage> validateJson(JsonNode data) {
+        if (compiled != null) return compiled.validate(data);
         return schema.validate(data);
     }
 
+    /**
+     * Pre-validate a single property value while an entry is being parsed (see {@link
+     * CompiledSchemaValidator#prevalidate(String, JsonNode)}). Without a compiled validator nothing
+     * is checked and the whole validation happens on the entry.
+     *
+     * @param name the property name.
+     * @param value the property value.
+     * @return the set of {@link ValidationMessage}, empty if the value is valid so far.
+     */
+    public Set<ValidationMessage> prevalidate(String name, JsonNode value) {
+        if (compiled != null) return compiled.prevalidate(name, value);
+        return Set.of();
+    }
+
+    /**
+     * Compile the schema into a {@link CompiledSchemaValidator} used by {@link
+     * #validateJson(JsonNode)} in place of the networknt one. It must be called only on a schema
+     * that passed {@link #validateSchemaCompliancy()}.
+     *
+     * @return true if the schema could be compiled.
+     */
+    public boolean compile() {
+        compiled = CompiledSchemaValidator.compile(schema.getSchemaNode()).orElse(null);
+        return compiled != null;
+    }
+
     public JsonNode getSchema() {
         return schema.getSchemaNode();
     }
 
+    /**
+     * @param propertyName the property name.
+     * @return the descriptor of the property, null if the schema does not define it.
+     */
+    public SchemaProperty getProperty(String propertyName) {
+        return properties.get(propertyName);
+    }
+
+    /**
+     * @param propertyName the property name.
+     * @return the descriptor of the property.
+     * @throws InvalidOperationException if the schema does not define the property or its type.
+     */
+    public SchemaProperty requireProperty(String propertyName) {
+        SchemaProperty property = properties.get(propertyName);
+        if (property == null || property.getType() == null)
+            throw new InvalidOperationException(
+                    "Property %s is not defined by the JSON schema".formatted(propertyName));
+        return property;
+    }
+
+    /**
+     * @return the descriptors of the properties defined by the schema, in declaration order.
+     */
+    public Collection<SchemaProperty> getProperties() {
+        return properties.values();
+    }
+
     public String getPropertyType(String propertyName) {
-        JsonNode node = schema.getSchemaNode().get(PROPERTIES_KEY).get(propertyName);
-        if (nodeIsNotNull(node)) {
-            JsonNode type = node.get(TYPE_KEY);
-            if (nodeIsNotNull(type) && type.isTextual()) {
-                return type.asText();
-            } else if (type.isArray()) {
-                ArrayNode arrayNode = (ArrayNode) type;
-                for (int i = 0; i < arrayNode.size(); i++) {
-                    type = arrayNode.get(i);
-                    String strType = type.asText();
-                    if (!strType.equals("null")) return strType;
-                }
-            }
-        }
-        return null;
+        SchemaProperty property = properties.get(propertyName);
+        return property != null ? property.getType() : null;
+    }
+
+    /**
+     * @return the names of the properties flagged with the {@link #SEARCHABLE_KEY} keyword.
+     */
+    public List<String> getSearchableProperties() {
+        return properties.values().stream()
+                .filter(SchemaProperty::isSearchable)
+                .map(SchemaProperty::getName)
+                .toList();
     }
 
     /**
@@ -17,40 +17,219 @@ package it.extrared.registry.jsonschema;
 
 import static it.extrared.registry.utils.CommonUtils.debug;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.smallrye.mutiny.Uni;
+import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import org.jboss.logging.Logger;
 
-/** A cache for the schema currently in use. */
+/**
+ * A cache for the schema currently in use. The last schema loaded successfully is served while a
+ * new one is being loaded by {@link #refresh()} or {@link #reload()}, e.g. when the schema is
+ * changed through another node of the registry, and swapped in once it is compiled. A failed load
+ * is not cached: it is retried in the background with an exponential backoff, during which the
+ * requests finding the cache empty fail fast with the last error. Every successful load increments
+ * the version of the cache.
+ */
 @ApplicationScoped
 public class SchemaCache {
 
-    private final AtomicReference<Uni<Schema>> cached = new AtomicReference<>();
+    private static final Duration MIN_BACKOFF = Duration.ofSeconds(1);
+
+    private static final Duration MAX_BACKOFF = Duration.ofMinutes(1);
 
     @Inject JsonSchemaLoaderChain loader;
 
+    @Inject MeterRegistry meterRegistry;
+
+    private volatile Schema current;
+
+    // the load shared by the requests finding the cache empty.
+    private final AtomicReference<Uni<Schema>> pending = new AtomicReference<>();
+
+    // incremented by every invalidation and refresh, so that a late load does not override a
+    // more recent one.
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong version = new AtomicLong();
+
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private final AtomicBoolean retryScheduled = new AtomicBoolean();
+
+    private volatile long retryAt;
+
+    private volatile Throwable lastFailure;
+
+    private Counter hits;
+
+    private Counter misses;
+
+    private Counter loadFailures;
+
+    private Timer loadTime;
+
     private static final Logger LOG = Logger.getLogger(SchemaCache.class);
 
+    @PostConstruct
+    void registerMetrics() {
+        hits = requests("hit");
+        misses = requests("miss");
+        loadFailures =
+                Counter.builder("registry.schema.cache.load.failures")
+                        .description("Failed loads of the JSON schema")
+                        .register(meterRegistry);
+        loadTime =
+                Timer.builder("registry.schema.cache.load")
+                        .description("Time spent loading and compiling the JSON schema")
+                        .register(meterRegistry);
+        Gauge.builder("registry.schema.cache.version", version, AtomicLong::get)
+                .description("Number of JSON schemas loaded successfully by the cache")
+                .register(meterRegistry);
+    }
+
     /**
-     * @return the currently cache schema. If cache is empty the schema is first loaded and then
-     *     cached.
+     * @return the currently cached schema. If the cache is empty the schema is first loaded and
+     *     then cached.
      */
     public Uni<Schema> get() {
-        Uni<Schema> schema = cached.get();
-        if (schema == null) {
-            debug(LOG, () -> "Caching JSON schema...");
-            schema = loader.loadSchema().memoize().indefinitely();
-            cached.compareAndSet(null, schema);
-            debug(LOG, () -> "JSON schema cached...");
+        Schema schema = current;
+        if (schema != null) {
+            hits.increment();
+            return Uni.createFrom().item(schema);
         }
-        return schema;
+        misses.increment();
+        return sharedLoad(false);
+    }
+
+    /**
+     * @return the number of schemas loaded successfully so far.
+     */
+    public long getVersion() {
+        return version.get();
     }
 
-    /** Invalidates the cache. */
+    /** Invalidates the cache: the schema is loaded again by the next request. */
     public void invalidate() {
         debug(LOG, () -> "Invalidating JSON schema cache...");
-        cached.set(null);
+        generation.incrementAndGet();
+        current = null;
+        pending.set(null);
+        failures.set(0);
+        retryAt = 0;
+    }
+
+    /**
+     * Reload and compile the schema, then swap it with the cached one. Meant for the node changing
+     * the schema, so that the next requests use the new schema without paying for its loading. If
+     * the reload fails the cache is invalidated.
+     *
+     * @return empty result as a {@link Uni<Void>}, completed once the new schema is in use.
+     */
+    public Uni<Void> reload() {
+        long gen = generation.incrementAndGet();
+        return load(gen)
+                .replaceWithVoid()
+                .onFailure()
+                .recoverWithUni(
+                        e -> {
+                            invalidate();
+                            return Uni.createFrom().voidItem();
+                        });
+    }
+
+    /**
+     * Reload and compile the schema in the background, then swap it with the cached one. Until the
+     * reload completes the previous schema is served.
+     */
+    public void refresh() {
+        debug(LOG, () -> "Refreshing JSON schema cache...");
+        Uni<Schema> load = current == null ? sharedLoad(true) : load(generation.incrementAndGet());
+        load.subscribe().with(s -> debug(LOG, () -> "JSON schema refreshed"), e -> {});
+    }
+
+    private Uni<Schema> sharedLoad(boolean ignoreBackoff) {
+        while (true) {
+            Uni<Schema> p = pending.get();
+            if (p != null) return p;
+            if (!ignoreBackoff && System.nanoTime() < retryAt)
+                return Uni.createFrom().failure(lastFailure);
+            AtomicReference<Uni<Schema>> self = new AtomicReference<>();
+            Uni<Schema> load =
+                    load(generation.get())
+                            .onTermination()
+                            .invoke(() -> pending.compareAndSet(self.get(), null))
+                            .memoize()
+                            .indefinitely();
+            self.set(load);
+            if (pending.compareAndSet(null, load)) return load;
+        }
+    }
+
+    private Uni<Schema> load(long gen) {
+        return Uni.createFrom()
+                .deferred(
+                        () -> {
+                            long start = System.nanoTime();
+                            debug(LOG, () -> "Loading JSON schema...");
+                            return loader.loadSchema()
+                                    .invoke(
+                                            s -> {
+                                                loadTime.record(
+                                                        System.nanoTime() - start,
+                                                        TimeUnit.NANOSECONDS);
+                                                loaded(s, gen);
+                                            })
+                                    .onFailure()
+                                    .invoke(this::failed);
+                        });
+    }
+
+    private void loaded(Schema schema, long gen) {
+        failures.set(0);
+        retryAt = 0;
+        if (generation.get() != gen) return;
+        current = schema;
+        long v = version.incrementAndGet();
+        debug(LOG, () -> "JSON schema cached with version %s".formatted(v));
+    }
+
+    private void failed(Throwable e) {
+        loadFailures.increment();
+        int attempts = failures.incrementAndGet();
+        Duration backoff = MIN_BACKOFF.multipliedBy(1L << Math.min(attempts - 1, 16));
+        if (backoff.compareTo(MAX_BACKOFF) > 0) backoff = MAX_BACKOFF;
+        lastFailure = e;
+        retryAt = System.nanoTime() + backoff.toNanos();
+        LOG.errorf(e, "Error while loading the JSON schema, retrying in %s", backoff);
+        if (!retryScheduled.compareAndSet(false, true)) return;
+        Uni.createFrom()
+                .voidItem()
+                .onItem()
+                .delayIt()
+                .by(backoff)
+                .subscribe()
+                .with(
+                        v -> {
+                            retryScheduled.set(false);
+                            refresh();
+                        });
+    }
+
+    private Counter requests(String result) {
+        return Counter.builder("registry.schema.cache.requests")
+                .description("Requests of the JSON schema by cache result")
+                .tag("result", result)
+                .register(meterRegistry);
     }
 }
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.jsonschema;
+
+import static it.extrared.registry.utils.JsonUtils.nodeIsNotNull;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import it.extrared.registry.metadata.index.IndexDefinition;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Immutable descriptor of a top level property of the DPP metadata JSON schema. Descriptors are
+ * built once when the {@link Schema} is loaded, so that the query builders and the index management
+ * do not need to walk the JSON schema tree for every request.
+ */
+public final class SchemaProperty {
+
+    private final String name;
+
+    private final String type;
+
+    private final String itemType;
+
+    private final boolean nullable;
+
+    private final Pattern pattern;
+
+    private final boolean searchable;
+
+    private SchemaProperty(
+            String name,
+            String type,
+            String itemType,
+            boolean nullable,
+            Pattern pattern,
+            boolean searchable) {
+        this.name = name;
+        this.type = type;
+        this.itemType = itemType;
+        this.nullable = nullable;
+        this.pattern = pattern;
+        this.searchable = searchable;
+    }
+
+    /**
+     * Build the descriptor of a property out of its JSON schema.
+     *
+     * @param name the property name.
+     * @param node the property JSON schema.
+     * @return the {@link SchemaProperty}.
+     */
+    static SchemaProperty of(String name, JsonNode node) {
+        JsonNode typeNode = node.get(Schema.TYPE_KEY);
+        String type = firstNonNullType(typeNode);
+        boolean nullable = type == null || hasNullType(typeNode);
+        String itemType = null;
+        JsonNode items = node.get(Schema.ITEMS_KEY);
+        if ("array".equals(type) && nodeIsNotNull(items) && items.isObject())
+            itemType = firstNonNullType(items.get(Schema.TYPE_KEY));
+        JsonNode flag = node.get(Schema.SEARCHABLE_KEY);
+        boolean searchable = nodeIsNotNull(flag) && flag.asBoolean();
+        return new SchemaProperty(name, type, itemType, nullable, pattern(node), searchable);
+    }
+
+    private static String firstNonNullType(JsonNode type) {
+        if (!nodeIsNotNull(type)) return null;
+        if (type.isTextual()) return type.asText();
+        if (type.isArray()) {
+            for (JsonNode t : type) {
+                if (!"null".equals(t.asText())) return t.asText();
+            }
+        }
+        return null;
+    }
+
+    private static boolean hasNullType(JsonNode type) {
+        if (type.isTextual()) return "null".equals(type.asText());
+        for (JsonNode t : type) {
+            if ("null".equals(t.asText())) return true;
+        }
+        return false;
+    }
+
+    private static Pattern pattern(JsonNode node) {
+        JsonNode pattern = node.get("pattern");
+        if (!nodeIsNotNull(pattern) || !pattern.isTextual()) return null;
+        try {
+            return Pattern.compile(pattern.asText());
+        } catch (PatternSyntaxException e) {
+            return null;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the first non null JSON schema type of the property, null if it has none.
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return the first non null JSON schema type of the items, if the property is an array with a
+     *     single items schema, otherwise null.
+     */
+    public String getItemType() {
+        return itemType;
+    }
+
+    public boolean isArray() {
+        return "array".equals(type);
+    }
+
+    /**
+     * @return true if the property admits null values.
+     */
+    public boolean isNullable() {
+        return nullable;
+    }
+
+    /**
+     * @return the compiled pattern constraining the property values, if any, otherwise null.
+     */
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    /**
+     * @return true if the property is flagged with the {@link Schema#SEARCHABLE_KEY} keyword.
+     */
+    public boolean isSearchable() {
+        return searchable;
+    }
+
+    /**
+     * @return true if the property has a type and a name that can be used to build an index.
+     */
+    public boolean isIndexable() {
+        return type != null && IndexDefinition.isValidField(name);
+    }
+
+    @Override
+    public String toString() {
+        return "SchemaProperty{name='%s', type='%s', nullable=%s, searchable=%s}"
+                .formatted(name, type, nullable, searchable);
+    }
+}
@@ -20,7 +20,6 @@ import static it.extrared.registry.utils.CommonUtils.debug;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import it.extrared.registry.MetadataRegistryConfig;
-import java.util.Iterator;
 import java.util.List;
 import org.jboss.logging.Logger;
 
@@ -49,19 +48,17 @@ public class AutoCompleter {
                 () ->
                         "Performing autocomplete setting missing fields in \n %s from \n %s"
                                 .formatted(base, overlay));
-        Iterator<String> keys = overlay.fieldNames();
-        while (keys.hasNext()) {
-            String k = keys.next();
-            debug(LOG, () -> "Checking if %s is enabled for autocompletion".formatted(k));
-            if (autocompleteFields.contains(k)) {
-                debug(
-                        LOG,
-                        () ->
-                                "Performing autocomplete for %s if base node is missing property"
-                                        .formatted(k));
-                JsonNode val = base.get(k);
-                if (val == null || val.isNull() || val.isMissingNode()) base.set(k, overlay.get(k));
-            }
+        // the overlay is projected on the autocomplete fields, so these are iterated directly.
+        for (String k : autocompleteFields) {
+            JsonNode value = overlay.get(k);
+            if (value == null) continue;
+            debug(
+                    LOG,
+                    () ->
+                            "Performing autocomplete for %s if base node is missing property"
+                                    .formatted(k));
+            JsonNode val = base.get(k);
+            if (val == null || val.isNull() || val.isMissingNode()) base.set(k, value);
         }
     }
 }
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.smallrye.mutiny.Uni;
+import it.extrared.registry.MetadataRegistryConfig;
+import it.extrared.registry.utils.JsonUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * A bounded, least recently used, cache of the entries the autocompletion reads its values from,
+ * enabled by registry.autocompletion-cache-enabled. Entries are keyed by the canonical form of the
+ * filter values and hold only the registry.autocompletion-enabled-for fields of the most recent
+ * matching entry, or its absence. They expire after registry.autocompletion-cache-ttl and the least
+ * recently used are evicted beyond registry.autocompletion-cache-size. A write of this node
+ * invalidates the cached entries it may change, while the writes of other nodes are seen once the
+ * cached entries expire.
+ *
+ * <p>A lookup in flight is held by a loading entry, which the result of the lookup fills only if
+ * the entry was not invalidated meanwhile. Entries are indexed by the value of one of their scalar
+ * filters, the reoId one when present, so that a write only checks the entries sharing one of its
+ * values.
+ */
+@ApplicationScoped
+public class AutoCompletionCache {
+
+    @Inject MetadataRegistryConfig config;
+
+    @Inject MeterRegistry meterRegistry;
+
+    private static final class Cached {
+        private final ObjectNode filters;
+        // the field and canonical value the entry is indexed by, null if it has no scalar filter.
+        private final String indexField;
+        private final String indexValue;
+        private boolean loaded;
+        // the projected fields, null when no entry matches the filters.
+        private JsonNode fields;
+        private long expiresAt;
+
+        private Cached(ObjectNode filters, String indexField) {
+            this.filters = filters;
+            this.indexField = indexField;
+            this.indexValue =
+                    indexField != null ? JsonUtils.canonicalForm(filters.get(indexField)) : null;
+        }
+    }
+
+    private Map<String, Cached> entries;
+
+    // the keys of the entries by index field and value.
+    private final Map<String, Map<String, Set<String>>> index = new HashMap<>();
+
+    private final Set<String> unindexed = new HashSet<>();
+
+    private Counter hits;
+
+    private Counter misses;
+
+    private Counter sizeEvictions;
+
+    private Counter expirations;
+
+    private Counter invalidations;
+
+    @PostConstruct
+    void init() {
+        int maxSize = config.autocompletionCacheSize();
+        entries =
+                new LinkedHashMap<>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+                        if (size() <= maxSize) return false;
+                        unindex(eldest.getKey(), eldest.getValue());
+                        sizeEvictions.increment();
+                        return true;
+                    }
+                };
+        hits = requests("hit");
+        misses = requests("miss");
+        sizeEvictions = evictions("size");
+        expirations = evictions("expired");
+        invalidations = evictions("invalidated");
+        Gauge.builder("registry.autocompletion.cache.size", this, AutoCompletionCache::size)
+                .description("Number of entries in the autocompletion cache")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Get the entry autocompleting metadata with the given filter values, looking it up if not
+     * cached or expired.
+     *
+     * @param filters the filter fields and values.
+     * @param lookup the lookup of the most recent matching entry, projected on the autocompletion
+     *     fields.
+     * @return the matching entry, holding only the autocompletion fields, or null if none matches.
+     */
+    public Uni<DPPMetadataEntry> get(ObjectNode filters, Supplier<Uni<DPPMetadataEntry>> lookup) {
+        if (!config.autocompletionCacheEnabled()) return lookup.get();
+        String key = JsonUtils.canonicalForm(filters);
+        Cached loading;
+        synchronized (this) {
+            Cached cached = entries.get(key);
+            if (cached != null && cached.loaded) {
+                if (System.nanoTime() - cached.expiresAt < 0) {
+                    hits.increment();
+                    return Uni.createFrom().item(entryOf(cached.fields));
+                }
+                remove(key, cached);
+                expirations.increment();
+                cached = null;
+            }
+            // concurrent lookups of the same filters fill the same loading entry.
+            if (cached == null) {
+                cached = new Cached(filters, indexField(filters));
+                entries.put(key, cached);
+                index(key, cached);
+            }
+            loading = cached;
+        }
+        misses.increment();
+        return lookup.get()
+                .invoke(m -> fill(key, loading, m != null ? m.getMetadata().deepCopy() : null))
+                .onFailure()
+                .invoke(e -> discard(key, loading));
+    }
+
+    /**
+     * Invalidate the cached entries a write may change: those whose filters match the written or
+     * the replaced metadata, if the write adds a row or changes the autocompletion or the filter
+     * fields. The lookups in flight for the invalidated entries are not cached.
+     *
+     * @param replaced the entry overwritten by the write, null if the write adds a row.
+     * @param written the written entry.
+     */
+    public void invalidate(DPPMetadataEntry replaced, DPPMetadataEntry written) {
+        if (!config.autocompletionCacheEnabled()) return;
+        JsonNode before = replaced != null ? replaced.getMetadata() : null;
+        JsonNode after = written.getMetadata();
+        List<String> fields = config.autocompletionEnabledFor().orElse(List.of());
+        synchronized (this) {
+            Set<String> candidates = new HashSet<>(unindexed);
+            addIndexed(candidates, after);
+            if (before != null) addIndexed(candidates, before);
+            for (String key : candidates) {
+                Cached cached = entries.get(key);
+                if (cached != null && changes(cached.filters, fields, before, after)) {
+                    remove(key, cached);
+                    invalidations.increment();
+                }
+            }
+        }
+    }
+
+    /** Invalidate all the cached entries, e.g. after a batch or a bulk import. */
+    public void invalidateAll() {
+        if (!config.autocompletionCacheEnabled()) return;
+        synchronized (this) {
+            invalidations.increment(entries.size());
+            entries.clear();
+            index.clear();
+            unindexed.clear();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized void fill(String key, Cached loading, JsonNode fields) {
+        if (entries.get(key) != loading) return;
+        loading.fields = fields;
+        loading.expiresAt = System.nanoTime() + config.autocompletionCacheTtl().toNanos();
+        loading.loaded = true;
+    }
+
+    private synchronized void discard(String key, Cached loading) {
+        if (!loading.loaded && entries.get(key) == loading) remove(key, loading);
+    }
+
+    private String indexField(ObjectNode filters) {
+        JsonNode reoId = filters.get(config.reoidFieldName());
+        if (reoId != null && !reoId.isArray()) return config.reoidFieldName();
+        for (Map.Entry<String, JsonNode> filter : filters.properties()) {
+            if (!filter.getValue().isArray()) return filter.getKey();
+        }
+        return null;
+    }
+
+    private void index(String key, Cached cached) {
+        if (cached.indexField == null) unindexed.add(key);
+        else
+            index.computeIfAbsent(cached.indexField, f -> new HashMap<>())
+                    .computeIfAbsent(cached.indexValue, v -> new HashSet<>())
+                    .add(key);
+    }
+
+    private void unindex(String key, Cached cached) {
+        if (cached.indexField == null) {
+            unindexed.remove(key);
+            return;
+        }
+        Map<String, Set<String>> byValue = index.get(cached.indexField);
+        Set<String> keys = byValue.get(cached.indexValue);
+        keys.remove(key);
+        if (keys.isEmpty()) byValue.remove(cached.indexValue);
+        if (byValue.isEmpty()) index.remove(cached.indexField);
+    }
+
+    private void remove(String key, Cached cached) {
+        entries.remove(key);
+        unindex(key, cached);
+    }
+
+    // the keys of the entries indexed by one of the values of the metadata.
+    private void addIndexed(Set<String> candidates, JsonNode metadata) {
+        for (Map.Entry<String, Map<String, Set<String>>> byField : index.entrySet()) {
+            JsonNode value = metadata.get(byField.getKey());
+            if (value == null) continue;
+            Set<String> keys = byField.getValue().get(JsonUtils.canonicalForm(value));
+            if (keys != null) candidates.addAll(keys);
+        }
+    }
+
+    private static boolean changes(
+            ObjectNode filters, List<String> fields, JsonNode before, JsonNode after) {
+        if (!matches(filters, after) && (before == null || !matches(filters, before))) return false;
+        if (before == null) return true;
+        for (String f : fields) if (!sameValue(before.get(f), after.get(f))) return true;
+        Iterator<String> names = filters.fieldNames();
+        while (names.hasNext()) {
+            String f = names.next();
+            if (!sameValue(before.get(f), after.get(f))) return true;
+        }
+        return false;
+    }
+
+    // array filters are matched by containment: they are conservatively assumed to match.
+    private static boolean matches(ObjectNode filters, JsonNode metadata) {
+        for (Map.Entry<String, JsonNode> filter : filters.properties()) {
+            if (filter.getValue().isArray()) continue;
+            if (!sameValue(filter.getValue(), metadata.get(filter.getKey()))) return false;
+        }
+        return true;
+    }
+
+    private static boolean sameValue(JsonNode a, JsonNode b) {
+        if (a == null || b == null) return a == b;
+        return Objects.equals(JsonUtils.canonicalForm(a), JsonUtils.canonicalForm(b));
+    }
+
+    private static DPPMetadataEntry entryOf(JsonNode fields) {
+        return fields != null ? new DPPMetadataEntry(fields.deepCopy()) : null;
+    }
+
+    private Counter requests(String result) {
+        return Counter.builder("registry.autocompletion.cache.requests")
+                .description("Lookups of the autocompletion entries by cache result")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private Counter evictions(String cause) {
+        return Counter.builder("registry.autocompletion.cache.evictions")
+                .description("Entries removed from the autocompletion cache by cause")
+                .tag("cause", cause)
+                .register(meterRegistry);
+    }
+}
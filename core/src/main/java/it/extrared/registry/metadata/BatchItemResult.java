@@ -0,0 +1,113 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import it.extrared.registry.dpp.validation.ValidationReport;
+
+/** The outcome of the registration of a single item of a metadata batch. */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchItemResult {
+
+    public enum Status {
+        CREATED,
+        UPDATED,
+        FAILED
+    }
+
+    private int index;
+
+    private String upi;
+
+    private String registryId;
+
+    private Status status;
+
+    private String error;
+
+    private ValidationReport validation;
+
+    public BatchItemResult() {}
+
+    public BatchItemResult(int index, String upi, Status status) {
+        this.index = index;
+        this.upi = upi;
+        this.status = status;
+    }
+
+    /**
+     * @return the position of the item in the batch, starting from 0.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public String getUpi() {
+        return upi;
+    }
+
+    public void setUpi(String upi) {
+        this.upi = upi;
+    }
+
+    public String getRegistryId() {
+        return registryId;
+    }
+
+    public void setRegistryId(String registryId) {
+        this.registryId = registryId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    /**
+     * @return the reason of the failure, null if the item was registered.
+     */
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    /**
+     * @return the DPP validation report, if DPP validation is enabled.
+     */
+    public ValidationReport getValidation() {
+        return validation;
+    }
+
+    public void setValidation(ValidationReport validation) {
+        this.validation = validation;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchItemResult{index=%s, upi='%s', registryId='%s', status=%s, error='%s'}"
+                .formatted(index, upi, registryId, status, error);
+    }
+}
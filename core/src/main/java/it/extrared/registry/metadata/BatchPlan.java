@@ -0,0 +1,55 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The writes and failures resulting from the items of a batch sharing the same UPI. Items of a
+ * group are applied in order, each one on top of the state left by the previous ones.
+ */
+class BatchPlan {
+
+    /** A pending write of an entry on behalf of one or more batch items. */
+    static class Write {
+        final DPPMetadataEntry entry;
+        final boolean insert;
+        final List<Integer> indexes = new ArrayList<>();
+
+        Write(DPPMetadataEntry entry, boolean insert) {
+            this.entry = entry;
+            this.insert = insert;
+        }
+    }
+
+    final String upi;
+
+    final DPPMetadataEntry stored;
+
+    // the state of the entry after the items planned so far.
+    DPPMetadataEntry current;
+
+    final List<Write> writes = new ArrayList<>();
+
+    final List<BatchItemResult> failures = new ArrayList<>();
+
+    BatchPlan(String upi, DPPMetadataEntry stored) {
+        this.upi = upi;
+        this.stored = stored;
+        this.current = stored;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** The outcome of a bulk import. */
+public class BulkImportReport {
+
+    /** Maximum number of errors listed in the report. */
+    public static final int MAX_ERRORS = 100;
+
+    private long read;
+
+    private long rejected;
+
+    private long inserted;
+
+    private long updated;
+
+    private long durationMillis;
+
+    private List<String> errors = new ArrayList<>();
+
+    /**
+     * @return the number of entries read from the input.
+     */
+    public long getRead() {
+        return read;
+    }
+
+    public void setRead(long read) {
+        this.read = read;
+    }
+
+    /**
+     * @return the number of entries discarded because not valid.
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    public void setRejected(long rejected) {
+        this.rejected = rejected;
+    }
+
+    /**
+     * @return the number of rows inserted.
+     */
+    public long getInserted() {
+        return inserted;
+    }
+
+    public void setInserted(long inserted) {
+        this.inserted = inserted;
+    }
+
+    /**
+     * @return the number of existing rows updated.
+     */
+    public long getUpdated() {
+        return updated;
+    }
+
+    public void setUpdated(long updated) {
+        this.updated = updated;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    /**
+     * @return the first {@link #MAX_ERRORS} errors, with the line of the rejected entry.
+     */
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<String> errors) {
+        this.errors = errors;
+    }
+
+    /**
+     * Record a rejected entry.
+     *
+     * @param line the line number of the entry.
+     * @param error the reason of the rejection.
+     */
+    public void reject(long line, String error) {
+        rejected++;
+        if (errors.size() < MAX_ERRORS) errors.add("line %s: %s".formatted(line, error));
+    }
+
+    @Override
+    public String toString() {
+        return "BulkImportReport{read=%s, rejected=%s, inserted=%s, updated=%s, durationMillis=%s}"
+                .formatted(read, rejected, inserted, updated, durationMillis);
+    }
+}
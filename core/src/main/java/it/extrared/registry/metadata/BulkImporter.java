@@ -0,0 +1,37 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata;
+
+import java.io.InputStream;
+
+/**
+ * Datastore specific fast path to load large amounts of DPP metadata entries, e.g. when migrating
+ * an existing registry. Implementations are blocking and must not be invoked on an event loop
+ * thread.
+ */
+public interface BulkImporter {
+
+    /**
+     * Import the entries read from a newline delimited JSON stream, one entry per line. Entries are
+     * validated against the current JSON schema, invalid ones are reported and skipped. The valid
+     * ones are then stored honouring the configured update strategy. DPP validation and
+     * autocompletion are not applied.
+     *
+     * @param ndjson the stream of entries.
+     * @return the outcome of the import.
+     */
+    BulkImportReport importEntries(InputStream ndjson);
+}
@@ -18,11 +18,18 @@ package it.extrared.registry.metadata;
 import static it.extrared.registry.utils.CommonUtils.DATE_TIME_FORMAT;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.JsonNode;
+import it.extrared.registry.utils.JsonUtils;
 import java.time.LocalDateTime;
 import java.util.Objects;
+import java.util.function.Function;
 
-/** Data class representing a DPPMetadata entry. */
+/**
+ * Data class representing a DPPMetadata entry. An entry read from the datastore can hold the raw
+ * JSON text of its metadata, parsed only on the first access to {@link #getMetadata()}, so that
+ * callers using only the registry id or the timestamps do not pay for the parsing.
+ */
 public class DPPMetadataEntry {
 
     private String registryId;
@@ -33,8 +40,18 @@ public class DPPMetadataEntry {
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = DATE_TIME_FORMAT)
     private LocalDateTime modifiedAt;
 
+    // incremented by every update of the stored row, exposed through the entity tag only.
+    @JsonIgnore private long version;
+
+    // the canonical hash of the metadata as stored with the row, if any.
+    @JsonIgnore private String contentHash;
+
     private JsonNode metadata;
 
+    private String rawMetadata;
+
+    private Function<String, JsonNode> decoder;
+
     public DPPMetadataEntry(JsonNode metadata) {
         this.metadata = metadata;
     }
@@ -65,12 +82,83 @@ public class DPPMetadataEntry {
         this.modifiedAt = modifiedAt;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * @return an opaque tag identifying this version of the entry, changing with the registry id
+     *     under APPEND_WITH_NEW_ID and with the row version under MODIFY.
+     */
+    @JsonIgnore
+    public String getEntityTag() {
+        return registryId + "-" + version;
+    }
+
+    /**
+     * @return the canonical hash of the metadata, see {@link JsonUtils#contentHash(JsonNode)}: the
+     *     one stored with the entry if read from the datastore, otherwise computed on each call.
+     */
+    @JsonIgnore
+    public String getContentHash() {
+        if (contentHash != null) return contentHash;
+        JsonNode metadata = getMetadata();
+        return metadata != null ? JsonUtils.contentHash(metadata) : null;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    /**
+     * @return a copy of this entry, whose metadata can be changed without affecting this one. Raw
+     *     metadata are shared, each copy parsing them on its first access.
+     */
+    public DPPMetadataEntry copy() {
+        DPPMetadataEntry copy = new DPPMetadataEntry();
+        copy.registryId = registryId;
+        copy.createdAt = createdAt;
+        copy.modifiedAt = modifiedAt;
+        copy.version = version;
+        copy.rawMetadata = rawMetadata;
+        copy.decoder = decoder;
+        copy.metadata = metadata != null ? metadata.deepCopy() : null;
+        copy.contentHash = contentHash;
+        return copy;
+    }
+
     public JsonNode getMetadata() {
+        if (rawMetadata != null) {
+            metadata = decoder.apply(rawMetadata);
+            rawMetadata = null;
+            decoder = null;
+        }
         return metadata;
     }
 
     public void setMetadata(JsonNode metadata) {
         this.metadata = metadata;
+        this.contentHash = null;
+        this.rawMetadata = null;
+        this.decoder = null;
+    }
+
+    /**
+     * Set the metadata as raw JSON text, to be parsed on the first access to {@link
+     * #getMetadata()}.
+     *
+     * @param rawMetadata the JSON text of the metadata.
+     * @param decoder the function parsing the JSON text.
+     */
+    public void setRawMetadata(String rawMetadata, Function<String, JsonNode> decoder) {
+        this.metadata = null;
+        this.contentHash = null;
+        this.rawMetadata = rawMetadata;
+        this.decoder = rawMetadata != null ? decoder : null;
     }
 
     @Override
@@ -80,12 +168,12 @@ public class DPPMetadataEntry {
         return Objects.equals(registryId, that.registryId)
                 && Objects.equals(createdAt, that.createdAt)
                 && Objects.equals(modifiedAt, that.modifiedAt)
-                && Objects.equals(metadata, that.metadata);
+                && Objects.equals(getMetadata(), that.getMetadata());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(registryId, createdAt, modifiedAt, metadata);
+        return Objects.hash(registryId, createdAt, modifiedAt, getMetadata());
     }
 
     @Override
@@ -99,7 +187,7 @@ public class DPPMetadataEntry {
                 + ", modifiedAt="
                 + modifiedAt
                 + ", metadata="
-                + metadata
+                + getMetadata()
                 + '}';
     }
 }
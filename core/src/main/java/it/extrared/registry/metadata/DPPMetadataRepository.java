@@ -16,11 +16,14 @@
 package it.extrared.registry.metadata;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.smallrye.mutiny.Uni;
 import io.smallrye.mutiny.tuples.Tuple2;
-import io.smallrye.mutiny.unchecked.Unchecked;
 import io.vertx.mutiny.sqlclient.Row;
 import io.vertx.mutiny.sqlclient.SqlConnection;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.function.BiFunction;
 import java.util.function.Function;
@@ -35,18 +38,169 @@ public interface DPPMetadataRepository {
 
     Uni<DPPMetadataEntry> findBy(SqlConnection conn, List<Tuple2<String, Object>> filters);
 
+    /**
+     * Retrieve the most recent entry matching the filters, selecting only some of its metadata
+     * fields (see {@link #mapProjection(Row, List, Function)}).
+     *
+     * @param conn a {@link SqlConnection}.
+     * @param filters the filters as pairs of metadata field and value.
+     * @param fields the metadata fields to select.
+     * @return the found entry, whose metadata hold only the selected fields found, or null.
+     */
+    Uni<DPPMetadataEntry> findBy(
+            SqlConnection conn, List<Tuple2<String, Object>> filters, List<String> fields);
+
     Uni<DPPMetadataEntry> save(SqlConnection conn, DPPMetadataEntry metadata);
 
+    /**
+     * Update the stored entry with the same UPI, only if it still has the version of the argument,
+     * incrementing it.
+     *
+     * @param con a {@link SqlConnection}.
+     * @param metadata the entry to write.
+     * @return the updated entry, holding the new version.
+     * @throws it.extrared.registry.exceptions.ConcurrentUpdateException if the stored entry has a
+     *     different version.
+     */
     Uni<DPPMetadataEntry> update(SqlConnection con, DPPMetadataEntry metadata);
 
-    BiFunction<Row, Function<Row, JsonNode>, DPPMetadataEntry> ROW_MAPPER =
-            Unchecked.function(
-                    (r, f) -> {
-                        DPPMetadataEntry metadata = new DPPMetadataEntry();
-                        metadata.setRegistryId(r.getString("registry_id"));
-                        metadata.setMetadata(f.apply(r));
-                        metadata.setCreatedAt(r.getLocalDateTime("created_at"));
-                        metadata.setModifiedAt(r.getLocalDateTime("modified_at"));
-                        return metadata;
-                    });
+    /**
+     * Insert the entry or, if an entry with the same UPI already exists, merge it into the stored
+     * one with the same semantics of {@link JsonMerger}, using a single statement. The registry id,
+     * metadata and timestamps of the argument are replaced with the ones of the written row.
+     *
+     * @param conn a {@link SqlConnection}.
+     * @param metadata the entry to insert or merge.
+     * @return the written entry.
+     */
+    Uni<DPPMetadataEntry> upsert(SqlConnection conn, DPPMetadataEntry metadata);
+
+    /**
+     * Retrieve the most recent entry of each of the given UPIs.
+     *
+     * @param conn a {@link SqlConnection}.
+     * @param upis the UPIs to look up.
+     * @return the found entries, at most one for each UPI.
+     */
+    Uni<List<DPPMetadataEntry>> findByUpis(SqlConnection conn, Collection<String> upis);
+
+    /**
+     * Insert several entries with a single batched statement, assigning them a new registry id.
+     *
+     * @param conn a {@link SqlConnection}.
+     * @param metadata the entries to insert.
+     * @return the inserted entries.
+     */
+    Uni<List<DPPMetadataEntry>> saveAll(SqlConnection conn, List<DPPMetadataEntry> metadata);
+
+    /**
+     * Update several entries, identified by their UPI, with a single batched statement. As for
+     * {@link #update(SqlConnection, DPPMetadataEntry)} each entry is updated only if the stored one
+     * still has its version.
+     *
+     * @param conn a {@link SqlConnection}.
+     * @param metadata the entries to update.
+     * @return the updated entries, holding the new versions.
+     * @throws it.extrared.registry.exceptions.ConcurrentUpdateException if a stored entry has a
+     *     different version.
+     */
+    Uni<List<DPPMetadataEntry>> updateAll(SqlConnection conn, List<DPPMetadataEntry> metadata);
+
+    /**
+     * Retrieve a page of the distinct UPIs stored, in ascending order.
+     *
+     * @param conn a {@link SqlConnection}.
+     * @param after the UPI after which the page starts, or null for the first page.
+     * @param limit the maximum number of UPIs to return.
+     * @return the UPIs of the page.
+     */
+    Uni<List<String>> findUpis(SqlConnection conn, String after, int limit);
+
+    /**
+     * Retrieve every entry, i.e. every version, of the given UPIs, locking them until the end of
+     * the transaction of the connection.
+     *
+     * @param conn a {@link SqlConnection}.
+     * @param upis the UPIs to look up.
+     * @return the found entries.
+     */
+    Uni<List<DPPMetadataEntry>> findAllByUpis(SqlConnection conn, Collection<String> upis);
+
+    /**
+     * Insert several entries as they are, keeping their registry id, timestamps and version, e.g.
+     * to move them to another shard. The entries conflicting with a row already stored are skipped.
+     *
+     * @param conn a {@link SqlConnection}.
+     * @param metadata the entries to insert.
+     * @return empty result as a {@link Uni<Void>}.
+     */
+    Uni<Void> copyAll(SqlConnection conn, List<DPPMetadataEntry> metadata);
+
+    /**
+     * Delete every entry of the given UPIs.
+     *
+     * @param conn a {@link SqlConnection}.
+     * @param upis the UPIs whose entries are deleted.
+     * @return empty result as a {@link Uni<Void>}.
+     */
+    Uni<Void> deleteByUpis(SqlConnection conn, Collection<String> upis);
+
+    /**
+     * Retrieve every version of a UPI, the most recent first.
+     *
+     * @param conn a {@link SqlConnection}.
+     * @param upi the UPI.
+     * @return the versions of the UPI.
+     */
+    Uni<List<DPPMetadataEntry>> findVersions(SqlConnection conn, String upi);
+
+    /**
+     * Retrieve the version of a UPI that was the most recent at the given time.
+     *
+     * @param conn a {@link SqlConnection}.
+     * @param upi the UPI.
+     * @param at the time.
+     * @return the found entry or null if the UPI was not registered yet at that time.
+     */
+    Uni<DPPMetadataEntry> findByUpiAsOf(SqlConnection conn, String upi, LocalDateTime at);
+
+    /**
+     * Map a row with the registry_id, metadata, created_at and modified_at columns, the metadata
+     * being selected as JSON text, and optionally the version and content_hash columns. The
+     * metadata are parsed with the given function on first access.
+     */
+    BiFunction<Row, Function<String, JsonNode>, DPPMetadataEntry> ROW_MAPPER =
+            (r, decoder) -> {
+                DPPMetadataEntry metadata = new DPPMetadataEntry();
+                metadata.setRegistryId(r.getString("registry_id"));
+                metadata.setRawMetadata(r.getString("metadata"), decoder);
+                metadata.setCreatedAt(r.getLocalDateTime("created_at"));
+                metadata.setModifiedAt(r.getLocalDateTime("modified_at"));
+                if (r.getColumnIndex("version") >= 0) metadata.setVersion(r.getLong("version"));
+                if (r.getColumnIndex("content_hash") >= 0)
+                    metadata.setContentHash(r.getString("content_hash"));
+                return metadata;
+            };
+
+    /**
+     * Map a row with the registry_id, created_at and modified_at columns and, in place of the
+     * metadata, a column named p0, p1... for each projected field, holding the JSON text of the
+     * field value or null if the field is missing.
+     */
+    static DPPMetadataEntry mapProjection(
+            Row r, List<String> fields, Function<String, JsonNode> decoder) {
+        ObjectNode projected = JsonNodeFactory.instance.objectNode();
+        for (int i = 0; i < fields.size(); i++) {
+            String raw = r.getString(PROJECTION_PREFIX + i);
+            if (raw != null) projected.set(fields.get(i), decoder.apply(raw));
+        }
+        DPPMetadataEntry metadata = new DPPMetadataEntry(projected);
+        metadata.setRegistryId(r.getString("registry_id"));
+        metadata.setCreatedAt(r.getLocalDateTime("created_at"));
+        metadata.setModifiedAt(r.getLocalDateTime("modified_at"));
+        return metadata;
+    }
+
+    /** Prefix of the column names of the projected metadata fields. */
+    String PROJECTION_PREFIX = "p";
 }
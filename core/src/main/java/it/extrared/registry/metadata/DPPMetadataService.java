@@ -15,26 +15,48 @@
  */
 package it.extrared.registry.metadata;
 
+import static it.extrared.registry.utils.CommonUtils.debug;
+
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.networknt.schema.ValidationMessage;
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
 import io.smallrye.mutiny.tuples.Tuple2;
 import io.vertx.mutiny.sqlclient.Pool;
 import io.vertx.mutiny.sqlclient.SqlConnection;
 import it.extrared.registry.MetadataRegistryConfig;
+import it.extrared.registry.datasource.ReadPoolRouter;
 import it.extrared.registry.dpp.validation.DPPValidator;
+import it.extrared.registry.dpp.validation.ValidatedMetadataEntry;
+import it.extrared.registry.exceptions.ConcurrentUpdateException;
+import it.extrared.registry.exceptions.InvalidDPPException;
+import it.extrared.registry.exceptions.PreconditionFailedException;
 import it.extrared.registry.exceptions.SchemaValidationException;
 import it.extrared.registry.jsonschema.SchemaCache;
+import it.extrared.registry.metadata.filter.UpiFilter;
+import it.extrared.registry.metadata.shard.MetadataShards;
+import it.extrared.registry.metadata.shard.ShardRebalancer;
 import it.extrared.registry.metadata.update.DPPMetadataUpdater;
+import it.extrared.registry.metadata.update.UpdateType;
 import it.extrared.registry.security.UserAttributesAccessor;
+import it.extrared.registry.utils.CommonUtils;
+import it.extrared.registry.utils.JsonUtils;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.function.Function;
+import org.jboss.logging.Logger;
 
 /** Service class handling create and update operations over DPP metadata. */
 @ApplicationScoped
@@ -53,22 +75,382 @@ public class DPPMetadataService {
 
     @Inject UserAttributesAccessor attributesAccessor;
 
-    @Inject Pool pool;
+    @Inject MetadataShards shards;
+
+    @Inject ShardRebalancer rebalancer;
+
+    @Inject ReadPoolRouter readPools;
+
+    @Inject UpiFilter upiFilter;
+
+    @Inject WriteCoalescer coalescer;
+
+    @Inject GroupCommitter groupCommitter;
+
+    @Inject AutoCompletionCache autoCompletionCache;
+
+    @Inject LookupCoalescer lookups;
+
+    private static final Logger LOG = Logger.getLogger(DPPMetadataService.class);
+
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+
+    // JSONB may return a number with a different representation than the one it was given.
+    private static final Comparator<JsonNode> NUMERIC_AWARE =
+            (a, b) -> {
+                if (a.equals(b)) return 0;
+                if (a.isNumber() && b.isNumber())
+                    return a.decimalValue().compareTo(b.decimalValue());
+                return 1;
+            };
 
     /**
      * Save or update a metadata entry by executing the autocompletion if provided. The way in which
      * data should be updated depends upon the configured {@link
-     * MetadataRegistryConfig#updateStrategy()} i.e. property registry.update-strategy.
+     * MetadataRegistryConfig#updateStrategy()} i.e. property registry.update-strategy. The
+     * autocompletion and the validation, which may fetch the DPP from a remote host, run before the
+     * write transaction is opened. The transaction only checks that the stored entry did not change
+     * in the meantime and writes, updates being conditioned to the version of the stored row: if it
+     * did change, the entry is merged and validated again for up to {@value #MAX_WRITE_ATTEMPTS}
+     * attempts, before failing with a {@link ConcurrentUpdateException}. With
+     * registry.write-coalescing-enabled, submissions of a UPI concurrent to a write of it are
+     * merged and written together by the {@link WriteCoalescer}, and with
+     * registry.group-commit-enabled the writes are committed in groups by the {@link
+     * GroupCommitter}. Under MODIFY, a submission whose merge with the stored entry has the same
+     * {@link DPPMetadataEntry#getContentHash()} is neither validated nor written, and the stored
+     * entry is returned.
      *
      * @param metadata the metadata to save/update.
      * @param autocompleteBy the fields to use to retrieve autocompleting values for metadata.
      * @return the saved/updated {@link DPPMetadataEntry}.
      */
     public Uni<DPPMetadataEntry> saveOrUpdate(JsonNode metadata, List<String> autocompleteBy) {
-        return pool.withTransaction(
-                c ->
-                        validateUpi(metadata)
-                                .flatMap(v -> saveOrUpdateInternal(c, metadata, autocompleteBy)));
+        return saveOrUpdate(metadata, autocompleteBy, null);
+    }
+
+    /**
+     * Save or update a metadata entry as {@link #saveOrUpdate(JsonNode, List)}, only if the stored
+     * entry of its UPI has one of the given entity tags (see {@link
+     * DPPMetadataEntry#getEntityTag()}), or exists at all if they include *. The write fails with a
+     * {@link PreconditionFailedException} otherwise, including when the entry changes before it is
+     * written.
+     *
+     * @param metadata the metadata to save/update.
+     * @param autocompleteBy the fields to use to retrieve autocompleting values for metadata.
+     * @param ifMatch the expected entity tags of the stored entry, or null for an unconditional
+     *     write.
+     * @return the saved/updated {@link DPPMetadataEntry}.
+     */
+    public Uni<DPPMetadataEntry> saveOrUpdate(
+            JsonNode metadata, List<String> autocompleteBy, List<String> ifMatch) {
+        return validateUpi(metadata)
+                .invoke(v -> applyReoIdClaim(metadata))
+                .flatMap(
+                        v ->
+                                applyAutoComplete(
+                                        metadata,
+                                        autocompleteBy != null
+                                                ? new ArrayList<>(autocompleteBy)
+                                                : null))
+                .call(v -> rebalancer.moveMisplaced(List.of(upiOf(metadata))))
+                .flatMap(
+                        v -> {
+                            if (ifMatch == null && coalescingEnabled())
+                                return coalescer.submit(
+                                        upiOf(metadata),
+                                        metadata,
+                                        m -> saveOrUpdateInternal(m, null, MAX_WRITE_ATTEMPTS));
+                            return saveOrUpdateInternal(metadata, ifMatch, MAX_WRITE_ATTEMPTS);
+                        });
+    }
+
+    // merged submissions are written as a single update, which only MODIFY keeps as such.
+    private boolean coalescingEnabled() {
+        return config.writeCoalescingEnabled() && config.updateStrategy() == UpdateType.MODIFY;
+    }
+
+    /**
+     * Retrieve the version of a UPI that was the most recent at the given time or, without it, the
+     * current one.
+     *
+     * @param upi the UPI.
+     * @param at the time, or null for the current version.
+     * @return the found {@link DPPMetadataEntry} or null.
+     */
+    public Uni<DPPMetadataEntry> findByUpi(String upi, LocalDateTime at) {
+        if (at == null) return lookupCurrent(upi);
+        return shards.readFor(upi, c -> repository.findByUpiAsOf(c, upi, at), Objects::isNull);
+    }
+
+    private Uni<DPPMetadataEntry> lookupCurrent(String upi) {
+        return lookups.lookup(
+                LookupCoalescer.Lookup.UPI,
+                upi,
+                () -> shards.readFor(upi, c -> repository.findByUpi(c, upi), Objects::isNull));
+    }
+
+    /**
+     * Retrieve every version of a UPI, the most recent first. Versions are stored only with the
+     * APPEND_WITH_NEW_ID update strategy, the other ones keep only the current version.
+     *
+     * @param upi the UPI.
+     * @return the versions of the UPI.
+     */
+    public Uni<List<DPPMetadataEntry>> findVersions(String upi) {
+        return shards.readFor(upi, c -> repository.findVersions(c, upi), List::isEmpty);
+    }
+
+    /**
+     * Save or update a batch of metadata entries according to the configured {@link
+     * MetadataRegistryConfig#updateStrategy()}. Items are grouped by UPI, so that the items sharing
+     * a UPI are applied in order, and the groups are validated in parallel. Entries are then
+     * written in chunks of registry.batch-chunk-size entries, each chunk in its own transaction. A
+     * failing item, or chunk, does not abort the rest of the batch. Autocompletion is not applied
+     * to batch items.
+     *
+     * @param items the metadata to save/update.
+     * @return the result of each item, in the same order of the items.
+     */
+    public Uni<List<BatchItemResult>> saveOrUpdateAll(List<JsonNode> items) {
+        List<BatchItemResult> invalid = new ArrayList<>();
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            JsonNode item = items.get(i);
+            if (item == null || !item.isObject() || !item.hasNonNull(config.upiFieldName())) {
+                invalid.add(
+                        failed(
+                                i,
+                                null,
+                                "DPP metadata must be a JSON object declaring a %s field"
+                                        .formatted(config.upiFieldName())));
+                continue;
+            }
+            applyReoIdClaim(item);
+            groups.computeIfAbsent(upiOf(item), k -> new ArrayList<>()).add(i);
+        }
+        debug(
+                LOG,
+                () ->
+                        "Registering a batch of %s items with %s distinct UPIs"
+                                .formatted(items.size(), groups.size()));
+        return rebalancer
+                .moveMisplaced(groups.keySet())
+                .flatMap(v -> findStored(new ArrayList<>(groups.keySet())))
+                .flatMap(
+                        stored ->
+                                Multi.createFrom()
+                                        .iterable(groups.entrySet())
+                                        .onItem()
+                                        .transformToUni(
+                                                g ->
+                                                        plan(
+                                                                new BatchPlan(
+                                                                        g.getKey(),
+                                                                        stored.get(g.getKey())),
+                                                                g.getValue(),
+                                                                items))
+                                        .merge(config.batchParallelism())
+                                        .collect()
+                                        .asList())
+                .flatMap(this::writeInChunks)
+                .map(
+                        results -> {
+                            results.addAll(invalid);
+                            results.sort(Comparator.comparingInt(BatchItemResult::getIndex));
+                            return results;
+                        });
+    }
+
+    private Uni<Map<String, DPPMetadataEntry>> findStored(List<String> upis) {
+        List<Tuple2<Pool, List<String>>> chunks = new ArrayList<>();
+        shards.partition(upis, u -> u)
+                .forEach(
+                        (p, l) ->
+                                CommonUtils.partition(l, config.batchChunkSize())
+                                        .forEach(chunk -> chunks.add(Tuple2.of(p, chunk))));
+        return Multi.createFrom()
+                .iterable(chunks)
+                .onItem()
+                .transformToUniAndConcatenate(
+                        chunk ->
+                                chunk.getItem1()
+                                        .withConnection(
+                                                c -> repository.findByUpis(c, chunk.getItem2())))
+                .collect()
+                .in(
+                        HashMap::new,
+                        (Map<String, DPPMetadataEntry> m, List<DPPMetadataEntry> l) ->
+                                l.forEach(e -> m.put(upiOf(e.getMetadata()), e)));
+    }
+
+    private Uni<BatchPlan> plan(BatchPlan plan, List<Integer> indexes, List<JsonNode> items) {
+        Uni<BatchPlan> planned = Uni.createFrom().item(plan);
+        for (Integer i : indexes) planned = planned.call(p -> planItem(p, i, items.get(i)));
+        // schema validation is CPU bound: spread the groups over the worker pool.
+        return planned.runSubscriptionOn(Infrastructure.getDefaultWorkerPool());
+    }
+
+    private Uni<Void> planItem(BatchPlan plan, int index, JsonNode item) {
+        if (plan.current != null && config.updateStrategy() == UpdateType.NONE) {
+            plan.failures.add(
+                    failed(
+                            index,
+                            plan.upi,
+                            "DPP registry entry for product with upi %s is already present"
+                                    .formatted(plan.upi)));
+            return Uni.createFrom().voidItem();
+        }
+        DPPMetadataEntry candidate = candidate(plan.current, item);
+        return validate(candidate.getMetadata())
+                .flatMap(v -> applyValidation(candidate))
+                .invoke(validated -> accept(plan, index, validated))
+                .replaceWithVoid()
+                .onFailure()
+                .recoverWithItem(
+                        e -> {
+                            plan.failures.add(failed(index, plan.upi, e));
+                            return null;
+                        });
+    }
+
+    // the entry resulting from applying an item on top of the current state of its UPI.
+    private DPPMetadataEntry candidate(DPPMetadataEntry current, JsonNode item) {
+        LocalDateTime now = LocalDateTime.now();
+        if (current == null) {
+            DPPMetadataEntry entry = new DPPMetadataEntry(item);
+            entry.setCreatedAt(now);
+            entry.setModifiedAt(now);
+            return entry;
+        }
+        DPPMetadataEntry entry =
+                new DPPMetadataEntry(
+                        new JsonMerger()
+                                .merge(
+                                        ((ObjectNode) current.getMetadata()).deepCopy(),
+                                        (ObjectNode) item));
+        boolean append = config.updateStrategy() == UpdateType.APPEND_WITH_NEW_ID;
+        if (!append) {
+            entry.setRegistryId(current.getRegistryId());
+            entry.setVersion(current.getVersion());
+        }
+        entry.setCreatedAt(append ? now : current.getCreatedAt());
+        entry.setModifiedAt(now);
+        return entry;
+    }
+
+    private void accept(BatchPlan plan, int index, DPPMetadataEntry entry) {
+        plan.current = entry;
+        BatchPlan.Write write;
+        if (config.updateStrategy() == UpdateType.MODIFY && !plan.writes.isEmpty()) {
+            // a single row per UPI: the entry replaces the one planned by the previous items.
+            BatchPlan.Write previous = plan.writes.removeLast();
+            write = new BatchPlan.Write(entry, previous.insert);
+            write.indexes.addAll(previous.indexes);
+        } else {
+            boolean insert = config.updateStrategy() != UpdateType.MODIFY || plan.stored == null;
+            write = new BatchPlan.Write(entry, insert);
+        }
+        write.indexes.add(index);
+        plan.writes.add(write);
+    }
+
+    private Uni<List<BatchItemResult>> writeInChunks(List<BatchPlan> plans) {
+        List<BatchItemResult> results = new ArrayList<>();
+        List<BatchPlan.Write> writes = new ArrayList<>();
+        for (BatchPlan p : plans) {
+            results.addAll(p.failures);
+            writes.addAll(p.writes);
+        }
+        // a chunk is written in a single transaction: its writes must belong to the same shard.
+        List<Tuple2<Pool, List<BatchPlan.Write>>> chunks = new ArrayList<>();
+        shards.partition(writes, w -> upiOf(w.entry.getMetadata()))
+                .forEach(
+                        (p, l) ->
+                                CommonUtils.partition(l, config.batchChunkSize())
+                                        .forEach(chunk -> chunks.add(Tuple2.of(p, chunk))));
+        return Multi.createFrom()
+                .iterable(chunks)
+                .onItem()
+                .transformToUniAndConcatenate(c -> writeChunk(c.getItem1(), c.getItem2()))
+                .collect()
+                .in(() -> results, List::addAll);
+    }
+
+    private Uni<List<BatchItemResult>> writeChunk(Pool pool, List<BatchPlan.Write> chunk) {
+        List<DPPMetadataEntry> inserts =
+                chunk.stream().filter(w -> w.insert).map(w -> w.entry).toList();
+        List<DPPMetadataEntry> updates =
+                chunk.stream().filter(w -> !w.insert).map(w -> w.entry).toList();
+        Uni<Void> written =
+                pool.withTransaction(
+                        c -> {
+                            Uni<Void> saved =
+                                    inserts.isEmpty()
+                                            ? Uni.createFrom().voidItem()
+                                            : repository.saveAll(c, inserts).replaceWithVoid();
+                            return updates.isEmpty()
+                                    ? saved
+                                    : saved.call(v -> repository.updateAll(c, updates));
+                        });
+        return written.invoke(
+                        v ->
+                                chunk.forEach(
+                                        w -> {
+                                            String upi = upiOf(w.entry.getMetadata());
+                                            upiFilter.add(upi);
+                                            lookups.forget(LookupCoalescer.Lookup.UPI, upi);
+                                        }))
+                .invoke(v -> autoCompletionCache.invalidateAll())
+                .map(
+                        v ->
+                                chunk.stream()
+                                        .flatMap(w -> w.indexes.stream().map(i -> succeeded(i, w)))
+                                        .toList())
+                .onFailure()
+                .recoverWithItem(e -> failedChunk(chunk, e));
+    }
+
+    private List<BatchItemResult> failedChunk(List<BatchPlan.Write> chunk, Throwable e) {
+        LOG.error("Error while writing a chunk of a metadata batch", e);
+        List<BatchItemResult> results = new ArrayList<>();
+        for (BatchPlan.Write w : chunk) {
+            String upi = upiOf(w.entry.getMetadata());
+            w.indexes.forEach(i -> results.add(failed(i, upi, e)));
+        }
+        return results;
+    }
+
+    private BatchItemResult succeeded(int index, BatchPlan.Write write) {
+        BatchItemResult result =
+                new BatchItemResult(
+                        index,
+                        upiOf(write.entry.getMetadata()),
+                        write.insert
+                                ? BatchItemResult.Status.CREATED
+                                : BatchItemResult.Status.UPDATED);
+        result.setRegistryId(write.entry.getRegistryId());
+        if (write.entry instanceof ValidatedMetadataEntry v)
+            result.setValidation(v.getValidation());
+        return result;
+    }
+
+    private static BatchItemResult failed(int index, String upi, String error) {
+        BatchItemResult result = new BatchItemResult(index, upi, BatchItemResult.Status.FAILED);
+        result.setError(error);
+        return result;
+    }
+
+    private static BatchItemResult failed(int index, String upi, Throwable e) {
+        BatchItemResult result = failed(index, upi, e.getMessage());
+        if (e instanceof InvalidDPPException ide) {
+            result.setError("The DPP is not valid");
+            result.setValidation(ide.getValidationReport());
+        }
+        return result;
+    }
+
+    private String upiOf(JsonNode metadata) {
+        return metadata.get(config.upiFieldName()).asText();
     }
 
     private Uni<Void> validateUpi(JsonNode metadata) {
@@ -84,28 +466,146 @@ public class DPPMetadataService {
     }
 
     private Uni<DPPMetadataEntry> saveOrUpdateInternal(
-            SqlConnection conn, JsonNode metadata, List<String> autocompleteBy) {
+            JsonNode metadata, List<String> ifMatch, int attempts) {
+        String upi = upiOf(metadata);
+        return findCurrent(upi, attempts < MAX_WRITE_ATTEMPTS || ifMatch != null)
+                .invoke(stored -> checkPrecondition(upi, stored, ifMatch))
+                .flatMap(
+                        stored ->
+                                prepare(stored, metadata)
+                                        .flatMap(
+                                                prepared ->
+                                                        prepared == stored
+                                                                ? Uni.createFrom().item(stored)
+                                                                : writeInTransaction(
+                                                                        upi, stored, metadata,
+                                                                        prepared)))
+                .invoke(m -> upiFilter.add(upi))
+                .onFailure(ConcurrentUpdateException.class)
+                .recoverWithUni(
+                        e -> {
+                            // the UPI may be stored by another node and still missing in the
+                            // filter.
+                            upiFilter.add(upi);
+                            if (attempts <= 1) return Uni.createFrom().failure(e);
+                            debug(
+                                    LOG,
+                                    () ->
+                                            "Entry with upi %s changed while validating, retrying"
+                                                    .formatted(upi));
+                            return saveOrUpdateInternal(metadata, ifMatch, attempts - 1);
+                        });
+    }
+
+    // the lookups and the autocompletion entries the write may change are invalidated once it is
+    // committed.
+    private Uni<DPPMetadataEntry> writeInTransaction(
+            String upi, DPPMetadataEntry stored, JsonNode metadata, DPPMetadataEntry prepared) {
+        return inTransaction(upi, prepared, c -> write(c, stored, metadata, prepared))
+                .invoke(
+                        m -> {
+                            lookups.forget(LookupCoalescer.Lookup.UPI, upi);
+                            autoCompletionCache.invalidate(replaced(stored), m);
+                        });
+    }
+
+    // the stored entry is overwritten under MODIFY only: the other strategies add a row.
+    private DPPMetadataEntry replaced(DPPMetadataEntry stored) {
+        return config.updateStrategy() == UpdateType.MODIFY ? stored : null;
+    }
+
+    // a retry re-reads the stored entry, which then no longer matches the expected tags.
+    private static void checkPrecondition(
+            String upi, DPPMetadataEntry stored, List<String> ifMatch) {
+        if (ifMatch == null) return;
+        boolean matches =
+                ifMatch.contains("*")
+                        ? stored != null
+                        : stored != null && ifMatch.contains(stored.getEntityTag());
+        if (!matches) throw new PreconditionFailedException(upi);
+    }
+
+    // an upsert detects a concurrent change only after writing: it needs a transaction of its own.
+    private Uni<DPPMetadataEntry> inTransaction(
+            String upi,
+            DPPMetadataEntry entry,
+            Function<SqlConnection, Uni<DPPMetadataEntry>> write) {
+        if (config.groupCommitEnabled() && !upsertEnabled())
+            return groupCommitter.submit(shards.poolFor(upi), upi, entry, write);
+        return shards.poolFor(upi).withTransaction(write);
+    }
+
+    // a UPI never seen by the filter is not looked up: the write transaction checks it anyway. A
+    // retry does not join a lookup in flight, which may return the entry it conflicted with.
+    private Uni<DPPMetadataEntry> findCurrent(String upi, boolean retry) {
+        if (!retry && !upiFilter.mightContain(upi)) return Uni.createFrom().nullItem();
+        Uni<DPPMetadataEntry> current =
+                retry
+                        ? shards.poolFor(upi).withConnection(c -> repository.findByUpi(c, upi))
+                        : lookupCurrent(upi);
+        return current.invoke(
+                m -> {
+                    if (m == null && !retry) upiFilter.recordFalsePositive();
+                });
+    }
+
+    // builds and validates, outside any transaction, the entry to be written.
+    private Uni<DPPMetadataEntry> prepare(DPPMetadataEntry stored, JsonNode metadata) {
+        // the NONE strategy rejects the write anyway: skip the validation.
+        if (stored != null && config.updateStrategy() == UpdateType.NONE)
+            return Uni.createFrom().item(new DPPMetadataEntry(metadata));
+        DPPMetadataEntry candidate = candidate(stored, metadata);
+        if (unchanged(stored, candidate)) {
+            debug(
+                    LOG,
+                    () ->
+                            "Entry with upi %s unchanged, skipping the write"
+                                    .formatted(upiOf(metadata)));
+            return Uni.createFrom().item(stored);
+        }
+        return validate(candidate.getMetadata()).flatMap(v -> applyValidation(candidate));
+    }
+
+    // the stored entry was validated when written: merging into it the same content gives it back.
+    private boolean unchanged(DPPMetadataEntry stored, DPPMetadataEntry candidate) {
+        return stored != null
+                && config.updateStrategy() == UpdateType.MODIFY
+                && stored.getContentHash().equals(candidate.getContentHash());
+    }
+
+    private Uni<DPPMetadataEntry> write(
+            SqlConnection conn,
+            DPPMetadataEntry stored,
+            JsonNode metadata,
+            DPPMetadataEntry entry) {
+        if (upsertEnabled()) return doUpsert(conn, metadata, entry);
+        // the update is conditioned to the version of the stored row: no need to read it again.
+        if (stored != null && config.updateStrategy() == UpdateType.MODIFY)
+            return updater.applyUpdate(config.updateStrategy(), conn, entry);
+        return repository
+                .findByUpi(conn, upiOf(metadata))
+                .flatMap(
+                        current -> {
+                            if (!sameVersion(stored, current))
+                                throw new ConcurrentUpdateException(upiOf(metadata));
+                            if (current == null) return repository.save(conn, entry);
+                            return updater.applyUpdate(config.updateStrategy(), conn, entry);
+                        });
+    }
+
+    private static boolean sameVersion(DPPMetadataEntry stored, DPPMetadataEntry current) {
+        if (stored == null || current == null) return stored == current;
+        return Objects.equals(stored.getRegistryId(), current.getRegistryId())
+                && stored.getVersion() == current.getVersion()
+                && Objects.equals(stored.getModifiedAt(), current.getModifiedAt());
+    }
+
+    private void applyReoIdClaim(JsonNode metadata) {
         if (config.reoidFromClaimEnabled()) {
             String reoId = attributesAccessor.getClaim(config.reoidClaimName());
             ((ObjectNode) metadata)
                     .set(config.reoidFieldName(), objectMapper.getNodeFactory().textNode(reoId));
         }
-        Uni<Void> autocompleted =
-                applyAutoComplete(
-                        conn,
-                        metadata,
-                        autocompleteBy != null ? new ArrayList<>(autocompleteBy) : null);
-        DPPMetadataEntry incoming = new DPPMetadataEntry(metadata);
-        return autocompleted
-                .flatMap(
-                        v ->
-                                repository.findByUpi(
-                                        conn, metadata.get(config.upiFieldName()).textValue()))
-                .flatMap(
-                        m -> {
-                            if (m != null) return doUpdate(incoming, m, conn);
-                            else return doSave(incoming, conn);
-                        });
     }
 
     private Uni<DPPMetadataEntry> applyValidation(DPPMetadataEntry entry) {
@@ -116,32 +616,34 @@ public class DPPMetadataService {
         }
     }
 
-    private Uni<? extends DPPMetadataEntry> doUpdate(
-            DPPMetadataEntry modifier, DPPMetadataEntry modified, SqlConnection conn) {
-        modified.setModifiedAt(LocalDateTime.now());
-        modified.setMetadata(
-                new JsonMerger()
-                        .merge(
-                                (ObjectNode) modified.getMetadata(),
-                                (ObjectNode) modifier.getMetadata()));
-        Uni<Void> validate = validate(modified.getMetadata());
-        Uni<DPPMetadataEntry> dppValidation = applyValidation(modified);
-        return validate.flatMap(v -> dppValidation)
-                .flatMap(me -> updater.applyUpdate(config.updateStrategy(), conn, me));
-    }
-
-    private Uni<? extends DPPMetadataEntry> doSave(
-            DPPMetadataEntry incoming, SqlConnection connection) {
-        LocalDateTime createdAt = LocalDateTime.now();
-        incoming.setCreatedAt(createdAt);
-        incoming.setModifiedAt(createdAt);
-        Uni<Void> validate = validate(incoming.getMetadata());
-        Uni<DPPMetadataEntry> applyCallbacks = applyValidation(incoming);
-        return validate.flatMap(v -> applyCallbacks).flatMap(m -> repository.save(connection, m));
-    }
-
-    private Uni<Void> applyAutoComplete(
-            SqlConnection con, JsonNode metadata, List<String> autocompleteBy) {
+    private boolean upsertEnabled() {
+        return config.upsertEnabled() && config.updateStrategy() == UpdateType.MODIFY;
+    }
+
+    private Uni<DPPMetadataEntry> doUpsert(
+            SqlConnection connection, JsonNode metadata, DPPMetadataEntry validated) {
+        DPPMetadataEntry incoming = new DPPMetadataEntry(metadata);
+        // the stored metadata become the validated ones, unless the write is rolled back.
+        incoming.setContentHash(validated.getContentHash());
+        LocalDateTime now = LocalDateTime.now();
+        incoming.setCreatedAt(now);
+        incoming.setModifiedAt(now);
+        // the merged entry is only known after the write: if it is not the validated one, the
+        // stored entry changed in the meantime and the write is rolled back.
+        return repository
+                .upsert(connection, incoming)
+                .map(
+                        m -> {
+                            if (!m.getMetadata().equals(NUMERIC_AWARE, validated.getMetadata()))
+                                throw new ConcurrentUpdateException(upiOf(metadata));
+                            validated.setRegistryId(m.getRegistryId());
+                            validated.setCreatedAt(m.getCreatedAt());
+                            validated.setModifiedAt(m.getModifiedAt());
+                            return validated;
+                        });
+    }
+
+    private Uni<Void> applyAutoComplete(JsonNode metadata, List<String> autocompleteBy) {
         if (autocompleteBy != null
                 && !autocompleteBy.isEmpty()
                 && config.autocompletionEnabledFor().isPresent()) {
@@ -158,9 +660,19 @@ public class DPPMetadataService {
                                                             metadata.get(p), Object.class)))
                             .toList();
             ObjectNode ometa = (ObjectNode) metadata;
-            AutoCompleter autoCompleter =
-                    new AutoCompleter(config.autocompletionEnabledFor().get());
-            Uni<DPPMetadataEntry> dppMetadata = repository.findBy(con, filters);
+            ObjectNode filterValues = objectMapper.createObjectNode();
+            filters.forEach(f -> filterValues.set(f.getItem1(), metadata.get(f.getItem1())));
+            List<String> fields = config.autocompletionEnabledFor().get();
+            AutoCompleter autoCompleter = new AutoCompleter(fields);
+            // only the fields that can be autocompleted are read from the matching entry.
+            Uni<DPPMetadataEntry> dppMetadata =
+                    autoCompletionCache.get(
+                            filterValues,
+                            () ->
+                                    lookups.lookup(
+                                            LookupCoalescer.Lookup.AUTOCOMPLETION,
+                                            JsonUtils.canonicalForm(filterValues),
+                                            () -> findAutoCompletion(filters, fields)));
             return dppMetadata
                     .invoke(
                             m -> {
@@ -173,6 +685,25 @@ public class DPPMetadataService {
         }
     }
 
+    private Uni<DPPMetadataEntry> findAutoCompletion(
+            List<Tuple2<String, Object>> filters, List<String> fields) {
+        if (shards.isSharded())
+            return shards.onEachShard(c -> repository.findBy(c, filters, fields))
+                    .map(DPPMetadataService::mostRecent);
+        return readPools.withReadConnection(c -> repository.findBy(c, filters, fields));
+    }
+
+    // the most recent of the entries found on each shard.
+    private static DPPMetadataEntry mostRecent(List<DPPMetadataEntry> entries) {
+        return entries.stream()
+                .filter(Objects::nonNull)
+                .max(
+                        Comparator.comparing(
+                                DPPMetadataEntry::getCreatedAt,
+                                Comparator.nullsFirst(Comparator.naturalOrder())))
+                .orElse(null);
+    }
+
     private Uni<Void> validate(JsonNode metadata) {
         return schemaCache
                 .get()
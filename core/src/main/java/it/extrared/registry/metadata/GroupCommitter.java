@@ -0,0 +1,218 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata;
+
+import static it.extrared.registry.utils.CommonUtils.debug;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.Pool;
+import io.vertx.mutiny.sqlclient.SqlConnection;
+import it.extrared.registry.MetadataRegistryConfig;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import org.jboss.logging.Logger;
+
+/**
+ * Group commit of the single entry writes: the writes submitted for the same pool within
+ * registry.group-commit-window, or until registry.group-commit-max-items are collected, are
+ * executed on one connection in one transaction. Writes of different UPIs are issued concurrently,
+ * so that the client pipelines them, while the writes of the same UPI are issued in submission
+ * order. Each write completes with its own result: a write failing with one of the registry
+ * exceptions, which are raised before anything is written, does not affect the others, while any
+ * other failure rolls the group back and each of its writes is executed again in its own
+ * transaction. Before being executed again, the written entry gets back the registry id, version
+ * and timestamps it had when submitted, which the rolled back attempt may have changed.
+ */
+@ApplicationScoped
+public class GroupCommitter {
+
+    @Inject MetadataRegistryConfig config;
+
+    @Inject MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<Pool, Group> open = new ConcurrentHashMap<>();
+
+    private DistributionSummary groupSize;
+
+    private static final String REGISTRY_EXCEPTIONS = "it.extrared.registry.exceptions.";
+
+    private static final Logger LOG = Logger.getLogger(GroupCommitter.class);
+
+    @PostConstruct
+    void init() {
+        groupSize =
+                DistributionSummary.builder("registry.group.commit.size")
+                        .description("Number of writes committed by a single transaction")
+                        .register(meterRegistry);
+    }
+
+    /**
+     * Submit a write to be executed in the transaction of the next group of the pool.
+     *
+     * @param pool the pool to write to.
+     * @param upi the UPI written, the writes of the same UPI being executed in order.
+     * @param entry the entry written, restored if the group is rolled back.
+     * @param write the function writing the entry through the connection of the group.
+     * @return the written entry.
+     */
+    public Uni<DPPMetadataEntry> submit(
+            Pool pool,
+            String upi,
+            DPPMetadataEntry entry,
+            Function<SqlConnection, Uni<DPPMetadataEntry>> write) {
+        Write submitted = new Write(upi, new Snapshot(entry), write);
+        Group[] created = new Group[1];
+        Group[] full = new Group[1];
+        open.compute(
+                pool,
+                (k, group) -> {
+                    if (group == null) group = created[0] = new Group();
+                    group.writes.add(submitted);
+                    if (group.writes.size() < config.groupCommitMaxItems()) return group;
+                    full[0] = group;
+                    return null;
+                });
+        if (full[0] != null) commit(pool, full[0]);
+        else if (created[0] != null) {
+            Group group = created[0];
+            Uni.createFrom()
+                    .voidItem()
+                    .onItem()
+                    .delayIt()
+                    .by(config.groupCommitWindow())
+                    .subscribe()
+                    .with(v -> closeAndCommit(pool, group));
+        }
+        return Uni.createFrom().completionStage(submitted.result);
+    }
+
+    // the group may have been committed already, when it got full before the window elapsed.
+    private void closeAndCommit(Pool pool, Group group) {
+        if (open.remove(pool, group)) commit(pool, group);
+    }
+
+    private void commit(Pool pool, Group group) {
+        List<Write> writes = group.writes;
+        groupSize.record(writes.size());
+        debug(LOG, () -> "Committing a group of %s writes".formatted(writes.size()));
+        pool.withTransaction(c -> executeAll(c, writes))
+                .subscribe()
+                .with(
+                        v -> writes.forEach(Write::complete),
+                        e -> {
+                            LOG.warnf(
+                                    "Group commit of %s writes failed, writing them one by one: %s",
+                                    writes.size(), e.getMessage());
+                            writes.forEach(w -> writeAlone(pool, w));
+                        });
+    }
+
+    private Uni<Void> executeAll(SqlConnection conn, List<Write> writes) {
+        Map<String, List<Write>> byUpi = new LinkedHashMap<>();
+        writes.forEach(w -> byUpi.computeIfAbsent(w.upi, k -> new ArrayList<>()).add(w));
+        List<Uni<Void>> chains = new ArrayList<>();
+        for (List<Write> sameUpi : byUpi.values()) {
+            Uni<Void> chain = Uni.createFrom().voidItem();
+            for (Write w : sameUpi) chain = chain.call(v -> execute(conn, w));
+            chains.add(chain);
+        }
+        return Uni.join().all(chains).andCollectFailures().replaceWithVoid();
+    }
+
+    private Uni<Void> execute(SqlConnection conn, Write write) {
+        return write.write
+                .apply(conn)
+                .invoke(m -> write.written = m)
+                .replaceWithVoid()
+                .onFailure(e -> e.getClass().getName().startsWith(REGISTRY_EXCEPTIONS))
+                .recoverWithItem(
+                        e -> {
+                            write.failure = e;
+                            return null;
+                        });
+    }
+
+    private void writeAlone(Pool pool, Write write) {
+        write.snapshot.restore();
+        pool.withTransaction(write.write)
+                .subscribe()
+                .with(write.result::complete, write.result::completeExceptionally);
+    }
+
+    private static final class Group {
+        private final List<Write> writes = new ArrayList<>();
+    }
+
+    // the state of an entry the writes change in memory, e.g. the version of a conditional update.
+    private record Snapshot(
+            DPPMetadataEntry entry,
+            String registryId,
+            long version,
+            LocalDateTime createdAt,
+            LocalDateTime modifiedAt) {
+
+        private Snapshot(DPPMetadataEntry entry) {
+            this(
+                    entry,
+                    entry.getRegistryId(),
+                    entry.getVersion(),
+                    entry.getCreatedAt(),
+                    entry.getModifiedAt());
+        }
+
+        private void restore() {
+            entry.setRegistryId(registryId);
+            entry.setVersion(version);
+            entry.setCreatedAt(createdAt);
+            entry.setModifiedAt(modifiedAt);
+        }
+    }
+
+    private static final class Write {
+        private final String upi;
+        private final Snapshot snapshot;
+        private final Function<SqlConnection, Uni<DPPMetadataEntry>> write;
+        private final CompletableFuture<DPPMetadataEntry> result = new CompletableFuture<>();
+        private DPPMetadataEntry written;
+        private Throwable failure;
+
+        private Write(
+                String upi,
+                Snapshot snapshot,
+                Function<SqlConnection, Uni<DPPMetadataEntry>> write) {
+            this.upi = upi;
+            this.snapshot = snapshot;
+            this.write = write;
+        }
+
+        private void complete() {
+            if (failure != null) result.completeExceptionally(failure);
+            else result.complete(written);
+        }
+    }
+}
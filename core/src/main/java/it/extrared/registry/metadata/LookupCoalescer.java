@@ -0,0 +1,141 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.smallrye.mutiny.Uni;
+import it.extrared.registry.MetadataRegistryConfig;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight execution of the lookups of metadata entries, enabled by
+ * registry.lookup-coalescing-enabled: a lookup asked for while the same one is in flight subscribes
+ * to it instead of issuing its own query, and every caller gets its own copy of the entry found.
+ * Only lookups running on a connection of their own are coalesced: lookups within a transaction
+ * must see its writes and are always executed by their caller. A write of a UPI forgets the lookup
+ * of it in flight, so that the callers coming after the write do not get the entry it replaced.
+ */
+@ApplicationScoped
+public class LookupCoalescer {
+
+    /** The kind of a coalesced lookup, the keys of different kinds being unrelated. */
+    public enum Lookup {
+        /** The lookup of the current entry of a UPI, keyed by the UPI. */
+        UPI,
+        /** The lookup of an autocompletion entry, keyed by the canonical filter values. */
+        AUTOCOMPLETION
+    }
+
+    private record Key(Lookup lookup, String key) {}
+
+    @Inject MetadataRegistryConfig config;
+
+    @Inject MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<Key, Uni<DPPMetadataEntry>> inFlight = new ConcurrentHashMap<>();
+
+    private final Map<Lookup, Counter> executed = new EnumMap<>(Lookup.class);
+
+    private final Map<Lookup, Counter> collapsed = new EnumMap<>(Lookup.class);
+
+    @PostConstruct
+    void init() {
+        for (Lookup l : Lookup.values()) {
+            executed.put(
+                    l,
+                    counter(
+                            "registry.lookup.executed",
+                            "Lookups executed by a query of their own",
+                            l));
+            collapsed.put(
+                    l,
+                    counter(
+                            "registry.lookup.collapsed",
+                            "Lookups served by the same lookup in flight",
+                            l));
+        }
+    }
+
+    /**
+     * Execute a lookup, or subscribe to the same one if in flight.
+     *
+     * @param lookup the kind of lookup.
+     * @param key the key of the lookup, within its kind.
+     * @param query the query looking the entry up on a connection of its own.
+     * @return a copy of the entry found, or null.
+     */
+    public Uni<DPPMetadataEntry> lookup(
+            Lookup lookup, String key, Supplier<Uni<DPPMetadataEntry>> query) {
+        if (!config.lookupCoalescingEnabled()) return query.get();
+        Key k = new Key(lookup, key);
+        return Uni.createFrom()
+                .deferred(
+                        () -> {
+                            while (true) {
+                                Uni<DPPMetadataEntry> running = inFlight.get(k);
+                                if (running != null) {
+                                    collapsed.get(lookup).increment();
+                                    return running.map(LookupCoalescer::copy);
+                                }
+                                AtomicReference<Uni<DPPMetadataEntry>> self =
+                                        new AtomicReference<>();
+                                Uni<DPPMetadataEntry> started =
+                                        Uni.createFrom()
+                                                .deferred(query::get)
+                                                .onTermination()
+                                                .invoke(() -> inFlight.remove(k, self.get()))
+                                                .memoize()
+                                                .indefinitely();
+                                self.set(started);
+                                if (inFlight.putIfAbsent(k, started) == null) {
+                                    executed.get(lookup).increment();
+                                    return started.map(LookupCoalescer::copy);
+                                }
+                            }
+                        });
+    }
+
+    /**
+     * Forget the lookup in flight for a key, if any: its callers still get its result, while the
+     * following ones issue a new query.
+     *
+     * @param lookup the kind of lookup.
+     * @param key the key of the lookup, within its kind.
+     */
+    public void forget(Lookup lookup, String key) {
+        inFlight.remove(new Key(lookup, key));
+    }
+
+    private static DPPMetadataEntry copy(DPPMetadataEntry entry) {
+        return entry != null ? entry.copy() : null;
+    }
+
+    private Counter counter(String name, String description, Lookup lookup) {
+        return Counter.builder(name)
+                .description(description)
+                .tag("lookup", lookup.name().toLowerCase())
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.networknt.schema.ValidationMessage;
+import it.extrared.registry.exceptions.InvalidOperationException;
+import it.extrared.registry.exceptions.SchemaValidationException;
+import it.extrared.registry.jsonschema.Schema;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * Reads DPP metadata entries from a stream with a Jackson {@link JsonParser}, pre-validating each
+ * property value against the schema as soon as it is parsed (see {@link Schema#prevalidate(String,
+ * JsonNode)}). The entry is built only while it is valid: after the first violation the remaining
+ * tokens of the document are skipped without being materialised, so that invalid documents of a
+ * large payload do not add to the heap. Valid entries still need to be validated as a whole, for
+ * the required properties and the checks depending on the merge with a stored entry.
+ */
+public class MetadataStreamReader {
+
+    private final ObjectMapper objectMapper;
+
+    private final Schema schema;
+
+    private final String upiFieldName;
+
+    /**
+     * @param objectMapper the mapper used to create the parsers.
+     * @param schema the schema to pre-validate the entries against, null to skip it.
+     * @param upiFieldName the name of the UPI field every entry must declare.
+     */
+    public MetadataStreamReader(ObjectMapper objectMapper, Schema schema, String upiFieldName) {
+        this.objectMapper = objectMapper;
+        this.schema = schema;
+        this.upiFieldName = upiFieldName;
+    }
+
+    /**
+     * Read a newline delimited JSON stream, one entry per line. Blank lines are ignored, a line
+     * that is not valid JSON is handed as a rejected document and does not stop the reading.
+     *
+     * @param ndjson the stream of entries.
+     * @param handler the handler of the documents, invoked in input order.
+     * @throws IOException if the stream cannot be read or the handler fails.
+     */
+    public void readNdjson(InputStream ndjson, DocumentHandler handler) throws IOException {
+        BufferedReader reader =
+                new BufferedReader(new InputStreamReader(ndjson, StandardCharsets.UTF_8));
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) continue;
+            Document document;
+            try (JsonParser parser = objectMapper.createParser(line)) {
+                parser.nextToken();
+                document = readDocument(parser, lineNumber);
+                if (parser.nextToken() != null) document = rejected(lineNumber, "not a valid JSON");
+            } catch (JsonProcessingException e) {
+                document = rejected(lineNumber, "not a valid JSON");
+            }
+            handler.accept(document);
+        }
+    }
+
+    /**
+     * Read a stream holding a JSON array of entries. Since the parsing cannot be resumed after a
+     * syntax error, a malformed payload fails the whole reading.
+     *
+     * @param json the stream of entries.
+     * @param handler the handler of the documents, invoked in input order.
+     * @throws IOException if the stream cannot be read or the handler fails.
+     * @throws InvalidOperationException if the payload is not a valid JSON array.
+     */
+    public void readArray(InputStream json, DocumentHandler handler) throws IOException {
+        try (JsonParser parser = objectMapper.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY)
+                throw new InvalidOperationException("The batch payload must be a JSON array");
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (parser.currentToken() == null)
+                    throw new InvalidOperationException("The batch payload is not valid JSON");
+                handler.accept(readDocument(parser, parser.currentLocation().getLineNr()));
+            }
+        } catch (JsonProcessingException e) {
+            throw new InvalidOperationException("The batch payload is not valid JSON");
+        }
+    }
+
+    // the parser is positioned on the first token of the document.
+    private Document readDocument(JsonParser parser, long line) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return rejected(line, notAnEntry());
+        }
+        ObjectNode entry = objectMapper.createObjectNode();
+        Set<ValidationMessage> violations = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            if (violations != null) {
+                parser.skipChildren();
+                continue;
+            }
+            JsonNode value = objectMapper.readTree(parser);
+            Set<ValidationMessage> messages =
+                    schema != null ? schema.prevalidate(name, value) : Set.of();
+            if (messages.isEmpty()) {
+                entry.set(name, value);
+            } else {
+                violations = messages;
+                entry = null;
+            }
+        }
+        if (violations != null)
+            return rejected(line, SchemaValidationException.errorMessage(violations));
+        if (!entry.hasNonNull(upiFieldName)) return rejected(line, notAnEntry());
+        return new Document(line, entry, null);
+    }
+
+    private String notAnEntry() {
+        return "DPP metadata must be a JSON object declaring a %s field".formatted(upiFieldName);
+    }
+
+    private static Document rejected(long line, String error) {
+        return new Document(line, null, error);
+    }
+
+    /**
+     * A document read from the stream.
+     *
+     * @param line the line where the document starts.
+     * @param metadata the parsed entry, null if the document was rejected.
+     * @param error the reason of the rejection, null if the document was accepted.
+     */
+    public record Document(long line, ObjectNode metadata, String error) {
+
+        public boolean isValid() {
+            return metadata != null;
+        }
+    }
+
+    /** Receives the documents read from a stream. */
+    @FunctionalInterface
+    public interface DocumentHandler {
+        void accept(Document document) throws IOException;
+    }
+}
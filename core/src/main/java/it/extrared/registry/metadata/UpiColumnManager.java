@@ -0,0 +1,81 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata;
+
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.Pool;
+import io.vertx.mutiny.sqlclient.SqlConnection;
+import it.extrared.registry.MetadataRegistryConfig;
+import it.extrared.registry.exceptions.InvalidOperationException;
+import it.extrared.registry.metadata.index.IndexDefinition;
+import it.extrared.registry.metadata.shard.MetadataShards;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.inject.Instance;
+import jakarta.inject.Inject;
+import org.jboss.logging.Logger;
+
+/**
+ * Keeps the upi column of the dpp_metadata table of every shard generated from the field named by
+ * registry.upi-field-name. The schema scripts generate it from the default upi field: with another
+ * name the column is generated again at startup, which rewrites the table.
+ */
+@ApplicationScoped
+public class UpiColumnManager {
+
+    @Inject MetadataRegistryConfig config;
+
+    @Inject MetadataShards shards;
+
+    @Inject Instance<UpiColumnRepository> repository;
+
+    private static final Logger LOG = Logger.getLogger(UpiColumnManager.class);
+
+    // lookups by UPI miss until the column is generated from the configured field, so the startup
+    // waits for it.
+    void onStart(@Observes StartupEvent event) {
+        if (!repository.isResolvable()) return;
+        String field = config.upiFieldName();
+        if (!IndexDefinition.isValidField(field))
+            throw new InvalidOperationException(
+                    "The UPI field name %s cannot be used in the upi column".formatted(field));
+        Uni<Void> aligned = Uni.createFrom().voidItem();
+        for (String shard : shards.names()) {
+            Pool pool = shards.pool(shard);
+            aligned = aligned.call(v -> pool.withTransaction(c -> align(c, shard, field)));
+        }
+        aligned.await().indefinitely();
+    }
+
+    private Uni<Void> align(SqlConnection conn, String shard, String field) {
+        return repository
+                .get()
+                .findUpiField(conn)
+                .flatMap(
+                        current -> {
+                            if (current == null) {
+                                LOG.warnf("No upi column found in the shard %s", shard);
+                                return Uni.createFrom().voidItem();
+                            }
+                            if (current.equals(field)) return Uni.createFrom().voidItem();
+                            LOG.infof(
+                                    "Generating the upi column of the shard %s from %s instead of %s",
+                                    shard, field, current);
+                            return repository.get().changeUpiField(conn, field);
+                        });
+    }
+}
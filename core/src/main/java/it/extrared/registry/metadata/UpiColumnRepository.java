@@ -0,0 +1,43 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.SqlConnection;
+
+/**
+ * Datastore specific handling of the upi column of the dpp_metadata table, generated from the
+ * metadata field named by registry.upi-field-name.
+ */
+public interface UpiColumnRepository {
+
+    /**
+     * @param conn a {@link SqlConnection}.
+     * @return the name of the metadata field the upi column is generated from, null if the column
+     *     is missing.
+     */
+    Uni<String> findUpiField(SqlConnection conn);
+
+    /**
+     * Generate the upi column from another metadata field, keeping the indexes and triggers defined
+     * on it and rebuilding dpp_metadata_current, if present.
+     *
+     * @param conn a {@link SqlConnection}.
+     * @param field the metadata field.
+     * @return a void Uni.
+     */
+    Uni<Void> changeUpiField(SqlConnection conn, String field);
+}
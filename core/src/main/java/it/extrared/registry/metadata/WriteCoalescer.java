@@ -0,0 +1,172 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata;
+
+import static it.extrared.registry.utils.CommonUtils.debug;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.smallrye.mutiny.Uni;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import org.jboss.logging.Logger;
+
+/**
+ * Coalesces the concurrent writes of the same UPI: at most one write per UPI is in flight, while
+ * the submissions arriving meanwhile are merged in memory, in arrival order and with {@link
+ * JsonMerger} semantics, and written together once the running write completes. Every submission of
+ * a write completes with its result. If a write of several submissions fails, each of them is
+ * written on its own, so that an invalid submission does not make the others fail.
+ *
+ * <p>The state of each UPI is only changed through {@link ConcurrentMap#compute}, whose locking is
+ * striped over the bins of the map, so that writes of different UPIs never contend.
+ */
+@ApplicationScoped
+public class WriteCoalescer {
+
+    @Inject MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<String, Lane> lanes = new ConcurrentHashMap<>();
+
+    private Counter coalesced;
+
+    private static final Logger LOG = Logger.getLogger(WriteCoalescer.class);
+
+    @PostConstruct
+    void init() {
+        coalesced =
+                Counter.builder("registry.write.coalesced")
+                        .description("Submissions merged into the write of another submission")
+                        .register(meterRegistry);
+    }
+
+    /**
+     * Submit the metadata of a UPI to be written, possibly together with other submissions of the
+     * same UPI.
+     *
+     * @param upi the UPI.
+     * @param metadata the metadata submitted.
+     * @param writer the function writing metadata, either the submitted or the merged ones.
+     * @return the written entry.
+     */
+    public Uni<DPPMetadataEntry> submit(
+            String upi, JsonNode metadata, Function<JsonNode, Uni<DPPMetadataEntry>> writer) {
+        Submission submission = new Submission(metadata);
+        Batch[] started = new Batch[1];
+        lanes.compute(
+                upi,
+                (k, lane) -> {
+                    if (lane == null) {
+                        started[0] = new Batch(submission);
+                        return new Lane();
+                    }
+                    if (lane.queued == null) lane.queued = new Batch(submission);
+                    else lane.queued.add(submission);
+                    return lane;
+                });
+        if (started[0] != null) flush(upi, started[0], writer);
+        else coalesced.increment();
+        return Uni.createFrom().completionStage(submission.result);
+    }
+
+    private void flush(String upi, Batch batch, Function<JsonNode, Uni<DPPMetadataEntry>> writer) {
+        debug(
+                LOG,
+                () ->
+                        "Writing %s coalesced submissions of upi %s"
+                                .formatted(batch.submissions.size(), upi));
+        writer.apply(batch.metadata)
+                .invoke(written -> batch.submissions.forEach(s -> s.result.complete(written)))
+                .replaceWithVoid()
+                .onFailure()
+                .recoverWithUni(
+                        e -> {
+                            if (batch.submissions.size() > 1) return writeEach(batch, writer);
+                            batch.submissions.getFirst().result.completeExceptionally(e);
+                            return Uni.createFrom().voidItem();
+                        })
+                .subscribe()
+                .with(v -> next(upi, writer), e -> next(upi, writer));
+    }
+
+    // the submissions are written one at a time, still ahead of the ones queued after them.
+    private Uni<Void> writeEach(Batch batch, Function<JsonNode, Uni<DPPMetadataEntry>> writer) {
+        Uni<Void> written = Uni.createFrom().voidItem();
+        for (Submission s : batch.submissions)
+            written =
+                    written.call(
+                            v ->
+                                    writer.apply(s.metadata)
+                                            .invoke(s.result::complete)
+                                            .onFailure()
+                                            .invoke(s.result::completeExceptionally)
+                                            .onFailure()
+                                            .recoverWithNull());
+        return written;
+    }
+
+    private void next(String upi, Function<JsonNode, Uni<DPPMetadataEntry>> writer) {
+        Batch[] next = new Batch[1];
+        lanes.computeIfPresent(
+                upi,
+                (k, lane) -> {
+                    if (lane.queued == null) return null;
+                    next[0] = lane.queued;
+                    lane.queued = null;
+                    return lane;
+                });
+        if (next[0] != null) flush(upi, next[0], writer);
+    }
+
+    // a UPI has a lane while one of its writes is in flight, holding the submissions to write next.
+    private static final class Lane {
+        private Batch queued;
+    }
+
+    private static final class Batch {
+        private final List<Submission> submissions = new ArrayList<>();
+        private ObjectNode metadata;
+
+        private Batch(Submission first) {
+            submissions.add(first);
+            metadata = ((ObjectNode) first.metadata).deepCopy();
+        }
+
+        private void add(Submission submission) {
+            submissions.add(submission);
+            // the merge links the overlay arrays into the batch, which later merges extend.
+            metadata =
+                    (ObjectNode)
+                            new JsonMerger()
+                                    .merge(metadata, ((ObjectNode) submission.metadata).deepCopy());
+        }
+    }
+
+    private record Submission(JsonNode metadata, CompletableFuture<DPPMetadataEntry> result) {
+        private Submission(JsonNode metadata) {
+            this(metadata, new CompletableFuture<>());
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata.filter;
+
+import static it.extrared.registry.utils.CommonUtils.hash64;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size Bloom filter over strings, using double hashing to derive its hash functions. Bits
+ * are set atomically, so that lookups need no locking.
+ */
+class BloomFilter {
+
+    private static final double LN2 = Math.log(2);
+
+    private final AtomicLongArray bits;
+
+    private final long bitSize;
+
+    private final int hashes;
+
+    private final long capacity;
+
+    private volatile long count;
+
+    /**
+     * @param capacity the number of elements the filter is sized for.
+     * @param fpp the false positive probability once the filter holds capacity elements.
+     */
+    BloomFilter(long capacity, double fpp) {
+        this.capacity = Math.max(1, capacity);
+        long m = (long) Math.ceil(-this.capacity * Math.log(fpp) / (LN2 * LN2));
+        this.bits = new AtomicLongArray((int) Math.max(1, (m + 63) / 64));
+        this.bitSize = bits.length() * 64L;
+        this.hashes = Math.max(1, (int) Math.round((double) bitSize / this.capacity * LN2));
+    }
+
+    boolean mightContain(String value) {
+        long h1 = hash64(value, 0xcbf29ce484222325L);
+        long h2 = hash64(value, 0x84222325cbf29ce4L);
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitSize);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Add a value. Callers must not add values concurrently.
+     *
+     * @return true if the value was not in the filter.
+     */
+    boolean put(String value) {
+        long h1 = hash64(value, 0xcbf29ce484222325L);
+        long h2 = hash64(value, 0x84222325cbf29ce4L);
+        boolean changed = false;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitSize);
+            long mask = 1L << bit;
+            long previous = bits.getAndAccumulate((int) (bit >>> 6), mask, (w, m) -> w | m);
+            if ((previous & mask) == 0) changed = true;
+        }
+        if (changed) count++;
+        return changed;
+    }
+
+    boolean isFull() {
+        return count >= capacity;
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    long getBitSize() {
+        return bitSize;
+    }
+
+    /**
+     * @return the false positive probability expected with the current number of elements.
+     */
+    double expectedFpp() {
+        return Math.pow(1 - Math.exp(-(double) hashes * count / bitSize), hashes);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Bloom filter that grows with the number of its elements. When the current slice is full a new
+ * one is added, with twice the capacity and half the false positive probability of the previous
+ * one, so that the overall false positive probability stays below the requested one however many
+ * elements are added. Lookups are lock free, additions are serialized.
+ */
+public class ScalableBloomFilter {
+
+    private static final int GROWTH = 2;
+
+    private static final double TIGHTENING = 0.5;
+
+    private volatile List<BloomFilter> slices;
+
+    private final double fpp;
+
+    /**
+     * @param initialCapacity the number of elements the first slice is sized for.
+     * @param fpp the overall false positive probability.
+     */
+    public ScalableBloomFilter(long initialCapacity, double fpp) {
+        this.fpp = fpp;
+        this.slices = List.of(new BloomFilter(initialCapacity, fpp * (1 - TIGHTENING)));
+    }
+
+    /**
+     * @param value the value to look for.
+     * @return false if the value was definitely never added, true if it may have been.
+     */
+    public boolean mightContain(String value) {
+        for (BloomFilter slice : slices) if (slice.mightContain(value)) return true;
+        return false;
+    }
+
+    /**
+     * @param value the value to add.
+     */
+    public synchronized void add(String value) {
+        if (mightContain(value)) return;
+        BloomFilter last = slices.getLast();
+        if (last.isFull()) {
+            List<BloomFilter> grown = new ArrayList<>(slices);
+            int n = grown.size();
+            last =
+                    new BloomFilter(
+                            last.getCount() * GROWTH,
+                            fpp * (1 - TIGHTENING) * Math.pow(TIGHTENING, n));
+            grown.add(last);
+            slices = List.copyOf(grown);
+        }
+        last.put(value);
+    }
+
+    /**
+     * @return the number of distinct values added, up to the false positives of the additions.
+     */
+    public long size() {
+        return slices.stream().mapToLong(BloomFilter::getCount).sum();
+    }
+
+    /**
+     * @return the size of the bit sets of the filter, in bytes.
+     */
+    public long memoryBytes() {
+        return slices.stream().mapToLong(BloomFilter::getBitSize).sum() / 8;
+    }
+
+    /**
+     * @return the false positive probability expected with the current number of elements.
+     */
+    public double expectedFpp() {
+        double none = 1;
+        for (BloomFilter slice : slices) none *= 1 - slice.expectedFpp();
+        return 1 - none;
+    }
+}
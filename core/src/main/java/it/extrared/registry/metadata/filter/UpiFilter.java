@@ -0,0 +1,216 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata.filter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.runtime.StartupEvent;
+import io.quarkus.scheduler.Scheduled;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.Pool;
+import io.vertx.mutiny.sqlclient.SqlConnection;
+import it.extrared.registry.MetadataRegistryConfig;
+import it.extrared.registry.datasource.ReadPoolRouter;
+import it.extrared.registry.metadata.DPPMetadataRepository;
+import it.extrared.registry.metadata.shard.MetadataShards;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import org.jboss.logging.Logger;
+
+/**
+ * A node local {@link ScalableBloomFilter} over the stored UPIs, telling when a UPI was definitely
+ * never registered. It is loaded at startup, updated on every write of this node and periodically
+ * rebuilt from the datastore to catch up with the writes of the other nodes. Since it can miss
+ * those writes for a while, callers must only use it to skip reads that are checked again when
+ * writing. Until it is loaded, or if registry.upi-filter-enabled is false, every UPI might be
+ * present.
+ */
+@ApplicationScoped
+public class UpiFilter {
+
+    @Inject MetadataRegistryConfig config;
+
+    @Inject DPPMetadataRepository repository;
+
+    @Inject ReadPoolRouter readPools;
+
+    @Inject MetadataShards shards;
+
+    @Inject MeterRegistry meterRegistry;
+
+    private static final int PAGE_SIZE = 10000;
+
+    private static final Logger LOG = Logger.getLogger(UpiFilter.class);
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    private volatile ScalableBloomFilter filter;
+
+    // the filter being rebuilt, receiving the additions made while it is loaded.
+    private volatile ScalableBloomFilter building;
+
+    private Counter absent;
+
+    private Counter present;
+
+    private Counter falsePositives;
+
+    void onStart(@Observes StartupEvent event) {
+        if (!config.upiFilterEnabled()) return;
+        registerMetrics();
+        rebuildInBackground();
+    }
+
+    @Scheduled(
+            every = "${registry.upi-filter-rebuild-interval}",
+            delayed = "${registry.upi-filter-rebuild-interval}")
+    void scheduledRebuild() {
+        if (config.upiFilterEnabled()) rebuildInBackground();
+    }
+
+    /**
+     * @param upi a UPI.
+     * @return false if the UPI was definitely never stored, true if it might have been.
+     */
+    public boolean mightContain(String upi) {
+        ScalableBloomFilter current = filter;
+        if (current == null) return true;
+        boolean result = current.mightContain(upi);
+        (result ? present : absent).increment();
+        return result;
+    }
+
+    /** Record that a UPI reported as possibly present was not found in the datastore. */
+    public void recordFalsePositive() {
+        if (filter != null) falsePositives.increment();
+    }
+
+    /**
+     * @param upi a stored UPI.
+     */
+    public void add(String upi) {
+        ScalableBloomFilter current = filter;
+        if (current != null) current.add(upi);
+        ScalableBloomFilter next = building;
+        if (next != null) next.add(upi);
+    }
+
+    /** Start a rebuild of the filter without waiting for it. */
+    public void rebuildInBackground() {
+        if (!config.upiFilterEnabled()) return;
+        rebuild()
+                .subscribe()
+                .with(v -> {}, e -> LOG.error("Error while loading the UPI filter", e));
+    }
+
+    /**
+     * Load a new filter from the UPIs in the datastore, then replace the current one with it. If a
+     * rebuild is already running nothing is done.
+     *
+     * @return a {@link Uni} completing when the new filter is in use.
+     */
+    public Uni<Void> rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) return Uni.createFrom().voidItem();
+        long start = System.currentTimeMillis();
+        ScalableBloomFilter next =
+                new ScalableBloomFilter(config.upiFilterExpectedUpis(), config.upiFilterFpp());
+        building = next;
+        return load(next)
+                .invoke(
+                        () -> {
+                            filter = next;
+                            LOG.infof(
+                                    "UPI filter loaded with %s UPIs in %s ms, %s bytes",
+                                    next.size(),
+                                    System.currentTimeMillis() - start,
+                                    next.memoryBytes());
+                        })
+                .eventually(
+                        () -> {
+                            building = null;
+                            rebuilding.set(false);
+                        });
+    }
+
+    // with shards, every shard is scanned in turn.
+    private Uni<Void> load(ScalableBloomFilter target) {
+        if (!shards.isSharded()) return load(target, readPools::withReadConnection, null);
+        Uni<Void> loaded = Uni.createFrom().voidItem();
+        for (String shard : shards.names()) {
+            Pool pool = shards.pool(shard);
+            loaded = loaded.call(v -> load(target, pool::withConnection, null));
+        }
+        return loaded;
+    }
+
+    // UPIs are read by pages, each with its own connection, to not hold one for the whole scan.
+    // A lagging replica may miss some UPIs: a write checks the stored entry anyway.
+    private Uni<Void> load(
+            ScalableBloomFilter target,
+            Function<Function<SqlConnection, Uni<List<String>>>, Uni<List<String>>> reader,
+            String after) {
+        return reader.apply(c -> repository.findUpis(c, after, PAGE_SIZE))
+                .flatMap(
+                        upis -> {
+                            upis.forEach(target::add);
+                            if (upis.size() < PAGE_SIZE) return Uni.createFrom().voidItem();
+                            return load(target, reader, upis.getLast());
+                        });
+    }
+
+    private void registerMetrics() {
+        Gauge.builder("registry.upi.filter.size", this, f -> f.stat(ScalableBloomFilter::size))
+                .description("Number of UPIs in the UPI filter")
+                .register(meterRegistry);
+        Gauge.builder(
+                        "registry.upi.filter.memory",
+                        this,
+                        f -> f.stat(ScalableBloomFilter::memoryBytes))
+                .description("Size of the bit sets of the UPI filter")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder(
+                        "registry.upi.filter.fpp.expected",
+                        this,
+                        f -> f.stat(ScalableBloomFilter::expectedFpp))
+                .description("False positive probability expected from the UPI filter size")
+                .register(meterRegistry);
+        absent = lookups("absent");
+        present = lookups("maybe");
+        falsePositives =
+                Counter.builder("registry.upi.filter.false.positives")
+                        .description("UPIs reported as possibly present but not found")
+                        .register(meterRegistry);
+    }
+
+    private Counter lookups(String result) {
+        return Counter.builder("registry.upi.filter.lookups")
+                .description("Lookups of the UPI filter by result")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private double stat(ToDoubleFunction<ScalableBloomFilter> f) {
+        ScalableBloomFilter current = filter;
+        return current != null ? f.applyAsDouble(current) : Double.NaN;
+    }
+}
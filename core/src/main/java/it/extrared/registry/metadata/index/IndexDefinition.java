@@ -0,0 +1,108 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata.index;
+
+import java.util.Locale;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Describes an index on a DPP metadata JSON field managed by the registry. The datastore specific
+ * object names are derived from the field name and JSON schema type so that an index whose type
+ * changed in a new schema is detected as obsolete and replaced.
+ */
+public class IndexDefinition {
+
+    /** Prefix of the name of every index managed by the registry. */
+    public static final String INDEX_PREFIX = "dpp_auto_idx_";
+
+    /** Prefix of the name of the generated columns backing an index, where needed. */
+    public static final String COLUMN_PREFIX = "dpp_auto_col_";
+
+    private static final Pattern VALID_FIELD = Pattern.compile("[A-Za-z0-9_\\-]+");
+
+    // keep generated names, prefix and suffixes included, below the 63/64 identifier length limits
+    // of PostgreSQL and MariaDB.
+    private static final int MAX_KEY_LENGTH = 36;
+
+    private final String field;
+
+    private final String type;
+
+    public IndexDefinition(String field, String type) {
+        this.field = field;
+        this.type = type;
+    }
+
+    /**
+     * @param field the JSON field name.
+     * @return true if the field name can be safely embedded in DDL statements.
+     */
+    public static boolean isValidField(String field) {
+        return field != null && VALID_FIELD.matcher(field).matches();
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * @return the JSON schema type of the field: string, number, integer, boolean or array.
+     */
+    public String getType() {
+        return type;
+    }
+
+    public boolean isArray() {
+        return "array".equals(type);
+    }
+
+    public String getIndexName() {
+        return INDEX_PREFIX + key();
+    }
+
+    public String getColumnName() {
+        return COLUMN_PREFIX + key();
+    }
+
+    private String key() {
+        String name = field.toLowerCase(Locale.ROOT).replace('-', '_');
+        // identifiers are case insensitive: a field changed by the sanitizing, which could then
+        // share its name with another one, is told apart by its hash.
+        if (!name.equals(field) || name.length() > MAX_KEY_LENGTH)
+            name =
+                    name.substring(0, Math.min(name.length(), MAX_KEY_LENGTH))
+                            + "_"
+                            + Integer.toHexString(field.hashCode());
+        return name + "_" + type.charAt(0);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof IndexDefinition that)) return false;
+        return Objects.equals(field, that.field) && Objects.equals(type, that.type);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(field, type);
+    }
+
+    @Override
+    public String toString() {
+        return "IndexDefinition{field='%s', type='%s'}".formatted(field, type);
+    }
+}
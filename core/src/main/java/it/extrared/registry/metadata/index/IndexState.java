@@ -0,0 +1,91 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata.index;
+
+/** The state of a registry managed index, as reported by the index management endpoint. */
+public class IndexState {
+
+    public enum Status {
+        /** The index exists and is usable. */
+        PRESENT,
+        /** The index is required by the current schema but does not exist (yet). */
+        MISSING,
+        /** The index exists but a previous build failed, so it is not used by the database. */
+        INVALID,
+        /** The index exists but is no longer required by the current schema. */
+        OBSOLETE
+    }
+
+    private String name;
+
+    private String field;
+
+    private String definition;
+
+    private Status status;
+
+    public IndexState(String name, String field, String definition, Status status) {
+        this.name = name;
+        this.field = field;
+        this.definition = definition;
+        this.status = status;
+    }
+
+    public IndexState() {}
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the indexed JSON field, null for an obsolete index.
+     */
+    public String getField() {
+        return field;
+    }
+
+    public void setField(String field) {
+        this.field = field;
+    }
+
+    /**
+     * @return the DDL of the index as reported by the database, null for a missing index.
+     */
+    public String getDefinition() {
+        return definition;
+    }
+
+    public void setDefinition(String definition) {
+        this.definition = definition;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    @Override
+    public String toString() {
+        return "IndexState{name='%s', field='%s', status=%s}".formatted(name, field, status);
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata.index;
+
+import static it.extrared.registry.utils.CommonUtils.debug;
+
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import it.extrared.registry.MetadataRegistryConfig;
+import it.extrared.registry.jsonschema.Schema;
+import it.extrared.registry.jsonschema.SchemaCache;
+import it.extrared.registry.jsonschema.SchemaProperty;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.inject.Instance;
+import jakarta.inject.Inject;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.jboss.logging.Logger;
+
+/**
+ * Keeps the indexes on the DPP metadata JSON fields aligned with the current JSON schema. The
+ * indexed fields are the ones listed in registry.autocompletion-enabled-for plus the schema
+ * properties flagged with the {@link Schema#SEARCHABLE_KEY} keyword. The UPI is not managed here
+ * since it has its own generated column.
+ */
+@ApplicationScoped
+public class MetadataIndexManager {
+
+    @Inject MetadataRegistryConfig config;
+
+    @Inject SchemaCache schemaCache;
+
+    @Inject Instance<MetadataIndexRepository> repository;
+
+    private final AtomicBoolean reconciling = new AtomicBoolean();
+
+    private volatile Map<String, IndexDefinition> usable = Map.of();
+
+    private final AtomicLong usableVersion = new AtomicLong();
+
+    private static final Logger LOG = Logger.getLogger(MetadataIndexManager.class);
+
+    void onStart(@Observes StartupEvent event) {
+        reconcileInBackground();
+    }
+
+    /**
+     * Start a reconciliation without waiting for it, if index management is enabled. Index builds
+     * can take long on big tables, so callers reacting to a schema change should not wait for them.
+     */
+    public void reconcileInBackground() {
+        if (!config.indexManagementEnabled() || !repository.isResolvable()) return;
+        reconcile()
+                .subscribe()
+                .with(
+                        s -> debug(LOG, () -> "Indexes reconciled: %s".formatted(s)),
+                        e -> LOG.error("Error while reconciling DPP metadata indexes", e));
+    }
+
+    /**
+     * Create the indexes required by the current schema that are missing or invalid and drop the
+     * managed indexes no longer required. If a reconciliation is already running the current state
+     * is returned without further changes.
+     *
+     * @return the state of the managed indexes after the reconciliation.
+     */
+    public Uni<List<IndexState>> reconcile() {
+        if (!repository.isResolvable()) return Uni.createFrom().item(List.of());
+        if (!reconciling.compareAndSet(false, true)) {
+            debug(LOG, () -> "An index reconciliation is already running");
+            return getIndexes();
+        }
+        return schemaCache
+                .get()
+                .map(this::requiredIndexes)
+                .flatMap(
+                        required ->
+                                repository
+                                        .get()
+                                        .findManagedIndexes()
+                                        .flatMap(existing -> apply(required, existing)))
+                .flatMap(v -> getIndexes())
+                .eventually(() -> reconciling.set(false));
+    }
+
+    /**
+     * @return the state of the indexes required by the current schema and of the obsolete ones.
+     */
+    public Uni<List<IndexState>> getIndexes() {
+        if (!repository.isResolvable()) return Uni.createFrom().item(List.of());
+        return schemaCache
+                .get()
+                .map(this::requiredIndexes)
+                .flatMap(
+                        required ->
+                                repository
+                                        .get()
+                                        .findManagedIndexes()
+                                        .map(existing -> toStates(required, existing)));
+    }
+
+    /**
+     * @param field a JSON field name.
+     * @return the definition of the usable index on the field, as of the last index listing.
+     */
+    public Optional<IndexDefinition> findUsableIndex(String field) {
+        return Optional.ofNullable(usable.get(field));
+    }
+
+    /**
+     * @return a version incremented every time the set of usable indexes changes, so that the
+     *     queries built on them can be cached.
+     */
+    public long getUsableVersion() {
+        return usableVersion.get();
+    }
+
+    private void setUsable(Map<String, IndexDefinition> indexes) {
+        if (indexes.equals(usable)) return;
+        usable = indexes;
+        usableVersion.incrementAndGet();
+    }
+
+    private Uni<Void> apply(Set<IndexDefinition> required, List<IndexState> existing) {
+        Map<String, IndexState> existingByName = byName(existing);
+        Set<String> requiredNames =
+                required.stream().map(IndexDefinition::getIndexName).collect(Collectors.toSet());
+        List<String> toDrop =
+                existing.stream()
+                        .filter(
+                                s ->
+                                        !requiredNames.contains(s.getName())
+                                                || s.getStatus() == IndexState.Status.INVALID)
+                        .map(IndexState::getName)
+                        .toList();
+        List<IndexDefinition> toCreate =
+                required.stream()
+                        .filter(
+                                d -> {
+                                    IndexState s = existingByName.get(d.getIndexName());
+                                    return s == null || s.getStatus() == IndexState.Status.INVALID;
+                                })
+                        .toList();
+        // stop using the indexes before dropping them.
+        Map<String, IndexDefinition> stillUsable =
+                usable.values().stream()
+                        .filter(d -> !toDrop.contains(d.getIndexName()))
+                        .collect(Collectors.toMap(IndexDefinition::getField, d -> d));
+        setUsable(stillUsable);
+        MetadataIndexRepository repo = repository.get();
+        // DDL is run one statement at a time to avoid concurrent full scans of the table.
+        Uni<List<Void>> drops =
+                Multi.createFrom()
+                        .iterable(toDrop)
+                        .onItem()
+                        .transformToUniAndConcatenate(
+                                n -> {
+                                    LOG.infof("Dropping DPP metadata index %s", n);
+                                    return repo.dropIndex(n)
+                                            .onFailure()
+                                            .recoverWithUni(e -> logFailure(n, e));
+                                })
+                        .collect()
+                        .asList();
+        Uni<List<Void>> creates =
+                Multi.createFrom()
+                        .iterable(toCreate)
+                        .onItem()
+                        .transformToUniAndConcatenate(
+                                d -> {
+                                    LOG.infof(
+                                            "Creating DPP metadata index %s on field %s",
+                                            d.getIndexName(), d.getField());
+                                    return repo.createIndex(d)
+                                            .onFailure()
+                                            .recoverWithUni(e -> logFailure(d.getIndexName(), e));
+                                })
+                        .collect()
+                        .asList();
+        return drops.flatMap(v -> creates).replaceWithVoid();
+    }
+
+    private Uni<Void> logFailure(String indexName, Throwable e) {
+        LOG.errorf(e, "DDL statement on DPP metadata index %s failed", indexName);
+        return Uni.createFrom().voidItem();
+    }
+
+    private List<IndexState> toStates(Set<IndexDefinition> required, List<IndexState> existing) {
+        Map<String, IndexState> existingByName = byName(existing);
+        List<IndexState> states = new ArrayList<>();
+        Map<String, IndexDefinition> nowUsable = new HashMap<>();
+        Set<String> requiredNames = new HashSet<>();
+        for (IndexDefinition d : required) {
+            requiredNames.add(d.getIndexName());
+            IndexState found = existingByName.get(d.getIndexName());
+            if (found == null) {
+                states.add(
+                        new IndexState(
+                                d.getIndexName(), d.getField(), null, IndexState.Status.MISSING));
+            } else {
+                states.add(
+                        new IndexState(
+                                found.getName(),
+                                d.getField(),
+                                found.getDefinition(),
+                                found.getStatus()));
+                if (found.getStatus() == IndexState.Status.PRESENT) nowUsable.put(d.getField(), d);
+            }
+        }
+        existing.stream()
+                .filter(s -> !requiredNames.contains(s.getName()))
+                .forEach(
+                        s ->
+                                states.add(
+                                        new IndexState(
+                                                s.getName(),
+                                                null,
+                                                s.getDefinition(),
+                                                IndexState.Status.OBSOLETE)));
+        setUsable(nowUsable);
+        states.sort(Comparator.comparing(IndexState::getName));
+        return states;
+    }
+
+    private Set<IndexDefinition> requiredIndexes(Schema schema) {
+        Set<String> fields =
+                new LinkedHashSet<>(config.autocompletionEnabledFor().orElse(List.of()));
+        fields.addAll(schema.getSearchableProperties());
+        fields.remove(config.upiFieldName());
+        Set<IndexDefinition> required = new LinkedHashSet<>();
+        MetadataIndexRepository repo = repository.get();
+        for (String field : fields) {
+            SchemaProperty property = schema.getProperty(field);
+            if (property == null || !property.isIndexable()) {
+                LOG.warnf("Field %s cannot be indexed", field);
+                continue;
+            }
+            IndexDefinition definition = new IndexDefinition(field, property.getType());
+            if (repo.supports(definition)) required.add(definition);
+            else debug(LOG, () -> "Datastore does not support index %s".formatted(definition));
+        }
+        return required;
+    }
+
+    private static Map<String, IndexState> byName(List<IndexState> states) {
+        return states.stream()
+                .collect(Collectors.toMap(IndexState::getName, Function.identity(), (a, b) -> a));
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata.index;
+
+import io.smallrye.mutiny.Uni;
+import java.util.List;
+
+/**
+ * Datastore specific handling of the indexes on the DPP metadata JSON fields. Implementations must
+ * run the DDL statements outside of any transaction and without blocking writes on the dpp_metadata
+ * table.
+ */
+public interface MetadataIndexRepository {
+
+    /**
+     * @param definition the index definition.
+     * @return true if the datastore can index the field described by the definition.
+     */
+    boolean supports(IndexDefinition definition);
+
+    /**
+     * List the registry managed indexes, i.e. those whose name starts with {@link
+     * IndexDefinition#INDEX_PREFIX}.
+     *
+     * @return the existing managed indexes with status {@link IndexState.Status#PRESENT} or {@link
+     *     IndexState.Status#INVALID}. The field is not set.
+     */
+    Uni<List<IndexState>> findManagedIndexes();
+
+    /**
+     * Create the index if it does not exist.
+     *
+     * @param definition the index definition.
+     * @return a void Uni.
+     */
+    Uni<Void> createIndex(IndexDefinition definition);
+
+    /**
+     * Drop a managed index, together with any object created to support it.
+     *
+     * @param indexName the index name.
+     * @return a void Uni.
+     */
+    Uni<Void> dropIndex(String indexName);
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata.partition;
+
+import static it.extrared.registry.utils.CommonUtils.debug;
+
+import io.quarkus.runtime.StartupEvent;
+import io.quarkus.scheduler.Scheduled;
+import io.smallrye.mutiny.Uni;
+import it.extrared.registry.MetadataRegistryConfig;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.inject.Instance;
+import jakarta.inject.Inject;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.jboss.logging.Logger;
+
+/**
+ * Maintains the monthly partitions of the dpp_metadata table, when registry.partitioning-enabled is
+ * true: at startup and every registry.partition-maintenance-interval it creates the partitions of
+ * the current month and of the next registry.partition-premake-months months and, if
+ * registry.partition-retention-months is set, detaches the partitions older than it.
+ */
+@ApplicationScoped
+public class MetadataPartitionManager {
+
+    @Inject MetadataRegistryConfig config;
+
+    @Inject Instance<MetadataPartitionRepository> repository;
+
+    private final AtomicBoolean maintaining = new AtomicBoolean();
+
+    private static final Logger LOG = Logger.getLogger(MetadataPartitionManager.class);
+
+    void onStart(@Observes StartupEvent event) {
+        maintainInBackground();
+    }
+
+    @Scheduled(
+            every = "${registry.partition-maintenance-interval}",
+            delayed = "${registry.partition-maintenance-interval}")
+    void scheduledMaintenance() {
+        maintainInBackground();
+    }
+
+    /** Start a maintenance of the partitions without waiting for it, if partitioning is enabled. */
+    public void maintainInBackground() {
+        if (!config.partitioningEnabled() || !repository.isResolvable()) return;
+        maintain()
+                .subscribe()
+                .with(
+                        v -> debug(LOG, () -> "DPP metadata partitions maintained"),
+                        e -> LOG.error("Error while maintaining DPP metadata partitions", e));
+    }
+
+    /**
+     * Create the missing partitions up to registry.partition-premake-months months ahead and detach
+     * the ones beyond the retention. If a maintenance is already running nothing is done.
+     *
+     * @return a void Uni.
+     */
+    public Uni<Void> maintain() {
+        if (!repository.isResolvable() || !maintaining.compareAndSet(false, true))
+            return Uni.createFrom().voidItem();
+        MetadataPartitionRepository repo = repository.get();
+        YearMonth current = YearMonth.now();
+        return repo.findPartitions()
+                .flatMap(
+                        existing -> {
+                            Uni<Void> done = Uni.createFrom().voidItem();
+                            for (YearMonth month : toCreate(existing, current))
+                                done = done.call(v -> create(repo, month));
+                            for (YearMonth month : toDetach(existing, current))
+                                done = done.call(v -> detach(repo, month));
+                            return done;
+                        })
+                .eventually(() -> maintaining.set(false));
+    }
+
+    // partitions are contiguous: months are created after the last existing one only.
+    private List<YearMonth> toCreate(List<YearMonth> existing, YearMonth current) {
+        YearMonth last =
+                existing.stream().max(Comparator.naturalOrder()).orElse(current.minusMonths(1));
+        YearMonth from = last.isBefore(current) ? current : last.plusMonths(1);
+        YearMonth to = current.plusMonths(config.partitionPremakeMonths());
+        List<YearMonth> months = new ArrayList<>();
+        for (YearMonth m = from; !m.isAfter(to); m = m.plusMonths(1)) months.add(m);
+        return months;
+    }
+
+    private List<YearMonth> toDetach(List<YearMonth> existing, YearMonth current) {
+        if (config.partitionRetentionMonths().isEmpty()) return List.of();
+        YearMonth oldest = current.minusMonths(config.partitionRetentionMonths().get());
+        return existing.stream().filter(m -> m.isBefore(oldest)).sorted().toList();
+    }
+
+    private Uni<Void> create(MetadataPartitionRepository repo, YearMonth month) {
+        return repo.createPartition(month)
+                .invoke(v -> LOG.infof("Created DPP metadata partition for %s", month));
+    }
+
+    private Uni<Void> detach(MetadataPartitionRepository repo, YearMonth month) {
+        return repo.detachPartition(month)
+                .invoke(v -> LOG.infof("Detached DPP metadata partition for %s", month));
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata.partition;
+
+import io.smallrye.mutiny.Uni;
+import java.time.YearMonth;
+import java.util.List;
+
+/**
+ * Datastore specific handling of the monthly partitions of the dpp_metadata table, partitioned by
+ * range of created_at. Partitions are identified by the month they hold.
+ */
+public interface MetadataPartitionRepository {
+
+    /**
+     * List the monthly partitions attached to the dpp_metadata table. Partitions not created by the
+     * registry, as the one holding the rows stored before partitioning, are not listed.
+     *
+     * @return the months with a partition.
+     */
+    Uni<List<YearMonth>> findPartitions();
+
+    /**
+     * Create the partition of a month, moving to it the entries of the month already stored outside
+     * of any monthly partition. Months are created in ascending order, after the last existing one.
+     *
+     * @param month the month.
+     * @return a void Uni.
+     */
+    Uni<Void> createPartition(YearMonth month);
+
+    /**
+     * Detach the partition of a month from the dpp_metadata table, keeping its rows in a standalone
+     * table to be archived or dropped.
+     *
+     * @param month the month.
+     * @return a void Uni.
+     */
+    Uni<Void> detachPartition(YearMonth month);
+}
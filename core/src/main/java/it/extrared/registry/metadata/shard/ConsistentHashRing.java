@@ -0,0 +1,52 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata.shard;
+
+import static it.extrared.registry.utils.CommonUtils.hash64;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A consistent hash ring mapping keys to a set of named nodes. Every node is placed on the ring at
+ * {@value #VIRTUAL_NODES} points, so that keys are evenly spread and adding a node moves only about
+ * 1/N of them, all to the added node.
+ */
+class ConsistentHashRing {
+
+    static final int VIRTUAL_NODES = 160;
+
+    private static final long SEED = 0xcbf29ce484222325L;
+
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+
+    ConsistentHashRing(List<String> nodes) {
+        if (nodes.isEmpty()) throw new IllegalArgumentException("A hash ring needs a node");
+        for (String node : nodes) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) ring.put(hash64(node + "#" + i, SEED), node);
+        }
+    }
+
+    /**
+     * @param key the key.
+     * @return the node owning the key: the first one clockwise from the key hash.
+     */
+    String nodeFor(String key) {
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash64(key, SEED));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+}
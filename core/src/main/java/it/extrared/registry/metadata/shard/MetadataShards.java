@@ -0,0 +1,190 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata.shard;
+
+import io.quarkus.reactive.datasource.ReactiveDataSource;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.Pool;
+import io.vertx.mutiny.sqlclient.SqlConnection;
+import it.extrared.registry.MetadataRegistryConfig;
+import it.extrared.registry.exceptions.InvalidOperationException;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Any;
+import jakarta.enterprise.inject.Instance;
+import jakarta.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import org.jboss.logging.Logger;
+
+/**
+ * Routes the DPP metadata entries to the reactive datasources listed by registry.shards, by a
+ * consistent hash of their UPI, so that all the entries of a UPI live in the same shard. Without
+ * shards configured the default datasource holds all the entries. The JSON schemas and the other
+ * registry tables always live in the default datasource. After shards are added, and until a
+ * rebalance moves the entries, registry.previous-shards tells where the entries not moved yet are.
+ */
+@ApplicationScoped
+public class MetadataShards {
+
+    /** Name of the default datasource in the registry.shards list. */
+    public static final String DEFAULT_DATASOURCE = "<default>";
+
+    @Inject MetadataRegistryConfig config;
+
+    @Inject Pool primary;
+
+    @Inject @Any Instance<Pool> pools;
+
+    private final Map<String, Pool> shards = new LinkedHashMap<>();
+
+    private ConsistentHashRing ring;
+
+    private ConsistentHashRing previousRing;
+
+    private static final Logger LOG = Logger.getLogger(MetadataShards.class);
+
+    @PostConstruct
+    void init() {
+        List<String> names = config.shards().orElse(List.of(DEFAULT_DATASOURCE));
+        for (String name : names) {
+            if (DEFAULT_DATASOURCE.equals(name)) shards.put(name, primary);
+            else
+                shards.put(
+                        name,
+                        pools.select(new ReactiveDataSource.ReactiveDataSourceLiteral(name)).get());
+        }
+        ring = new ConsistentHashRing(new ArrayList<>(shards.keySet()));
+        if (isSharded()) LOG.infof("DPP metadata sharded across %s", shards.keySet());
+        config.previousShards().ifPresent(this::initPreviousRing);
+    }
+
+    private void initPreviousRing(List<String> names) {
+        for (String name : names)
+            if (!shards.containsKey(name))
+                throw new InvalidOperationException(
+                        "The previous shard %s is not listed in registry.shards".formatted(name));
+        previousRing = new ConsistentHashRing(names);
+        LOG.infof("DPP metadata not found in their shard are looked up across %s", names);
+    }
+
+    /**
+     * @return true if the entries are spread across more than one datasource.
+     */
+    public boolean isSharded() {
+        return shards.size() > 1;
+    }
+
+    /**
+     * @return the names of the shards, in configuration order.
+     */
+    public List<String> names() {
+        return List.copyOf(shards.keySet());
+    }
+
+    /**
+     * @param name the name of a shard.
+     * @return the pool of the shard.
+     */
+    public Pool pool(String name) {
+        return shards.get(name);
+    }
+
+    /**
+     * @param upi a UPI.
+     * @return the name of the shard holding the entries of the UPI.
+     */
+    public String shardFor(String upi) {
+        return isSharded() ? ring.nodeFor(upi) : DEFAULT_DATASOURCE;
+    }
+
+    /**
+     * @param upi a UPI.
+     * @return the pool of the shard holding the entries of the UPI.
+     */
+    public Pool poolFor(String upi) {
+        return isSharded() ? shards.get(ring.nodeFor(upi)) : primary;
+    }
+
+    /**
+     * @param upi a UPI.
+     * @return the pool of the shard registry.previous-shards routes the UPI to, if it is not the
+     *     one it is routed to now: until a rebalance moves them, the entries of the UPI may still
+     *     be stored there.
+     */
+    public Optional<Pool> previousPoolFor(String upi) {
+        if (previousRing == null) return Optional.empty();
+        String previous = previousRing.nodeFor(upi);
+        if (previous.equals(shardFor(upi))) return Optional.empty();
+        return Optional.of(shards.get(previous));
+    }
+
+    /**
+     * Run a read of the entries of a UPI on the shard holding them, falling back to the shard
+     * registry.previous-shards routes the UPI to when nothing is found.
+     *
+     * @param upi the UPI.
+     * @param function the read to run on a connection of the shard.
+     * @param missing tells whether the result of the read found nothing.
+     * @return the result of the read.
+     * @param <T> the type of the result.
+     */
+    public <T> Uni<T> readFor(
+            String upi, Function<SqlConnection, Uni<T>> function, Predicate<T> missing) {
+        Uni<T> read = poolFor(upi).withConnection(function);
+        Optional<Pool> previous = previousPoolFor(upi);
+        if (previous.isEmpty()) return read;
+        return read.flatMap(
+                r ->
+                        missing.test(r)
+                                ? previous.get().withConnection(function)
+                                : Uni.createFrom().item(r));
+    }
+
+    /**
+     * Group some items by the shard holding their UPI.
+     *
+     * @param items the items.
+     * @param upiOf extracts the UPI of an item.
+     * @return the items by shard pool, preserving their relative order.
+     * @param <T> the type of the items.
+     */
+    public <T> Map<Pool, List<T>> partition(Collection<T> items, Function<T, String> upiOf) {
+        Map<Pool, List<T>> byShard = new LinkedHashMap<>();
+        for (T item : items)
+            byShard.computeIfAbsent(poolFor(upiOf.apply(item)), k -> new ArrayList<>()).add(item);
+        return byShard;
+    }
+
+    /**
+     * Run a read on every shard, concurrently.
+     *
+     * @param function the read to run on a connection of each shard.
+     * @return the results, in shard order.
+     * @param <T> the type of the results.
+     */
+    public <T> Uni<List<T>> onEachShard(Function<SqlConnection, Uni<T>> function) {
+        List<Uni<T>> reads = new ArrayList<>();
+        shards.values().forEach(p -> reads.add(p.withConnection(function)));
+        return Uni.join().all(reads).andFailFast();
+    }
+}
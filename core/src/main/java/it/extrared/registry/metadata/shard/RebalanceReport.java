@@ -0,0 +1,69 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata.shard;
+
+/** The outcome of a rebalance of the DPP metadata shards. */
+public class RebalanceReport {
+
+    private long scannedUpis;
+
+    private long movedUpis;
+
+    private long movedEntries;
+
+    private long durationMillis;
+
+    /**
+     * @return the number of distinct UPIs checked across all the shards.
+     */
+    public long getScannedUpis() {
+        return scannedUpis;
+    }
+
+    public void setScannedUpis(long scannedUpis) {
+        this.scannedUpis = scannedUpis;
+    }
+
+    /**
+     * @return the number of UPIs moved to another shard.
+     */
+    public long getMovedUpis() {
+        return movedUpis;
+    }
+
+    public void setMovedUpis(long movedUpis) {
+        this.movedUpis = movedUpis;
+    }
+
+    /**
+     * @return the number of entries of the moved UPIs, i.e. all their versions.
+     */
+    public long getMovedEntries() {
+        return movedEntries;
+    }
+
+    public void setMovedEntries(long movedEntries) {
+        this.movedEntries = movedEntries;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+}
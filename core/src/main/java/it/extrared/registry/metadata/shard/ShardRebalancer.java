@@ -0,0 +1,202 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata.shard;
+
+import static it.extrared.registry.utils.CommonUtils.debug;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.Pool;
+import io.vertx.mutiny.sqlclient.SqlConnection;
+import it.extrared.registry.exceptions.InvalidOperationException;
+import it.extrared.registry.metadata.DPPMetadataEntry;
+import it.extrared.registry.metadata.DPPMetadataRepository;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import org.jboss.logging.Logger;
+
+/**
+ * Moves the DPP metadata entries stored in a shard other than the one their UPI is routed to, e.g.
+ * after shards have been added to registry.shards. Every shard is scanned by pages of UPIs and the
+ * entries of the misplaced ones are copied to their shard, then deleted from the source one. The
+ * entries are locked in the source shard from their read to their deletion, so that writes still
+ * routed there wait for the move and then fail on the version check rather than being lost. With
+ * registry.previous-shards, the nodes routing the UPIs to their new shard move them on their own
+ * before writing them (see {@link #moveMisplaced(Collection)}). Copies skip the entries already
+ * present in the target shard, either copied by an interrupted rebalance or written meanwhile, so
+ * that a rebalance can be run again.
+ */
+@ApplicationScoped
+public class ShardRebalancer {
+
+    private static final int PAGE_SIZE = 1000;
+
+    @Inject MetadataShards shards;
+
+    @Inject DPPMetadataRepository repository;
+
+    private final AtomicBoolean rebalancing = new AtomicBoolean();
+
+    private static final Logger LOG = Logger.getLogger(ShardRebalancer.class);
+
+    /**
+     * Move every misplaced entry to the shard of its UPI.
+     *
+     * @return the {@link RebalanceReport}.
+     */
+    public Uni<RebalanceReport> rebalance() {
+        if (!shards.isSharded())
+            return Uni.createFrom()
+                    .failure(new InvalidOperationException("DPP metadata are not sharded"));
+        if (!rebalancing.compareAndSet(false, true))
+            return Uni.createFrom()
+                    .failure(new InvalidOperationException("A rebalance is already running"));
+        long start = System.currentTimeMillis();
+        RebalanceReport report = new RebalanceReport();
+        Uni<Void> rebalanced = Uni.createFrom().voidItem();
+        for (String shard : shards.names())
+            rebalanced = rebalanced.call(v -> rebalance(shard, null, report));
+        return rebalanced
+                .map(
+                        v -> {
+                            report.setDurationMillis(System.currentTimeMillis() - start);
+                            LOG.infof(
+                                    "Shards rebalanced: %s UPIs moved out of %s in %s ms",
+                                    report.getMovedUpis(),
+                                    report.getScannedUpis(),
+                                    report.getDurationMillis());
+                            return report;
+                        })
+                .eventually(() -> rebalancing.set(false));
+    }
+
+    // deleting the moved UPIs does not affect the scan, paged by UPI.
+    private Uni<Void> rebalance(String shard, String after, RebalanceReport report) {
+        Pool source = shards.pool(shard);
+        return source.withConnection(c -> repository.findUpis(c, after, PAGE_SIZE))
+                .flatMap(
+                        upis -> {
+                            report.setScannedUpis(report.getScannedUpis() + upis.size());
+                            Map<String, List<String>> misplaced =
+                                    upis.stream()
+                                            .filter(u -> !shard.equals(shards.shardFor(u)))
+                                            .collect(
+                                                    Collectors.groupingBy(
+                                                            shards::shardFor,
+                                                            LinkedHashMap::new,
+                                                            Collectors.toList()));
+                            Uni<Void> moved = Uni.createFrom().voidItem();
+                            for (Map.Entry<String, List<String>> e : misplaced.entrySet())
+                                moved =
+                                        moved.call(
+                                                v ->
+                                                        move(
+                                                                        source,
+                                                                        shards.pool(e.getKey()),
+                                                                        e.getValue())
+                                                                .invoke(
+                                                                        entries ->
+                                                                                recordMove(
+                                                                                        report,
+                                                                                        e
+                                                                                                .getValue(),
+                                                                                        entries)));
+                            if (upis.size() < PAGE_SIZE) return moved;
+                            return moved.call(v -> rebalance(shard, upis.getLast(), report));
+                        });
+    }
+
+    /**
+     * Move the entries of the given UPIs still stored in the shard registry.previous-shards routes
+     * them to, so that they are found in their shard when written. The UPIs already moved are
+     * skipped.
+     *
+     * @param upis the UPIs.
+     * @return a {@link Uni} completing when the entries are moved.
+     */
+    public Uni<Void> moveMisplaced(Collection<String> upis) {
+        Map<Route, List<String>> routes = new LinkedHashMap<>();
+        for (String upi : upis)
+            shards.previousPoolFor(upi)
+                    .ifPresent(
+                            p ->
+                                    routes.computeIfAbsent(
+                                                    new Route(p, shards.poolFor(upi)),
+                                                    k -> new ArrayList<>())
+                                            .add(upi));
+        Uni<Void> moved = Uni.createFrom().voidItem();
+        for (Map.Entry<Route, List<String>> e : routes.entrySet())
+            moved = moved.call(v -> move(e.getKey().source(), e.getKey().target(), e.getValue()));
+        return moved;
+    }
+
+    private record Route(Pool source, Pool target) {}
+
+    private static void recordMove(
+            RebalanceReport report, List<String> upis, List<DPPMetadataEntry> entries) {
+        report.setMovedUpis(report.getMovedUpis() + upis.size());
+        report.setMovedEntries(report.getMovedEntries() + entries.size());
+    }
+
+    private Uni<List<DPPMetadataEntry>> move(Pool source, Pool target, List<String> upis) {
+        return source.withTransaction(
+                        c ->
+                                repository
+                                        .findAllByUpis(c, upis)
+                                        .call(
+                                                entries ->
+                                                        target.withTransaction(
+                                                                t -> copyMissing(t, entries, upis)))
+                                        .call(entries -> repository.deleteByUpis(c, upis)))
+                .invoke(
+                        entries ->
+                                debug(
+                                        LOG,
+                                        () ->
+                                                "Moved %s entries of %s UPIs"
+                                                        .formatted(entries.size(), upis.size())));
+    }
+
+    private Uni<Void> copyMissing(
+            SqlConnection conn, List<DPPMetadataEntry> entries, List<String> upis) {
+        return repository
+                .findAllByUpis(conn, upis)
+                .flatMap(
+                        existing -> {
+                            // the versions of a UPI share its registry id.
+                            Set<String> copied =
+                                    existing.stream()
+                                            .map(ShardRebalancer::versionKey)
+                                            .collect(Collectors.toSet());
+                            return repository.copyAll(
+                                    conn,
+                                    entries.stream()
+                                            .filter(e -> !copied.contains(versionKey(e)))
+                                            .toList());
+                        });
+    }
+
+    private static String versionKey(DPPMetadataEntry entry) {
+        return entry.getRegistryId() + "@" + entry.getCreatedAt();
+    }
+}
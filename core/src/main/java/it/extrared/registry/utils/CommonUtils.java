@@ -17,6 +17,8 @@ package it.extrared.registry.utils;
 
 import com.fasterxml.uuid.Generators;
 import com.fasterxml.uuid.impl.TimeBasedGenerator;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Supplier;
 import org.jboss.logging.Logger;
 
@@ -60,6 +62,42 @@ public class CommonUtils {
         return value.matches(DOUBLE_REGEX);
     }
 
+    /**
+     * Split a list in consecutive sublists of the given size, the last one possibly smaller.
+     *
+     * @param list the list to split.
+     * @param size the size of the sublists.
+     * @return the sublists, views of the original list.
+     */
+    public static <T> List<List<T>> partition(List<T> list, int size) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int i = 0; i < list.size(); i += size)
+            chunks.add(list.subList(i, Math.min(i + size, list.size())));
+        return chunks;
+    }
+
+    /**
+     * A fast, well distributed, non cryptographic 64 bit hash of a string: FNV-1a over the UTF-16
+     * chars, finalized with the murmur3 mixer.
+     *
+     * @param value the string to hash.
+     * @param seed the initial value, to derive independent hash functions.
+     * @return the hash.
+     */
+    public static long hash64(String value, long seed) {
+        long h = seed;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
     public static boolean is2xx(int statusCode) {
         return String.valueOf(statusCode).startsWith("2");
     }
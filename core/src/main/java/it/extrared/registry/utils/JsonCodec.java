@@ -0,0 +1,78 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.utils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.io.UncheckedIOException;
+
+/**
+ * Encodes and decodes the JSON metadata exchanged with the reactive SQL clients. Trees are written
+ * to and parsed from their textual form with Jackson only, instead of being converted to the
+ * Map/List object graph backing a Vert.x JsonObject. The datastore must then bind and select JSON
+ * columns as text, e.g. with a cast in PostgreSQL.
+ */
+@ApplicationScoped
+public class JsonCodec {
+
+    @Inject ObjectMapper objectMapper;
+
+    private ObjectReader reader;
+
+    private ObjectWriter writer;
+
+    @PostConstruct
+    void init() {
+        reader = objectMapper.readerFor(JsonNode.class);
+        writer = objectMapper.writerFor(JsonNode.class);
+    }
+
+    /**
+     * Encode a JSON tree as a SQL parameter.
+     *
+     * @param node the JSON tree.
+     * @return the JSON text, null if the node is null.
+     */
+    public String encode(JsonNode node) {
+        if (node == null) return null;
+        try {
+            return writer.writeValueAsString(node);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Decode a JSON column value.
+     *
+     * @param json the JSON text.
+     * @return the JSON tree, null if the value is null or blank.
+     */
+    public JsonNode decode(String json) {
+        if (json == null || json.isBlank()) return null;
+        try {
+            return reader.readTree(json);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -18,12 +18,22 @@ package it.extrared.registry.utils;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.TextNode;
 import io.vertx.core.json.JsonObject;
 import it.extrared.registry.metadata.DPPMetadataEntry;
 import jakarta.enterprise.inject.spi.CDI;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeSet;
 
 /** Some useful method to handle JSON data. */
 public class JsonUtils {
@@ -55,6 +65,47 @@ public class JsonUtils {
         }
     }
 
+    /**
+     * Compute a canonical hash of a JSON document. The hash does not depend on the order of the
+     * object properties nor on the order and the repetitions of the array items, arrays having set
+     * semantics as in the metadata merge, and numbers are compared by value.
+     *
+     * @param node the JSON document.
+     * @return the hex encoded SHA-256 digest of the canonical form of the document.
+     */
+    public static String contentHash(JsonNode node) {
+        try {
+            byte[] canonical = canonicalForm(node).getBytes(StandardCharsets.UTF_8);
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(canonical));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param node a JSON document.
+     * @return the canonical form of the document hashed by {@link #contentHash(JsonNode)}, equal
+     *     for documents differing only in the order of properties and array items.
+     */
+    public static String canonicalForm(JsonNode node) {
+        if (node.isObject()) {
+            List<String> names = new ArrayList<>();
+            node.fieldNames().forEachRemaining(names::add);
+            Collections.sort(names);
+            StringJoiner object = new StringJoiner(",", "{", "}");
+            for (String name : names)
+                object.add(TextNode.valueOf(name) + ":" + canonicalForm(node.get(name)));
+            return object.toString();
+        }
+        if (node.isArray()) {
+            TreeSet<String> items = new TreeSet<>();
+            node.forEach(i -> items.add(canonicalForm(i)));
+            return "[" + String.join(",", items) + "]";
+        }
+        if (node.isNumber()) return node.decimalValue().stripTrailingZeros().toPlainString();
+        return node.toString();
+    }
+
     public static String getJsonFieldAsString(DPPMetadataEntry metadata, String fielName) {
         String upi = null;
         JsonNode jMetadata = metadata.getMetadata();
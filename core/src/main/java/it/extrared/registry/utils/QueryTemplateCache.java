@@ -0,0 +1,77 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.utils;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A bounded, least recently used, cache of the SQL text of dynamically built queries. Templates are
+ * keyed by the schema they were built for, a datastore specific version of any other state they
+ * depend on (e.g. the usable indexes), the ordered filter fields and the projected fields. Reusing
+ * the same SQL text for the same shape of query avoids rebuilding it and lets the SQL client reuse
+ * the prepared statements cached on each connection. Every datastore keeps its own instance, so the
+ * dialect is implied by the owner of the cache.
+ */
+public class QueryTemplateCache {
+
+    private record Key(long stateVersion, List<String> filterFields, List<String> fields) {}
+
+    private final Map<Key, String> templates;
+
+    // the schema the cached templates were built for: templates of previous schemas are dropped.
+    private Object schema;
+
+    public QueryTemplateCache(int maxSize) {
+        this.templates =
+                new LinkedHashMap<>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+                        return size() > maxSize;
+                    }
+                };
+    }
+
+    /**
+     * Get the SQL text of a query, building it if not cached.
+     *
+     * @param schema the schema the query is built for, compared by identity.
+     * @param stateVersion the version of any other state the query depends on.
+     * @param filterFields the ordered fields filtered by the query.
+     * @param fields the fields projected by the query, null if the whole entry is selected.
+     * @param builder builds the SQL text when missing.
+     * @return the SQL text.
+     */
+    public synchronized String get(
+            Object schema,
+            long stateVersion,
+            List<String> filterFields,
+            List<String> fields,
+            Supplier<String> builder) {
+        if (this.schema != schema) {
+            templates.clear();
+            this.schema = schema;
+        }
+        return templates.computeIfAbsent(
+                new Key(stateVersion, filterFields, fields), k -> builder.get());
+    }
+
+    public synchronized int size() {
+        return templates.size();
+    }
+}
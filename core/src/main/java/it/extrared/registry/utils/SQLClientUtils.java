@@ -18,11 +18,16 @@ package it.extrared.registry.utils;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.vertx.core.json.JsonObject;
+import io.vertx.mutiny.sqlclient.Row;
 import io.vertx.mutiny.sqlclient.RowIterator;
 import io.vertx.mutiny.sqlclient.RowSet;
+import it.extrared.registry.exceptions.ConcurrentUpdateException;
 import it.extrared.registry.metadata.DPPMetadataEntry;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
 
 /** Some useful methods for code using Reactive SQL client. */
 public class SQLClientUtils {
@@ -37,6 +42,40 @@ public class SQLClientUtils {
         else return null;
     }
 
+    /**
+     * @param rs the result set of a query.
+     * @return all the results in the set.
+     */
+    public static <T> List<T> toList(RowSet<T> rs) {
+        List<T> result = new ArrayList<>(rs.size());
+        rs.forEach(result::add);
+        return result;
+    }
+
+    /**
+     * Check that each of the version conditioned updates of the entries, executed in the same order
+     * as a batch, did update a row, and increment the version of the entries accordingly.
+     *
+     * @param rs the result of the update batch.
+     * @param entries the updated entries.
+     * @param upiOf the function returning the UPI of an entry.
+     * @return the entries.
+     * @throws ConcurrentUpdateException if the stored version of an entry was changed.
+     */
+    public static List<DPPMetadataEntry> checkUpdated(
+            RowSet<Row> rs,
+            List<DPPMetadataEntry> entries,
+            Function<DPPMetadataEntry, String> upiOf) {
+        RowSet<Row> result = rs;
+        for (DPPMetadataEntry entry : entries) {
+            if (result == null || result.rowCount() == 0)
+                throw new ConcurrentUpdateException(upiOf.apply(entry));
+            result = result.next();
+        }
+        entries.forEach(e -> e.setVersion(e.getVersion() + 1));
+        return entries;
+    }
+
     /**
      * Gets a JSON value from the iterator argument if any or returns null.
      *
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.jsonschema;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.networknt.schema.ValidationMessage;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+public class CompiledSchemaValidatorTest {
+
+    private static final String SCHEMA =
+            """
+    {
+        "$schema": "https://json-schema.org/draft/2020-12/schema",
+        "type": "object",
+        "additionalProperties": false,
+        "required": ["upi", "kind"],
+        "properties": {
+            "upi": {"type": "string", "minLength": 2, "maxLength": 5, "pattern": "^u"},
+            "kind": {"type": "string", "enum": ["ITEM", "BATCH"]},
+            "nullable": {"type": ["string", "null"], "x-searchable": true},
+            "count": {"type": "integer", "minimum": 1, "maximum": 10},
+            "ratio": {"type": "number", "exclusiveMinimum": 0, "exclusiveMaximum": 1},
+            "flag": {"type": "boolean", "const": true},
+            "url": {"type": "string", "format": "uri"},
+            "tags": {
+                "type": "array",
+                "minItems": 1,
+                "maxItems": 3,
+                "uniqueItems": true,
+                "items": {"type": ["string", "integer"], "enum": ["a", "b", 1, 2]}
+            }
+        },
+        "if": {"properties": {"kind": {"const": "ITEM"}}},
+        "then": {"required": ["count"]}
+    }
+    """;
+
+    private static final List<String> DOCUMENTS =
+            List.of(
+                    "{\"upi\":\"u1\",\"kind\":\"BATCH\"}",
+                    "{\"upi\":\"u1\",\"kind\":\"ITEM\",\"count\":1.0}",
+                    "[1, 2]",
+                    "{}",
+                    "{\"upi\":\"x\",\"kind\":\"OTHER\",\"extra\":1}",
+                    "{\"upi\":\"u123456\",\"kind\":\"ITEM\",\"count\":11}",
+                    "{\"upi\":5,\"kind\":null,\"nullable\":3,\"count\":2.5}",
+                    "{\"upi\":\"u1\",\"kind\":\"BATCH\",\"ratio\":1,\"flag\":false}",
+                    "{\"upi\":\"u1\",\"kind\":\"BATCH\",\"ratio\":0.5,\"flag\":\"true\"}",
+                    "{\"upi\":\"u1\",\"kind\":\"BATCH\",\"url\":\"not a uri\"}",
+                    "{\"upi\":\"u1\",\"kind\":\"BATCH\",\"tags\":[]}",
+                    "{\"upi\":\"u1\",\"kind\":\"BATCH\",\"tags\":[\"a\",\"a\",3,true]}",
+                    "{\"upi\":\"u1\",\"kind\":\"BATCH\",\"tags\":[1.0,\"b\"]}",
+                    "{\"upi\":\"u1\",\"kind\":\"BATCH\",\"tags\":\"a\"}");
+
+    private final ObjectMapper om = new ObjectMapper();
+
+    @Test
+    public void testSameMessagesAsNetworknt() throws IOException {
+        assertSameMessages(om.readTree(SCHEMA));
+    }
+
+    @Test
+    public void testDefaultSchema() throws IOException {
+        JsonNode schema =
+                om.readTree(
+                        getClass().getResourceAsStream("/json-schema/core-default-schema.json"));
+        assertSameMessages(schema);
+    }
+
+    @Test
+    public void testNotCompilable() throws IOException {
+        JsonNode schema =
+                om.readTree(
+                        """
+                {"type": "object", "patternProperties": {"^x": {"type": "string"}}}
+                """);
+        assertTrue(CompiledSchemaValidator.compile(schema).isEmpty());
+    }
+
+    @Test
+    public void testPropertyDescriptors() throws IOException {
+        JsonNode node = om.readTree(SCHEMA);
+        Schema schema = new Schema(Schema.FACTORY.getSchema(node), null);
+        assertEquals(8, schema.getProperties().size());
+        SchemaProperty upi = schema.getProperty("upi");
+        assertEquals("string", upi.getType());
+        assertFalse(upi.isNullable());
+        assertEquals("^u", upi.getPattern().pattern());
+        SchemaProperty nullable = schema.getProperty("nullable");
+        assertEquals("string", nullable.getType());
+        assertTrue(nullable.isNullable());
+        assertTrue(nullable.isSearchable());
+        SchemaProperty tags = schema.getProperty("tags");
+        assertTrue(tags.isArray());
+        assertEquals("string", tags.getItemType());
+        assertTrue(tags.isIndexable());
+        assertEquals(List.of("nullable"), schema.getSearchableProperties());
+        assertNull(schema.getProperty("missing"));
+    }
+
+    private void assertSameMessages(JsonNode schema) throws IOException {
+        CompiledSchemaValidator compiled = CompiledSchemaValidator.compile(schema).orElseThrow();
+        var networknt = Schema.FACTORY.getSchema(schema);
+        int failures = 0;
+        for (String doc : DOCUMENTS) {
+            JsonNode data = om.readTree(doc);
+            List<String> expected = describe(networknt.validate(data));
+            assertEquals(expected, describe(compiled.validate(data)), doc);
+            failures += expected.size();
+        }
+        assertTrue(failures > DOCUMENTS.size());
+    }
+
+    private static List<String> describe(Set<ValidationMessage> messages) {
+        return messages.stream()
+                .map(
+                        m ->
+                                String.join(
+                                        " | ",
+                                        m.getMessage(),
+                                        m.getType(),
+                                        m.getCode(),
+                                        String.valueOf(m.getProperty()),
+                                        String.valueOf(m.getEvaluationPath()),
+                                        String.valueOf(m.getSchemaLocation())))
+                .sorted()
+                .toList();
+    }
+}
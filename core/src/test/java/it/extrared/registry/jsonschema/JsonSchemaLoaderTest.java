@@ -15,6 +15,10 @@
  */
 package it.extrared.registry.jsonschema;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.quarkus.test.InjectMock;
@@ -65,4 +69,33 @@ public class JsonSchemaLoaderTest extends TestSupport {
                         getClass().getResourceAsStream("/json-schema/db-schema.json"));
         asserter.assertEquals(() -> schemaCache.get().map(Schema::getSchema), test);
     }
+
+    @Test
+    public void testRefresh() throws Exception {
+        Mockito.when(repository.getCurrentJsonSchema()).thenReturn(Uni.createFrom().nullItem());
+        Schema initial = schemaCache.get().await().indefinitely();
+        JsonNode updated = JsonUtils.loadClasspathJsonTemplate("db-schema.json");
+        Mockito.when(repository.getCurrentJsonSchema()).thenReturn(Uni.createFrom().item(updated));
+        schemaCache.refresh();
+        // the previous schema is served until the reload completes.
+        Schema current = initial;
+        for (int i = 0; i < 50 && current == initial; i++) {
+            Thread.sleep(100);
+            current = schemaCache.get().await().indefinitely();
+        }
+        assertEquals(updated, current.getSchema());
+    }
+
+    @Test
+    public void testFailedLoadNotCached() throws Exception {
+        Mockito.when(repository.getCurrentJsonSchema())
+                .thenReturn(Uni.createFrom().failure(new IllegalStateException("db down")));
+        assertThrows(IllegalStateException.class, () -> schemaCache.get().await().indefinitely());
+        long version = schemaCache.getVersion();
+        Mockito.when(repository.getCurrentJsonSchema()).thenReturn(Uni.createFrom().nullItem());
+        // the failed load is retried in the background after the backoff.
+        for (int i = 0; i < 50 && schemaCache.getVersion() == version; i++) Thread.sleep(100);
+        assertEquals(version + 1, schemaCache.getVersion());
+        assertNotNull(schemaCache.get().await().indefinitely());
+    }
 }
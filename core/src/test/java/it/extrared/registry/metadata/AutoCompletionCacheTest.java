@@ -0,0 +1,149 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.smallrye.mutiny.Uni;
+import it.extrared.registry.MetadataRegistryConfig;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class AutoCompletionCacheTest {
+
+    private final ObjectMapper om = new ObjectMapper();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private int lookups;
+
+    private AutoCompletionCache cache;
+
+    @BeforeEach
+    public void setUp() {
+        MetadataRegistryConfig config = mock(MetadataRegistryConfig.class);
+        when(config.autocompletionCacheEnabled()).thenReturn(true);
+        when(config.autocompletionCacheSize()).thenReturn(2);
+        when(config.autocompletionCacheTtl()).thenReturn(Duration.ofMinutes(1));
+        when(config.autocompletionEnabledFor()).thenReturn(Optional.of(List.of("commodityCode")));
+        when(config.reoidFieldName()).thenReturn("reoId");
+        cache = new AutoCompletionCache();
+        cache.config = config;
+        cache.meterRegistry = meterRegistry;
+        cache.init();
+    }
+
+    private DPPMetadataEntry get(String reoId) throws Exception {
+        ObjectNode filters = (ObjectNode) om.readTree("{\"reoId\":\"%s\"}".formatted(reoId));
+        return cache.get(
+                        filters,
+                        () -> {
+                            lookups++;
+                            if (reoId.equals("0")) return Uni.createFrom().nullItem();
+                            return Uni.createFrom()
+                                    .item(
+                                            new DPPMetadataEntry(
+                                                    om.createObjectNode()
+                                                            .put("commodityCode", reoId)));
+                        })
+                .await()
+                .indefinitely();
+    }
+
+    private DPPMetadataEntry entry(String json) throws Exception {
+        return new DPPMetadataEntry(om.readTree(json));
+    }
+
+    private double count(String name, String tag, String value) {
+        return meterRegistry.get(name).tag(tag, value).counter().count();
+    }
+
+    @Test
+    public void testCaching() throws Exception {
+        assertEquals("1", get("1").getMetadata().get("commodityCode").asText());
+        ((ObjectNode) get("1").getMetadata()).put("commodityCode", "changed");
+        assertEquals("1", get("1").getMetadata().get("commodityCode").asText());
+        assertNull(get("0"));
+        assertNull(get("0"));
+        assertEquals(2, lookups);
+        get("2");
+        get("1");
+        assertEquals(4, lookups);
+        assertEquals(3, count("registry.autocompletion.cache.requests", "result", "hit"));
+        assertEquals(4, count("registry.autocompletion.cache.requests", "result", "miss"));
+        assertEquals(2, count("registry.autocompletion.cache.evictions", "cause", "size"));
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+        get("1");
+        get("2");
+        // an update of an unrelated field does not change the autocompletion.
+        cache.invalidate(
+                entry("{\"reoId\":\"1\",\"commodityCode\":\"1\"}"),
+                entry("{\"reoId\":\"1\",\"commodityCode\":\"1\",\"other\":true}"));
+        get("1");
+        assertEquals(2, lookups);
+        cache.invalidate(
+                entry("{\"reoId\":\"1\",\"commodityCode\":\"1\"}"),
+                entry("{\"reoId\":\"1\",\"commodityCode\":\"3\"}"));
+        // a new row of another reoId.
+        cache.invalidate(null, entry("{\"reoId\":\"4\"}"));
+        get("1");
+        get("2");
+        assertEquals(3, lookups);
+        assertEquals(1, count("registry.autocompletion.cache.evictions", "cause", "invalidated"));
+    }
+
+    private CompletableFuture<DPPMetadataEntry> getPending(
+            String reoId, CompletableFuture<DPPMetadataEntry> result) throws Exception {
+        ObjectNode filters = (ObjectNode) om.readTree("{\"reoId\":\"%s\"}".formatted(reoId));
+        return cache.get(
+                        filters,
+                        () -> {
+                            lookups++;
+                            return Uni.createFrom().completionStage(result);
+                        })
+                .subscribeAsCompletionStage();
+    }
+
+    @Test
+    public void testInvalidationOfLookupsInFlight() throws Exception {
+        CompletableFuture<DPPMetadataEntry> first = new CompletableFuture<>();
+        CompletableFuture<DPPMetadataEntry> second = new CompletableFuture<>();
+        getPending("1", first);
+        getPending("2", second);
+        // a write matching the filters of the first lookup only.
+        cache.invalidate(null, entry("{\"reoId\":\"1\",\"commodityCode\":\"3\"}"));
+        first.complete(new DPPMetadataEntry(om.createObjectNode().put("commodityCode", "1")));
+        second.complete(new DPPMetadataEntry(om.createObjectNode().put("commodityCode", "2")));
+        assertEquals(2, lookups);
+        assertEquals("2", get("2").getMetadata().get("commodityCode").asText());
+        assertEquals(2, lookups);
+        get("1");
+        assertEquals(3, lookups);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.vertx.RunOnVertxContext;
+import io.quarkus.test.vertx.UniAsserter;
+import it.extrared.registry.TestSupport;
+import jakarta.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+public class DPPMetadataServiceBatchTest extends TestSupport {
+
+    private static final String BATCH =
+            """
+    [
+        {
+            "reoId":"6789",
+            "upi":"6789",
+            "commodityCode":"122267310",
+            "liveURL":"localhost:1111/dpp"
+        },
+        {
+            "reoId":"1111",
+            "upi":"1111",
+            "commodityCode":"85176200",
+            "liveURL":"localhost:1111/dpp"
+        },
+        "not an object",
+        {
+            "upi":"1111",
+            "dataCarrierTypes":["RFID"]
+        },
+        {
+            "reoId":"2222",
+            "upi":"2222",
+            "commodityCode":"85176200",
+            "liveURL":"localhost:2222/dpp"
+        },
+        {
+            "reoId":"3333",
+            "upi":"3333",
+            "commodityCode":"invalid",
+            "liveURL":"localhost:1111/dpp"
+        }
+    ]
+    """;
+
+    @Inject ObjectMapper om;
+    @Inject DPPMetadataService metadataService;
+
+    @Test
+    @RunOnVertxContext
+    public void testBatch(UniAsserter asserter) throws JsonProcessingException {
+        List<JsonNode> items = new ArrayList<>();
+        om.readTree(BATCH).forEach(items::add);
+        asserter.assertThat(
+                () -> metadataService.saveOrUpdateAll(items),
+                results -> {
+                    assertEquals(6, results.size());
+                    for (int i = 0; i < results.size(); i++)
+                        assertEquals(i, results.get(i).getIndex());
+                    assertEquals(BatchItemResult.Status.UPDATED, results.get(0).getStatus());
+                    assertEquals(BatchItemResult.Status.CREATED, results.get(1).getStatus());
+                    assertNotNull(results.get(1).getRegistryId());
+                    assertEquals(BatchItemResult.Status.FAILED, results.get(2).getStatus());
+                    // applied on top of item 1, in the same row.
+                    assertEquals(BatchItemResult.Status.CREATED, results.get(3).getStatus());
+                    assertEquals(results.get(1).getRegistryId(), results.get(3).getRegistryId());
+                    assertEquals(BatchItemResult.Status.FAILED, results.get(4).getStatus());
+                    assertFalse(results.get(4).getValidation().isValid());
+                    assertEquals(BatchItemResult.Status.FAILED, results.get(5).getStatus());
+                    assertNotNull(results.get(5).getError());
+                });
+    }
+}
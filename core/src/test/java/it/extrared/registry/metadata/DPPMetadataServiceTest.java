@@ -25,7 +25,9 @@ import io.quarkus.test.vertx.RunOnVertxContext;
 import io.quarkus.test.vertx.UniAsserter;
 import io.smallrye.mutiny.unchecked.Unchecked;
 import it.extrared.registry.TestSupport;
+import it.extrared.registry.exceptions.ConcurrentUpdateException;
 import it.extrared.registry.exceptions.InvalidDPPException;
+import it.extrared.registry.exceptions.PreconditionFailedException;
 import it.extrared.registry.exceptions.SchemaValidationException;
 import jakarta.inject.Inject;
 import java.util.List;
@@ -79,6 +81,16 @@ public class DPPMetadataServiceTest extends TestSupport {
     }
     """;
 
+    private static final String METADATA_CHANGING =
+            """
+    {
+        "reoId":"12345",
+        "upi":"99999",
+        "commodityCode":"122267310",
+        "liveURL":"localhost:1111/dpp"
+    }
+    """;
+
     @Inject ObjectMapper om;
     @Inject DPPMetadataService metadataService;
 
@@ -147,4 +159,64 @@ public class DPPMetadataServiceTest extends TestSupport {
                     assertFalse(((InvalidDPPException) t).getValidationReport().isValid());
                 });
     }
+
+    @Test
+    @RunOnVertxContext
+    public void testConcurrentUpdate(UniAsserter asserter) throws JsonProcessingException {
+        JsonNode upd = om.readTree(METADATA_CHANGING);
+        asserter.assertFailedWith(
+                () -> metadataService.saveOrUpdate(upd, null),
+                t -> assertEquals(ConcurrentUpdateException.class, t.getClass()));
+    }
+
+    @Test
+    @RunOnVertxContext
+    public void testConditionalUpdate(UniAsserter asserter) throws JsonProcessingException {
+        JsonNode upd = om.readTree(METADATA_UPDATE);
+        asserter.assertFailedWith(
+                () -> metadataService.saveOrUpdate(upd.deepCopy(), null, List.of("stale-0")),
+                t -> assertEquals(PreconditionFailedException.class, t.getClass()));
+        asserter.assertThat(
+                () -> metadataService.findByUpi("6789", null),
+                stored -> assertNotNull(stored.getEntityTag()));
+        asserter.assertThat(
+                () ->
+                        metadataService
+                                .findByUpi("6789", null)
+                                .flatMap(
+                                        stored ->
+                                                metadataService.saveOrUpdate(
+                                                        upd.deepCopy(),
+                                                        null,
+                                                        List.of(stored.getEntityTag()))),
+                m -> assertEquals(1, m.getVersion()));
+    }
+
+    @Test
+    @RunOnVertxContext
+    public void testUnchangedUpdate(UniAsserter asserter) throws JsonProcessingException {
+        // the stored entry, with properties and array items in a different order.
+        JsonNode same =
+                om.readTree(
+                        """
+                {"dataCarrierTypes":["RFID","QR_CODE"],"upi":"13579","reoId":"12345"}
+                """);
+        JsonNode changed =
+                om.readTree(
+                        """
+                {"upi":"13579","dataCarrierTypes":["DATA_MATRIX"]}
+                """);
+        asserter.assertThat(
+                () -> metadataService.saveOrUpdate(same, null),
+                m -> {
+                    assertEquals(0, m.getVersion());
+                    assertEquals(2, m.getMetadata().get("dataCarrierTypes").size());
+                });
+        asserter.assertThat(
+                () -> metadataService.saveOrUpdate(changed, null),
+                m -> {
+                    assertEquals(1, m.getVersion());
+                    assertEquals(3, m.getMetadata().get("dataCarrierTypes").size());
+                });
+    }
 }
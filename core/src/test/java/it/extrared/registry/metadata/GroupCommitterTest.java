@@ -0,0 +1,141 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.SqlConnection;
+import it.extrared.registry.MetadataRegistryConfig;
+import it.extrared.registry.exceptions.ConcurrentUpdateException;
+import it.extrared.registry.exceptions.PreconditionFailedException;
+import it.extrared.registry.mocks.MockPool;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class GroupCommitterTest {
+
+    private final ObjectMapper om = new ObjectMapper();
+
+    private final List<String> written = new ArrayList<>();
+
+    private int transactions;
+
+    private final MockPool pool =
+            new MockPool() {
+                @Override
+                public <T> Uni<T> withTransaction(Function<SqlConnection, Uni<T>> function) {
+                    transactions++;
+                    return super.withTransaction(function);
+                }
+            };
+
+    private MetadataRegistryConfig config;
+
+    private GroupCommitter committer;
+
+    @BeforeEach
+    public void setUp() {
+        config = mock(MetadataRegistryConfig.class);
+        when(config.groupCommitMaxItems()).thenReturn(3);
+        // long enough for the groups to be committed only when full.
+        when(config.groupCommitWindow()).thenReturn(Duration.ofMinutes(1));
+        committer = new GroupCommitter();
+        committer.config = config;
+        committer.meterRegistry = new SimpleMeterRegistry();
+        committer.init();
+    }
+
+    private Uni<DPPMetadataEntry> submit(String upi, Uni<DPPMetadataEntry> result) {
+        return committer.submit(
+                pool,
+                upi,
+                new DPPMetadataEntry(),
+                c -> {
+                    written.add(upi);
+                    return result;
+                });
+    }
+
+    private Uni<DPPMetadataEntry> entry(String upi) {
+        return Uni.createFrom().item(new DPPMetadataEntry(om.createObjectNode().put("upi", upi)));
+    }
+
+    @Test
+    public void testGroupCommit() {
+        Uni<DPPMetadataEntry> first = submit("1", entry("1"));
+        Uni<DPPMetadataEntry> second = submit("2", entry("2"));
+        Uni<DPPMetadataEntry> failed =
+                submit("1", Uni.createFrom().failure(new PreconditionFailedException("1")));
+        assertEquals("1", first.await().indefinitely().getMetadata().get("upi").asText());
+        assertEquals("2", second.await().indefinitely().getMetadata().get("upi").asText());
+        assertThrows(PreconditionFailedException.class, () -> failed.await().indefinitely());
+        assertEquals(1, transactions);
+        assertEquals(List.of("1", "1", "2"), written);
+    }
+
+    @Test
+    public void testWindow() {
+        when(config.groupCommitWindow()).thenReturn(Duration.ofMillis(2));
+        DPPMetadataEntry entry = submit("1", entry("1")).await().atMost(Duration.ofSeconds(5));
+        assertEquals("1", entry.getMetadata().get("upi").asText());
+        assertEquals(1, transactions);
+    }
+
+    @Test
+    public void testFailedGroup() {
+        Uni<DPPMetadataEntry> first = submit("1", entry("1"));
+        Uni<DPPMetadataEntry> failed =
+                submit("2", Uni.createFrom().failure(new IllegalStateException("failed")));
+        Uni<DPPMetadataEntry> third = submit("3", entry("3"));
+        assertEquals("1", first.await().indefinitely().getMetadata().get("upi").asText());
+        assertEquals("3", third.await().indefinitely().getMetadata().get("upi").asText());
+        assertThrows(IllegalStateException.class, () -> failed.await().indefinitely());
+        // the group, then each write in its own transaction.
+        assertEquals(4, transactions);
+        assertEquals(6, written.size());
+    }
+
+    @Test
+    public void testRetryAfterRollback() {
+        // a conditional update, bumping the version of the entry as the repositories do.
+        DPPMetadataEntry entry = new DPPMetadataEntry(om.createObjectNode().put("upi", "1"));
+        Uni<DPPMetadataEntry> update =
+                committer.submit(
+                        pool,
+                        "1",
+                        entry,
+                        c -> {
+                            if (entry.getVersion() != 0)
+                                return Uni.createFrom().failure(new ConcurrentUpdateException("1"));
+                            entry.setVersion(entry.getVersion() + 1);
+                            return Uni.createFrom().item(entry);
+                        });
+        submit("2", Uni.createFrom().failure(new IllegalStateException("failed")));
+        submit("3", entry("3"));
+        assertEquals(1, update.await().indefinitely().getVersion());
+        assertEquals(4, transactions);
+    }
+}
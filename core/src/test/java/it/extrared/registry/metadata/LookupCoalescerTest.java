@@ -0,0 +1,96 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.smallrye.mutiny.Uni;
+import it.extrared.registry.MetadataRegistryConfig;
+import it.extrared.registry.metadata.LookupCoalescer.Lookup;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class LookupCoalescerTest {
+
+    private final ObjectMapper om = new ObjectMapper();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final CompletableFuture<DPPMetadataEntry> running = new CompletableFuture<>();
+
+    private int queries;
+
+    private LookupCoalescer coalescer;
+
+    @BeforeEach
+    public void setUp() {
+        MetadataRegistryConfig config = mock(MetadataRegistryConfig.class);
+        when(config.lookupCoalescingEnabled()).thenReturn(true);
+        coalescer = new LookupCoalescer();
+        coalescer.config = config;
+        coalescer.meterRegistry = meterRegistry;
+        coalescer.init();
+    }
+
+    // the queries complete only when the running future does.
+    private CompletableFuture<DPPMetadataEntry> lookup(String upi) {
+        return coalescer
+                .lookup(
+                        Lookup.UPI,
+                        upi,
+                        () -> {
+                            queries++;
+                            return Uni.createFrom().completionStage(running);
+                        })
+                .subscribeAsCompletionStage();
+    }
+
+    private double count(String name) {
+        return meterRegistry.get(name).tag("lookup", "upi").counter().count();
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+        CompletableFuture<DPPMetadataEntry> first = lookup("1");
+        CompletableFuture<DPPMetadataEntry> second = lookup("1");
+        CompletableFuture<DPPMetadataEntry> other = lookup("2");
+        assertEquals(2, queries);
+        running.complete(new DPPMetadataEntry(om.readTree("{\"upi\":\"1\"}")));
+        assertEquals(first.get().getMetadata(), second.get().getMetadata());
+        assertNotSame(first.get().getMetadata(), second.get().getMetadata());
+        assertEquals("1", other.get().getMetadata().get("upi").asText());
+        // the lookup is not in flight anymore.
+        lookup("1").get();
+        assertEquals(3, queries);
+        assertEquals(3, count("registry.lookup.executed"));
+        assertEquals(1, count("registry.lookup.collapsed"));
+    }
+
+    @Test
+    public void testForget() {
+        lookup("1");
+        coalescer.forget(Lookup.UPI, "1");
+        lookup("1");
+        assertEquals(2, queries);
+        assertEquals(0, count("registry.lookup.collapsed"));
+    }
+}
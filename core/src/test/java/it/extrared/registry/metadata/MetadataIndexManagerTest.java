@@ -0,0 +1,76 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+import io.quarkus.test.vertx.RunOnVertxContext;
+import io.quarkus.test.vertx.UniAsserter;
+import it.extrared.registry.TestSupport;
+import it.extrared.registry.metadata.index.IndexState;
+import it.extrared.registry.metadata.index.MetadataIndexManager;
+import it.extrared.registry.mocks.MockMetadataIndexRepository;
+import jakarta.inject.Inject;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+@TestProfile(MetadataIndexManagementPropertyProfile.class)
+public class MetadataIndexManagerTest extends TestSupport {
+
+    private static final String OBSOLETE = "dpp_auto_idx_oldfield_s";
+
+    @Inject MetadataIndexManager indexManager;
+    @Inject MockMetadataIndexRepository indexRepository;
+
+    @Test
+    @RunOnVertxContext
+    public void testObsoleteIndexReported(UniAsserter asserter) {
+        indexRepository.addIndex(
+                new IndexState(OBSOLETE, null, "INDEX ON oldField", IndexState.Status.PRESENT));
+        asserter.assertThat(
+                () -> indexManager.getIndexes(),
+                states ->
+                        assertEquals(
+                                IndexState.Status.OBSOLETE, find(states, OBSOLETE).getStatus()));
+        asserter.execute(() -> indexRepository.dropIndex(OBSOLETE));
+    }
+
+    @Test
+    @RunOnVertxContext
+    public void testReconcile(UniAsserter asserter) {
+        indexRepository.addIndex(
+                new IndexState(OBSOLETE, null, "INDEX ON oldField", IndexState.Status.PRESENT));
+        asserter.assertThat(
+                () -> indexManager.reconcile(),
+                states -> {
+                    assertEquals(2, states.size());
+                    assertEquals("commodityCode", states.get(0).getField());
+                    assertEquals("dataCarrierTypes", states.get(1).getField());
+                    assertTrue(
+                            states.stream()
+                                    .allMatch(s -> s.getStatus() == IndexState.Status.PRESENT));
+                    assertTrue(indexManager.findUsableIndex("commodityCode").isPresent());
+                });
+    }
+
+    private static IndexState find(List<IndexState> states, String name) {
+        return states.stream().filter(s -> s.getName().equals(name)).findFirst().orElseThrow();
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+import io.quarkus.test.vertx.RunOnVertxContext;
+import io.quarkus.test.vertx.UniAsserter;
+import it.extrared.registry.TestSupport;
+import it.extrared.registry.metadata.partition.MetadataPartitionManager;
+import it.extrared.registry.mocks.MockMetadataPartitionRepository;
+import jakarta.inject.Inject;
+import java.time.YearMonth;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+@TestProfile(MetadataPartitioningPropertyProfile.class)
+public class MetadataPartitionManagerTest extends TestSupport {
+
+    @Inject MetadataPartitionManager partitionManager;
+    @Inject MockMetadataPartitionRepository partitionRepository;
+
+    @Test
+    @RunOnVertxContext
+    public void testMaintain(UniAsserter asserter) {
+        YearMonth current = YearMonth.now();
+        asserter.execute(() -> partitionRepository.createPartition(current.minusMonths(13)));
+        asserter.execute(() -> partitionRepository.createPartition(current.minusMonths(12)));
+        asserter.execute(() -> partitionManager.maintain());
+        asserter.execute(
+                () ->
+                        assertEquals(
+                                List.of(
+                                        current.minusMonths(12),
+                                        current,
+                                        current.plusMonths(1),
+                                        current.plusMonths(2),
+                                        current.plusMonths(3)),
+                                partitionRepository.getPartitions()));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.extrared.registry.exceptions.InvalidOperationException;
+import it.extrared.registry.jsonschema.Schema;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class MetadataStreamReaderTest {
+
+    private static final String SCHEMA =
+            """
+    {
+        "$schema": "https://json-schema.org/draft/2020-12/schema",
+        "type": "object",
+        "additionalProperties": false,
+        "required": ["upi", "commodityCode"],
+        "properties": {
+            "upi": {"type": "string"},
+            "commodityCode": {"type": "string", "pattern": "^[0-9]{6,10}$"},
+            "tags": {"type": "array", "minItems": 1, "items": {"type": "string"}}
+        }
+    }
+    """;
+
+    private final ObjectMapper om = new ObjectMapper();
+
+    @Test
+    public void testReadNdjson() throws IOException {
+        String ndjson =
+                """
+                {"upi":"1","commodityCode":"122267310","tags":["a"]}
+                {"upi":"2","commodityCode":"invalid","tags":[{"nested":["skipped"]}]}
+
+                not json
+                {"upi":"3","other":true}
+                {"commodityCode":"122267310"}
+                {"upi":"4","tags":[]}
+                """;
+        List<MetadataStreamReader.Document> docs = new ArrayList<>();
+        reader().readNdjson(stream(ndjson), docs::add);
+        assertEquals(6, docs.size());
+        assertTrue(docs.get(0).isValid());
+        assertEquals("122267310", docs.get(0).metadata().get("commodityCode").asText());
+        assertFalse(docs.get(1).isValid());
+        assertTrue(docs.get(1).error().contains("commodityCode"), docs.get(1).error());
+        assertEquals(2, docs.get(1).line());
+        assertEquals("not a valid JSON", docs.get(2).error());
+        assertEquals(4, docs.get(2).line());
+        assertTrue(docs.get(3).error().contains("other"), docs.get(3).error());
+        assertTrue(docs.get(4).error().contains("upi"), docs.get(4).error());
+        // required properties and array cardinality are left to the validation of the entry.
+        assertTrue(docs.get(5).isValid());
+    }
+
+    @Test
+    public void testReadArray() throws IOException {
+        List<MetadataStreamReader.Document> docs = new ArrayList<>();
+        reader().readArray(
+                        stream("[{\"upi\":\"1\",\"commodityCode\":\"122267310\"}, [1], \"upi\"]"),
+                        docs::add);
+        assertEquals(3, docs.size());
+        assertTrue(docs.get(0).isValid());
+        assertFalse(docs.get(1).isValid());
+        assertFalse(docs.get(2).isValid());
+        assertThrows(
+                InvalidOperationException.class,
+                () -> reader().readArray(stream("{\"upi\":\"1\"}"), docs::add));
+        assertThrows(
+                InvalidOperationException.class,
+                () -> reader().readArray(stream("[{\"upi\":\"1\"}"), docs::add));
+    }
+
+    private MetadataStreamReader reader() throws IOException {
+        Schema schema = new Schema(Schema.FACTORY.getSchema(om.readTree(SCHEMA)), null);
+        assertTrue(schema.compile());
+        return new MetadataStreamReader(om, schema, "upi");
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
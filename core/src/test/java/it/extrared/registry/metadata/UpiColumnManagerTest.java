@@ -0,0 +1,81 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.Pool;
+import io.vertx.mutiny.sqlclient.SqlConnection;
+import it.extrared.registry.MetadataRegistryConfig;
+import it.extrared.registry.exceptions.InvalidOperationException;
+import it.extrared.registry.metadata.shard.MetadataShards;
+import jakarta.enterprise.inject.Instance;
+import java.util.List;
+import java.util.function.Function;
+import org.junit.jupiter.api.Test;
+
+public class UpiColumnManagerTest {
+
+    private final SqlConnection conn = mock(SqlConnection.class);
+
+    private final UpiColumnRepository repository = mock(UpiColumnRepository.class);
+
+    @SuppressWarnings("unchecked")
+    private UpiColumnManager manager(String upiField, String generatedFrom) {
+        MetadataRegistryConfig config = mock(MetadataRegistryConfig.class);
+        when(config.upiFieldName()).thenReturn(upiField);
+        Pool pool = mock(Pool.class);
+        when(pool.withTransaction(any(Function.class)))
+                .thenAnswer(i -> ((Function<SqlConnection, Uni<?>>) i.getArgument(0)).apply(conn));
+        MetadataShards shards = mock(MetadataShards.class);
+        when(shards.names()).thenReturn(List.of(MetadataShards.DEFAULT_DATASOURCE));
+        when(shards.pool(MetadataShards.DEFAULT_DATASOURCE)).thenReturn(pool);
+        when(repository.findUpiField(conn)).thenReturn(Uni.createFrom().item(generatedFrom));
+        when(repository.changeUpiField(any(), anyString())).thenReturn(Uni.createFrom().voidItem());
+        Instance<UpiColumnRepository> instance = mock(Instance.class);
+        when(instance.isResolvable()).thenReturn(true);
+        when(instance.get()).thenReturn(repository);
+        UpiColumnManager manager = new UpiColumnManager();
+        manager.config = config;
+        manager.shards = shards;
+        manager.repository = instance;
+        return manager;
+    }
+
+    @Test
+    public void testColumnKept() {
+        manager("upi", "upi").onStart(null);
+        verify(repository, never()).changeUpiField(any(), anyString());
+    }
+
+    @Test
+    public void testColumnGeneratedFromConfiguredField() {
+        manager("productId", "upi").onStart(null);
+        verify(repository).changeUpiField(conn, "productId");
+    }
+
+    @Test
+    public void testInvalidField() {
+        assertThrows(InvalidOperationException.class, () -> manager("upi'", "upi").onStart(null));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+import io.quarkus.test.vertx.RunOnVertxContext;
+import io.quarkus.test.vertx.UniAsserter;
+import it.extrared.registry.TestSupport;
+import it.extrared.registry.metadata.filter.ScalableBloomFilter;
+import it.extrared.registry.metadata.filter.UpiFilter;
+import jakarta.inject.Inject;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+@TestProfile(MetadataUpiFilterPropertyProfile.class)
+public class UpiFilterTest extends TestSupport {
+
+    private static final String METADATA_NEW =
+            """
+    {
+        "reoId":"2222",
+        "upi":"2222",
+        "commodityCode":"122267310",
+        "liveURL":"localhost:1111/dpp"
+    }
+    """;
+
+    private static final String METADATA_UPDATE =
+            """
+    {
+        "reoId":"6789",
+        "upi":"6789",
+        "commodityCode":"122267310",
+        "liveURL":"localhost:1111/dpp"
+    }
+    """;
+
+    @Inject ObjectMapper om;
+    @Inject DPPMetadataService metadataService;
+    @Inject UpiFilter upiFilter;
+
+    @Test
+    public void testScalableBloomFilter() {
+        ScalableBloomFilter filter = new ScalableBloomFilter(1000, 0.01);
+        for (int i = 0; i < 10000; i++) filter.add("upi-" + i);
+        for (int i = 0; i < 10000; i++) assertTrue(filter.mightContain("upi-" + i));
+        int falsePositives = 0;
+        for (int i = 10000; i < 20000; i++) if (filter.mightContain("upi-" + i)) falsePositives++;
+        assertTrue(falsePositives < 100, "%s false positives".formatted(falsePositives));
+        assertTrue(filter.expectedFpp() < 0.01);
+        assertTrue(filter.size() <= 10000);
+    }
+
+    @Test
+    @RunOnVertxContext
+    public void testSaveAndUpdate(UniAsserter asserter) throws JsonProcessingException {
+        JsonNode created = om.readTree(METADATA_NEW);
+        JsonNode updated = om.readTree(METADATA_UPDATE);
+        asserter.execute(() -> upiFilter.rebuild());
+        asserter.execute(
+                () -> {
+                    assertTrue(upiFilter.mightContain("6789"));
+                    assertFalse(upiFilter.mightContain("2222"));
+                });
+        asserter.assertThat(
+                () -> metadataService.saveOrUpdate(created, null),
+                m -> {
+                    assertNotNull(m.getRegistryId());
+                    assertTrue(upiFilter.mightContain("2222"));
+                });
+        asserter.assertThat(
+                () -> metadataService.saveOrUpdate(updated, List.of("reoId")),
+                m -> assertEquals(2, m.getMetadata().get("dataCarrierTypes").size()));
+    }
+}
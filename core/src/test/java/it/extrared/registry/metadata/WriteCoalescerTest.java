@@ -0,0 +1,107 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.smallrye.mutiny.Uni;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class WriteCoalescerTest {
+
+    private final ObjectMapper om = new ObjectMapper();
+
+    private final List<JsonNode> written = new ArrayList<>();
+
+    private final CompletableFuture<Void> running = new CompletableFuture<>();
+
+    private WriteCoalescer coalescer;
+
+    @BeforeEach
+    public void setUp() {
+        coalescer = new WriteCoalescer();
+        coalescer.meterRegistry = new SimpleMeterRegistry();
+        coalescer.init();
+    }
+
+    // the first write waits for the running future, the following ones complete immediately.
+    private Uni<DPPMetadataEntry> write(JsonNode metadata) {
+        written.add(metadata);
+        Uni<DPPMetadataEntry> entry =
+                metadata.has("invalid")
+                        ? Uni.createFrom().failure(new IllegalArgumentException("invalid"))
+                        : Uni.createFrom().item(new DPPMetadataEntry(metadata));
+        return written.size() == 1
+                ? Uni.createFrom().completionStage(running).flatMap(v -> entry)
+                : entry;
+    }
+
+    private Uni<DPPMetadataEntry> submit(String json) throws Exception {
+        return coalescer.submit("1", om.readTree(json), this::write);
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+        Uni<DPPMetadataEntry> first =
+                submit("{\"upi\":\"1\",\"a\":\"1\"}").memoize().indefinitely();
+        first.subscribe().with(m -> {});
+        Uni<DPPMetadataEntry> second = submit("{\"upi\":\"1\",\"b\":\"2\",\"c\":[\"x\"]}");
+        Uni<DPPMetadataEntry> third = submit("{\"upi\":\"1\",\"b\":\"3\",\"c\":[\"y\"]}");
+        assertEquals(1, written.size());
+        running.complete(null);
+        DPPMetadataEntry merged = second.await().indefinitely();
+        assertSame(merged, third.await().indefinitely());
+        assertEquals(2, written.size());
+        assertEquals("3", merged.getMetadata().get("b").asText());
+        assertEquals(2, merged.getMetadata().get("c").size());
+        assertEquals("1", first.await().indefinitely().getMetadata().get("a").asText());
+    }
+
+    @Test
+    public void testFailedCoalescedWrite() throws Exception {
+        submit("{\"upi\":\"1\"}").subscribe().with(m -> {});
+        Uni<DPPMetadataEntry> valid = submit("{\"upi\":\"1\",\"b\":\"2\"}");
+        Uni<DPPMetadataEntry> invalid = submit("{\"upi\":\"1\",\"invalid\":true}");
+        running.complete(null);
+        assertEquals("2", valid.await().indefinitely().getMetadata().get("b").asText());
+        assertThrows(IllegalArgumentException.class, () -> invalid.await().indefinitely());
+        // the merged write, then each submission on its own.
+        assertEquals(4, written.size());
+    }
+
+    @Test
+    public void testSubmissionsNotChangedByMerge() throws Exception {
+        submit("{\"upi\":\"1\"}").subscribe().with(m -> {});
+        submit("{\"upi\":\"1\",\"b\":\"2\"}").subscribe().with(m -> {});
+        Uni<DPPMetadataEntry> first = submit("{\"upi\":\"1\",\"c\":[\"x\"]}");
+        Uni<DPPMetadataEntry> second = submit("{\"upi\":\"1\",\"c\":[\"y\"],\"invalid\":true}");
+        running.complete(null);
+        // the merged write fails, so each submission is written as it was sent.
+        JsonNode c = first.await().indefinitely().getMetadata().get("c");
+        assertEquals(1, c.size());
+        assertEquals("x", c.get(0).asText());
+        assertThrows(IllegalArgumentException.class, () -> second.await().indefinitely());
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata.shard;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class ConsistentHashRingTest {
+
+    private static final int KEYS = 30000;
+
+    @Test
+    public void testEvenDistribution() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b", "c"));
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) counts.merge(ring.nodeFor("upi-" + i), 1, Integer::sum);
+        assertEquals(3, counts.size());
+        counts.values().forEach(c -> assertTrue(Math.abs(c - KEYS / 3) < KEYS / 10, "" + c));
+    }
+
+    @Test
+    public void testAddedNodeMovesKeysOnlyToIt() {
+        ConsistentHashRing before = new ConsistentHashRing(List.of("a", "b", "c"));
+        ConsistentHashRing after = new ConsistentHashRing(List.of("a", "b", "c", "d"));
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "upi-" + i;
+            String node = after.nodeFor(key);
+            if (!node.equals(before.nodeFor(key))) {
+                assertEquals("d", node);
+                moved++;
+            }
+        }
+        assertTrue(Math.abs(moved - KEYS / 4) < KEYS / 10, "" + moved);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.metadata.shard;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.quarkus.reactive.datasource.ReactiveDataSource;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.Pool;
+import io.vertx.mutiny.sqlclient.SqlConnection;
+import it.extrared.registry.MetadataRegistryConfig;
+import jakarta.enterprise.inject.Instance;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+public class MetadataShardsTest {
+
+    private final SqlConnection primaryConn = mock(SqlConnection.class);
+
+    private final SqlConnection shardConn = mock(SqlConnection.class);
+
+    @SuppressWarnings("unchecked")
+    private MetadataShards shards(Optional<List<String>> previous) {
+        MetadataRegistryConfig config = mock(MetadataRegistryConfig.class);
+        when(config.shards())
+                .thenReturn(Optional.of(List.of(MetadataShards.DEFAULT_DATASOURCE, "shard1")));
+        when(config.previousShards()).thenReturn(previous);
+        Instance<Pool> pools = mock(Instance.class);
+        Instance<Pool> shard1 = mock(Instance.class);
+        when(pools.select(any(ReactiveDataSource.ReactiveDataSourceLiteral.class)))
+                .thenReturn(shard1);
+        Pool shardPool = pool(shardConn);
+        when(shard1.get()).thenReturn(shardPool);
+        MetadataShards shards = new MetadataShards();
+        shards.config = config;
+        shards.primary = pool(primaryConn);
+        shards.pools = pools;
+        shards.init();
+        return shards;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Pool pool(SqlConnection conn) {
+        Pool pool = mock(Pool.class);
+        when(pool.withConnection(any(Function.class)))
+                .thenAnswer(i -> ((Function<SqlConnection, Uni<?>>) i.getArgument(0)).apply(conn));
+        return pool;
+    }
+
+    // a UPI routed to the added shard, which the previous list routed to the default one.
+    private static String movedUpi(MetadataShards shards) {
+        return IntStream.range(0, 1000)
+                .mapToObj(i -> "upi-" + i)
+                .filter(u -> shards.shardFor(u).equals("shard1"))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    @Test
+    public void testReadFallsBackToPreviousShard() {
+        MetadataShards shards = shards(Optional.of(List.of(MetadataShards.DEFAULT_DATASOURCE)));
+        String upi = movedUpi(shards);
+        Map<SqlConnection, String> stored = Map.of(primaryConn, "old");
+        Function<SqlConnection, Uni<String>> read = c -> Uni.createFrom().item(stored.get(c));
+        assertEquals("old", shards.readFor(upi, read, Objects::isNull).await().indefinitely());
+        assertTrue(shards.previousPoolFor(upi).isPresent());
+    }
+
+    @Test
+    public void testReadWithoutPreviousShards() {
+        MetadataShards shards = shards(Optional.empty());
+        String upi = movedUpi(shards);
+        Map<SqlConnection, String> stored = Map.of(primaryConn, "old");
+        Function<SqlConnection, Uni<String>> read = c -> Uni.createFrom().item(stored.get(c));
+        assertNull(shards.readFor(upi, read, Objects::isNull).await().indefinitely());
+        assertTrue(shards.previousPoolFor(upi).isEmpty());
+    }
+}
@@ -16,18 +16,25 @@
 package it.extrared.registry.mocks;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.quarkus.arc.Unremovable;
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
 import io.smallrye.mutiny.tuples.Tuple2;
 import io.smallrye.mutiny.unchecked.Unchecked;
 import io.vertx.mutiny.sqlclient.SqlConnection;
+import it.extrared.registry.exceptions.ConcurrentUpdateException;
 import it.extrared.registry.metadata.DPPMetadataEntry;
 import it.extrared.registry.metadata.DPPMetadataRepository;
+import it.extrared.registry.metadata.JsonMerger;
 import it.extrared.registry.utils.CommonUtils;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 
 @ApplicationScoped
 @Unremovable
@@ -61,12 +68,41 @@ public class MockDPPMetadataRepository implements DPPMetadataRepository {
             """
                     .formatted(CommonUtils.generateTimeBasedUUID());
 
+    private static final String METADATA_3 =
+                    """
+            {
+              "registryId":"%s",
+              "created_at":"2025/10/22 09:10:13",
+              "metadata": {
+                "reoId":"12345",
+                "upi":"13579",
+                "commodityCode": "85176200",
+                "liveURL":"localhost:1111/dpp",
+                "dataCarrierTypes":["QR_CODE","RFID"]
+              }
+            }
+            """
+                    .formatted(CommonUtils.generateTimeBasedUUID());
+
+    // an entry modified by someone else every time it is read.
+    public static final String CHANGING_UPI = "99999";
+
+    private final AtomicLong changes = new AtomicLong();
+
     @Inject ObjectMapper objectMapper;
 
     @Override
     public Uni<DPPMetadataEntry> findByUpi(SqlConnection conn, String upi) {
         if (upi.equals("12345")) return uniMeta(METADATA_1);
         else if (upi.equals("6789")) return uniMeta(METADATA_2);
+        else if (upi.equals("13579")) return uniMeta(METADATA_3);
+        else if (upi.equals(CHANGING_UPI))
+            return uniMeta(METADATA_1)
+                    .invoke(
+                            m ->
+                                    m.setModifiedAt(
+                                            LocalDateTime.of(2025, 10, 20, 10, 20)
+                                                    .plusSeconds(changes.incrementAndGet())));
         else return Uni.createFrom().nullItem();
     }
 
@@ -90,6 +126,16 @@ public class MockDPPMetadataRepository implements DPPMetadataRepository {
         else return Uni.createFrom().nullItem();
     }
 
+    @Override
+    public Uni<DPPMetadataEntry> findBy(
+            SqlConnection conn, List<Tuple2<String, Object>> filters, List<String> fields) {
+        return findBy(conn, filters)
+                .invoke(
+                        m -> {
+                            if (m != null) ((ObjectNode) m.getMetadata()).retain(fields);
+                        });
+    }
+
     @Override
     public Uni<DPPMetadataEntry> save(SqlConnection conn, DPPMetadataEntry metadata) {
         metadata.setRegistryId(CommonUtils.generateTimeBasedUUID());
@@ -98,6 +144,90 @@ public class MockDPPMetadataRepository implements DPPMetadataRepository {
 
     @Override
     public Uni<DPPMetadataEntry> update(SqlConnection con, DPPMetadataEntry metadata) {
+        // the stored version of the changing UPI is always bumped by another writer.
+        if (metadata.getMetadata().get("upi").asText().equals(CHANGING_UPI))
+            return Uni.createFrom().failure(new ConcurrentUpdateException(CHANGING_UPI));
+        metadata.setVersion(metadata.getVersion() + 1);
+        return Uni.createFrom().item(metadata);
+    }
+
+    @Override
+    public Uni<List<DPPMetadataEntry>> findByUpis(SqlConnection conn, Collection<String> upis) {
+        return Multi.createFrom()
+                .iterable(upis)
+                .onItem()
+                .transformToUniAndConcatenate(
+                        u ->
+                                findByUpi(conn, u)
+                                        .onItem()
+                                        .ifNotNull()
+                                        .invoke(m -> ((ObjectNode) m.getMetadata()).put("upi", u)))
+                .collect()
+                .asList();
+    }
+
+    @Override
+    public Uni<List<DPPMetadataEntry>> saveAll(
+            SqlConnection conn, List<DPPMetadataEntry> metadata) {
+        metadata.forEach(m -> m.setRegistryId(CommonUtils.generateTimeBasedUUID()));
         return Uni.createFrom().item(metadata);
     }
+
+    @Override
+    public Uni<List<DPPMetadataEntry>> updateAll(
+            SqlConnection conn, List<DPPMetadataEntry> metadata) {
+        return Uni.createFrom().item(metadata);
+    }
+
+    @Override
+    public Uni<List<String>> findUpis(SqlConnection conn, String after, int limit) {
+        List<String> upis = after == null ? List.of("12345", "6789") : List.of();
+        return Uni.createFrom().item(upis);
+    }
+
+    @Override
+    public Uni<List<DPPMetadataEntry>> findAllByUpis(SqlConnection conn, Collection<String> upis) {
+        return findByUpis(conn, upis);
+    }
+
+    @Override
+    public Uni<Void> copyAll(SqlConnection conn, List<DPPMetadataEntry> metadata) {
+        return Uni.createFrom().voidItem();
+    }
+
+    @Override
+    public Uni<List<DPPMetadataEntry>> findVersions(SqlConnection conn, String upi) {
+        return findByUpi(conn, upi).map(m -> m != null ? List.of(m) : List.of());
+    }
+
+    @Override
+    public Uni<DPPMetadataEntry> findByUpiAsOf(SqlConnection conn, String upi, LocalDateTime at) {
+        return findByUpi(conn, upi);
+    }
+
+    @Override
+    public Uni<Void> deleteByUpis(SqlConnection conn, Collection<String> upis) {
+        return Uni.createFrom().voidItem();
+    }
+
+    @Override
+    public Uni<DPPMetadataEntry> upsert(SqlConnection conn, DPPMetadataEntry metadata) {
+        String upi = metadata.getMetadata().get("upi").asText();
+        return findByUpi(conn, upi)
+                .map(
+                        existing -> {
+                            if (existing == null) {
+                                metadata.setRegistryId(CommonUtils.generateTimeBasedUUID());
+                            } else {
+                                metadata.setRegistryId(existing.getRegistryId());
+                                metadata.setCreatedAt(existing.getCreatedAt());
+                                metadata.setMetadata(
+                                        new JsonMerger()
+                                                .merge(
+                                                        (ObjectNode) existing.getMetadata(),
+                                                        (ObjectNode) metadata.getMetadata()));
+                            }
+                            return metadata;
+                        });
+    }
 }
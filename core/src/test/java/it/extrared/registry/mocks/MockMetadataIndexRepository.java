@@ -0,0 +1,65 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.mocks;
+
+import io.quarkus.arc.Unremovable;
+import io.smallrye.mutiny.Uni;
+import it.extrared.registry.metadata.index.IndexDefinition;
+import it.extrared.registry.metadata.index.IndexState;
+import it.extrared.registry.metadata.index.MetadataIndexRepository;
+import jakarta.enterprise.context.ApplicationScoped;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@ApplicationScoped
+@Unremovable
+public class MockMetadataIndexRepository implements MetadataIndexRepository {
+
+    private final Map<String, IndexState> indexes = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean supports(IndexDefinition definition) {
+        return true;
+    }
+
+    @Override
+    public Uni<List<IndexState>> findManagedIndexes() {
+        return Uni.createFrom().item(List.copyOf(indexes.values()));
+    }
+
+    @Override
+    public Uni<Void> createIndex(IndexDefinition definition) {
+        indexes.put(
+                definition.getIndexName(),
+                new IndexState(
+                        definition.getIndexName(),
+                        null,
+                        "INDEX ON " + definition.getField(),
+                        IndexState.Status.PRESENT));
+        return Uni.createFrom().voidItem();
+    }
+
+    @Override
+    public Uni<Void> dropIndex(String indexName) {
+        indexes.remove(indexName);
+        return Uni.createFrom().voidItem();
+    }
+
+    public void addIndex(IndexState state) {
+        indexes.put(state.getName(), state);
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.mocks;
+
+import io.quarkus.arc.Unremovable;
+import io.smallrye.mutiny.Uni;
+import it.extrared.registry.metadata.partition.MetadataPartitionRepository;
+import jakarta.enterprise.context.ApplicationScoped;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+@ApplicationScoped
+@Unremovable
+public class MockMetadataPartitionRepository implements MetadataPartitionRepository {
+
+    private final Set<YearMonth> partitions = new ConcurrentSkipListSet<>();
+
+    @Override
+    public Uni<List<YearMonth>> findPartitions() {
+        return Uni.createFrom().item(List.copyOf(partitions));
+    }
+
+    @Override
+    public Uni<Void> createPartition(YearMonth month) {
+        partitions.add(month);
+        return Uni.createFrom().voidItem();
+    }
+
+    @Override
+    public Uni<Void> detachPartition(YearMonth month) {
+        partitions.remove(month);
+        return Uni.createFrom().voidItem();
+    }
+
+    public List<YearMonth> getPartitions() {
+        return List.copyOf(partitions);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.datastore.mariadb.datasource;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.Pool;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.RowIterator;
+import it.extrared.registry.datasource.ReplicaLagProbe;
+import jakarta.enterprise.context.ApplicationScoped;
+import java.time.Duration;
+
+/**
+ * MariaDB implementation of the {@link ReplicaLagProbe}, reading Seconds_Behind_Master from the
+ * replica status. A server without replica status is not replicating, while a null lag means that
+ * the replication is stopped.
+ */
+@ApplicationScoped
+public class MariaDBReplicaLagProbe implements ReplicaLagProbe {
+
+    private static final String SHOW_STATUS = "SHOW SLAVE STATUS";
+
+    @Override
+    public Uni<Duration> lag(Pool replica) {
+        return replica.query(SHOW_STATUS)
+                .execute()
+                .map(
+                        rs -> {
+                            RowIterator<Row> it = rs.iterator();
+                            if (!it.hasNext()) return Duration.ZERO;
+                            Long seconds = it.next().getLong("Seconds_Behind_Master");
+                            if (seconds == null)
+                                throw new IllegalStateException(
+                                        "Replication is not running on the read replica");
+                            return Duration.ofSeconds(seconds);
+                        });
+    }
+}
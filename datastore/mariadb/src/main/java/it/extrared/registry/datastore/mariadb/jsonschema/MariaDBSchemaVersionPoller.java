@@ -0,0 +1,77 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.datastore.mariadb.jsonschema;
+
+import static it.extrared.registry.utils.CommonUtils.debug;
+
+import io.quarkus.scheduler.Scheduled;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.Pool;
+import it.extrared.registry.MetadataRegistryConfig;
+import it.extrared.registry.jsonschema.SchemaCache;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import org.jboss.logging.Logger;
+
+/**
+ * Detects JSON schema changes made through other nodes of the registry by polling the version of
+ * the json_schemas table every registry.schema-sync-poll-interval, since MariaDB has no
+ * notification channel. The version is made of the highest id and of the number of the stored
+ * schemas, so that both an added and a removed schema change it. When it changes the schema is
+ * reloaded in the background (see {@link SchemaCache#refresh()}), as it is on the first poll.
+ */
+@ApplicationScoped
+public class MariaDBSchemaVersionPoller {
+
+    private static final String SELECT_VERSION =
+            "SELECT CONCAT(COALESCE(MAX(id), 0), ':', COUNT(*)) FROM json_schemas";
+
+    private static final Logger LOG = Logger.getLogger(MariaDBSchemaVersionPoller.class);
+
+    @Inject MetadataRegistryConfig config;
+
+    @Inject SchemaCache schemaCache;
+
+    @Inject Pool pool;
+
+    private final AtomicReference<String> version = new AtomicReference<>();
+
+    @Scheduled(
+            every = "${registry.schema-sync-poll-interval}",
+            concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    Uni<Void> poll() {
+        if (!config.schemaSyncEnabled()) return Uni.createFrom().voidItem();
+        return pool.query(SELECT_VERSION)
+                .execute()
+                .map(rs -> rs.iterator().next().getString(0))
+                .invoke(this::onVersion)
+                .onFailure()
+                .invoke(e -> LOG.error("Error while checking the JSON schema version", e))
+                .onFailure()
+                .recoverWithNull()
+                .replaceWithVoid();
+    }
+
+    private void onVersion(String current) {
+        String previous = version.getAndSet(current);
+        debug(LOG, () -> "JSON schema version is %s".formatted(current));
+        // the version the cache was loaded with is unknown, so the first poll refreshes it too:
+        // a schema changed between the load and the first poll would otherwise go unnoticed.
+        if (!Objects.equals(previous, current)) schemaCache.refresh();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.datastore.mariadb.metadata;
+
+import static it.extrared.registry.utils.CommonUtils.debug;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.Pool;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.RowSet;
+import it.extrared.registry.metadata.index.IndexDefinition;
+import it.extrared.registry.metadata.index.IndexState;
+import it.extrared.registry.metadata.index.MetadataIndexRepository;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.jboss.logging.Logger;
+
+/**
+ * MariaDB implementation of the {@link MetadataIndexRepository}. Since MariaDB has no functional
+ * indexes, each indexed field is extracted in a virtual column that {@link
+ * MariaDBMetadataRepository} queries in place of the JSON expression. Columns and indexes are
+ * changed online (ALGORITHM=INPLACE, LOCK=NONE). Arrays are not supported since MariaDB lacks
+ * multi-valued indexes.
+ */
+@ApplicationScoped
+public class MariaDBMetadataIndexRepository implements MetadataIndexRepository {
+
+    @Inject Pool pool;
+
+    private static final Set<String> SUPPORTED_TYPES =
+            Set.of("string", "number", "integer", "boolean");
+
+    private static final String SELECT_MANAGED =
+            """
+            SELECT DISTINCT s.INDEX_NAME, c.COLUMN_NAME, c.GENERATION_EXPRESSION
+            FROM information_schema.STATISTICS s
+            JOIN information_schema.COLUMNS c ON c.TABLE_SCHEMA = s.TABLE_SCHEMA
+            AND c.TABLE_NAME = s.TABLE_NAME AND c.COLUMN_NAME = s.COLUMN_NAME
+            WHERE s.TABLE_SCHEMA = DATABASE() AND s.TABLE_NAME = 'dpp_metadata'
+            AND s.INDEX_NAME LIKE 'dpp\\_auto\\_idx\\_%'
+            """;
+
+    private static final String ADD_COLUMN =
+            """
+            ALTER TABLE dpp_metadata ADD COLUMN IF NOT EXISTS `%s` %s AS (%s) VIRTUAL,
+            ALGORITHM=INPLACE, LOCK=NONE
+            """;
+
+    private static final String CREATE_INDEX =
+            "CREATE INDEX IF NOT EXISTS `%s` ON dpp_metadata (`%s`) ALGORITHM=INPLACE LOCK=NONE";
+
+    private static final String DROP_INDEX =
+            "DROP INDEX IF EXISTS `%s` ON dpp_metadata ALGORITHM=INPLACE LOCK=NONE";
+
+    private static final String DROP_COLUMN =
+            "ALTER TABLE dpp_metadata DROP COLUMN IF EXISTS `%s`, ALGORITHM=INPLACE, LOCK=NONE";
+
+    private static final Logger LOG = Logger.getLogger(MariaDBMetadataIndexRepository.class);
+
+    @Override
+    public boolean supports(IndexDefinition definition) {
+        return SUPPORTED_TYPES.contains(definition.getType());
+    }
+
+    @Override
+    public Uni<List<IndexState>> findManagedIndexes() {
+        Uni<RowSet<Row>> rs = pool.query(SELECT_MANAGED).execute();
+        return rs.map(
+                rows -> {
+                    List<IndexState> states = new ArrayList<>();
+                    for (Row r : rows) {
+                        String definition = "%s AS (%s)".formatted(r.getString(1), r.getString(2));
+                        states.add(
+                                new IndexState(
+                                        r.getString(0),
+                                        null,
+                                        definition,
+                                        IndexState.Status.PRESENT));
+                    }
+                    debug(LOG, () -> "Found managed indexes %s".formatted(states));
+                    return states;
+                });
+    }
+
+    @Override
+    public Uni<Void> createIndex(IndexDefinition definition) {
+        String field = definition.getField();
+        String type = definition.getType();
+        String addColumn =
+                ADD_COLUMN.formatted(
+                        definition.getColumnName(),
+                        MariaDBMetadataRepository.columnType(type),
+                        MariaDBMetadataRepository.jsonExpression(field, type));
+        String createIndex =
+                CREATE_INDEX.formatted(definition.getIndexName(), definition.getColumnName());
+        debug(LOG, () -> "Executing statements %s and %s".formatted(addColumn, createIndex));
+        return pool.query(addColumn)
+                .execute()
+                .flatMap(r -> pool.query(createIndex).execute())
+                .replaceWithVoid();
+    }
+
+    @Override
+    public Uni<Void> dropIndex(String indexName) {
+        String column =
+                IndexDefinition.COLUMN_PREFIX
+                        + indexName.substring(IndexDefinition.INDEX_PREFIX.length());
+        String dropIndex = DROP_INDEX.formatted(indexName);
+        String dropColumn = DROP_COLUMN.formatted(column);
+        debug(LOG, () -> "Executing statements %s and %s".formatted(dropIndex, dropColumn));
+        return pool.query(dropIndex)
+                .execute()
+                .flatMap(r -> pool.query(dropColumn).execute())
+                .replaceWithVoid();
+    }
+}
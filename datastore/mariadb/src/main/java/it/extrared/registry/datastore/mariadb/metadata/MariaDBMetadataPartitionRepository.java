@@ -0,0 +1,97 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.datastore.mariadb.metadata;
+
+import static it.extrared.registry.utils.CommonUtils.debug;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.Pool;
+import io.vertx.mutiny.sqlclient.Row;
+import it.extrared.registry.metadata.partition.MetadataPartitionRepository;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import org.jboss.logging.Logger;
+
+/**
+ * MariaDB implementation of the {@link MetadataPartitionRepository}: each month is held by a
+ * pYYYY_MM partition of the dpp_metadata table, split out of the trailing p_future partition.
+ * Detached partitions are converted to dpp_metadata_pYYYY_MM standalone tables.
+ */
+@ApplicationScoped
+public class MariaDBMetadataPartitionRepository implements MetadataPartitionRepository {
+
+    @Inject Pool pool;
+
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    private static final String SELECT_PARTITIONS =
+            """
+            SELECT PARTITION_NAME FROM information_schema.PARTITIONS
+            WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'dpp_metadata'
+            AND PARTITION_NAME REGEXP '^p[0-9]{4}_[0-9]{2}$'
+            """;
+
+    private static final String CREATE_PARTITION =
+            """
+            ALTER TABLE dpp_metadata REORGANIZE PARTITION p_future INTO (
+            PARTITION %s VALUES LESS THAN (UNIX_TIMESTAMP('%s')),
+            PARTITION p_future VALUES LESS THAN MAXVALUE)
+            """;
+
+    private static final String DETACH_PARTITION =
+            "ALTER TABLE dpp_metadata CONVERT PARTITION %s TO TABLE dpp_metadata_%s";
+
+    private static final Logger LOG = Logger.getLogger(MariaDBMetadataPartitionRepository.class);
+
+    @Override
+    public Uni<List<YearMonth>> findPartitions() {
+        return pool.query(SELECT_PARTITIONS)
+                .execute()
+                .map(
+                        rows -> {
+                            List<YearMonth> months = new ArrayList<>();
+                            for (Row r : rows)
+                                months.add(YearMonth.parse(r.getString(0).substring(1), SUFFIX));
+                            debug(LOG, () -> "Found partitions %s".formatted(months));
+                            return months;
+                        });
+    }
+
+    @Override
+    public Uni<Void> createPartition(YearMonth month) {
+        return execute(
+                CREATE_PARTITION.formatted(partitionName(month), month.plusMonths(1).atDay(1)));
+    }
+
+    @Override
+    public Uni<Void> detachPartition(YearMonth month) {
+        String partition = partitionName(month);
+        return execute(DETACH_PARTITION.formatted(partition, partition));
+    }
+
+    private static String partitionName(YearMonth month) {
+        return "p" + month.format(SUFFIX);
+    }
+
+    private Uni<Void> execute(String sql) {
+        debug(LOG, () -> "Executing statement %s".formatted(sql));
+        return pool.query(sql).execute().replaceWithVoid();
+    }
+}
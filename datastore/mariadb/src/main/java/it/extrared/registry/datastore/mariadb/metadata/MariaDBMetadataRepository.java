@@ -17,13 +17,9 @@ package it.extrared.registry.datastore.mariadb.metadata;
 
 import static it.extrared.registry.utils.CommonUtils.debug;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.networknt.schema.utils.StringUtils;
 import io.smallrye.mutiny.Uni;
 import io.smallrye.mutiny.tuples.Tuple2;
-import io.smallrye.mutiny.unchecked.Unchecked;
 import io.vertx.mutiny.sqlclient.Row;
 import io.vertx.mutiny.sqlclient.RowSet;
 import io.vertx.mutiny.sqlclient.SqlConnection;
@@ -31,16 +27,24 @@ import io.vertx.mutiny.sqlclient.Tuple;
 import it.extrared.registry.MetadataRegistryConfig;
 import it.extrared.registry.jsonschema.Schema;
 import it.extrared.registry.jsonschema.SchemaCache;
+import it.extrared.registry.jsonschema.SchemaProperty;
 import it.extrared.registry.metadata.DPPMetadataEntry;
 import it.extrared.registry.metadata.DPPMetadataRepository;
+import it.extrared.registry.metadata.index.MetadataIndexManager;
 import it.extrared.registry.utils.CommonUtils;
-import it.extrared.registry.utils.JsonUtils;
+import it.extrared.registry.utils.JsonCodec;
+import it.extrared.registry.utils.QueryTemplateCache;
 import it.extrared.registry.utils.SQLClientUtils;
+import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Function;
 import org.jboss.logging.Logger;
 
@@ -52,43 +56,124 @@ public class MariaDBMetadataRepository implements DPPMetadataRepository {
 
     @Inject SchemaCache schemaCache;
 
-    @Inject ObjectMapper objectMapper;
+    @Inject JsonCodec codec;
+
+    @Inject MetadataIndexManager indexManager;
 
     private static final Logger LOG = Logger.getLogger(MariaDBMetadataRepository.class);
 
-    private static final Function<Row, JsonNode> AS_JSON_META =
-            Unchecked.function(
-                    r -> {
-                        String raw = r.getString("metadata");
-                        if (StringUtils.isNotBlank(raw))
-                            return JsonUtils.objectMapper().readTree(r.getString("metadata"));
-                        else return null;
-                    });
+    private final Function<String, JsonNode> asJsonMeta = json -> codec.decode(json);
 
     private static final String INSERT =
             """
-            INSERT INTO dpp_metadata (registry_id,created_at,modified_at,metadata)
-            VALUES(?,?,?,?)
+            INSERT INTO dpp_metadata (registry_id,created_at,modified_at,metadata,content_hash)
+            VALUES(?,?,?,?,?)
             """;
 
     private static final String UPDATE =
             """
-            UPDATE dpp_metadata SET modified_at=?, metadata=? WHERE
-            JSON_VALUE(metadata,'$.%s') = ?
+            UPDATE dpp_metadata SET modified_at=?, metadata=?, content_hash=?, version=version+1
+            WHERE upi = ? AND version = ?
+            """;
+
+    private static final String UPSERT =
+            """
+            INSERT INTO dpp_metadata (registry_id,created_at,modified_at,metadata,content_hash)
+            VALUES(?,?,?,?,?)
+            ON DUPLICATE KEY UPDATE modified_at=VALUES(modified_at),
+            metadata=dpp_metadata_merge(metadata,VALUES(metadata)),
+            content_hash=VALUES(content_hash), version=version+1
+            RETURNING registry_id,metadata,created_at,modified_at,version,content_hash
+            """;
+
+    private static final String SELECT_BY_UPIS =
+            """
+            SELECT registry_id,metadata,created_at,modified_at,version,content_hash
+            FROM dpp_metadata WHERE upi IN (%s) ORDER BY created_at DESC
+            """;
+
+    private static final String SELECT_ALL_BY_UPIS =
+            """
+            SELECT registry_id,metadata,created_at,modified_at,version,content_hash
+            FROM dpp_metadata WHERE upi IN (%s) FOR UPDATE
+            """;
+
+    // skips the rows conflicting with the unique UPI index, written meanwhile in the target shard.
+    private static final String COPY =
+            """
+            INSERT INTO dpp_metadata (registry_id,created_at,modified_at,metadata,content_hash,version)
+            VALUES(?,?,?,?,?,?) ON DUPLICATE KEY UPDATE id=id
+            """;
+
+    private static final String DELETE_BY_UPIS =
+            """
+            DELETE FROM dpp_metadata WHERE upi IN (%s)
+            """;
+
+    private static final String SELECT_UPIS =
+            """
+            SELECT DISTINCT upi FROM dpp_metadata WHERE upi > ? ORDER BY upi LIMIT ?
             """;
 
+    private static final String SELECT_BY_UPI =
+            """
+            SELECT registry_id,metadata,created_at,modified_at,version,content_hash
+            FROM dpp_metadata WHERE upi = ? ORDER BY created_at DESC LIMIT 1
+            """;
+
+    private static final String SELECT_CURRENT_BY_UPI =
+            """
+            SELECT m.registry_id,m.metadata,m.created_at,m.modified_at,m.version,m.content_hash
+            FROM dpp_metadata_current c
+            JOIN dpp_metadata m ON m.id = c.id AND m.created_at = c.created_at WHERE c.upi = ?
+            """;
+
+    private static final String SELECT_CURRENT_BY_UPIS =
+            """
+            SELECT m.registry_id,m.metadata,m.created_at,m.modified_at,m.version,m.content_hash
+            FROM dpp_metadata_current c
+            JOIN dpp_metadata m ON m.id = c.id AND m.created_at = c.created_at
+            WHERE c.upi IN (%s)
+            """;
+
+    private static final String SELECT_CURRENT_UPIS =
+            """
+            SELECT upi FROM dpp_metadata_current WHERE upi > ? ORDER BY upi LIMIT ?
+            """;
+
+    private static final String SELECT_VERSIONS =
+            """
+            SELECT registry_id,metadata,created_at,modified_at,version,content_hash
+            FROM dpp_metadata WHERE upi = ? ORDER BY created_at DESC
+            """;
+
+    private static final String SELECT_BY_UPI_AS_OF =
+            """
+            SELECT registry_id,metadata,created_at,modified_at,version,content_hash
+            FROM dpp_metadata WHERE upi = ? AND created_at <= ? ORDER BY created_at DESC LIMIT 1
+            """;
+
+    private static final String SELECT_BY_FILTERS =
+            """
+            SELECT %s
+            FROM dpp_metadata WHERE %s ORDER BY created_at DESC LIMIT 1
+            """;
+
+    // SQL of the lookups by metadata fields, by schema and filtered fields.
+    private QueryTemplateCache templates;
+
+    @PostConstruct
+    void init() {
+        templates = new QueryTemplateCache(config.queryTemplateCacheSize());
+    }
+
     @Override
     public Uni<DPPMetadataEntry> findByUpi(SqlConnection conn, String upi) {
-        String sql =
-                        """
-                SELECT registry_id,metadata,created_at,modified_at
-                FROM dpp_metadata WHERE JSON_VALUE(metadata,'$.%s') = ? ORDER BY created_at DESC LIMIT 1
-                """
-                        .formatted(config.upiFieldName());
+        String sql = config.currentTableEnabled() ? SELECT_CURRENT_BY_UPI : SELECT_BY_UPI;
         debug(LOG, () -> "Executing query %s".formatted(sql));
         Uni<RowSet<DPPMetadataEntry>> rs =
                 conn.preparedQuery(sql)
-                        .mapping(r -> ROW_MAPPER.apply(r, AS_JSON_META))
+                        .mapping(r -> ROW_MAPPER.apply(r, asJsonMeta))
                         .execute(Tuple.of(upi));
         return rs.map(SQLClientUtils::firstOrNull)
                 .invoke(
@@ -101,21 +186,133 @@ public class MariaDBMetadataRepository implements DPPMetadataRepository {
     }
 
     @Override
-    public Uni<DPPMetadataEntry> findBy(SqlConnection conn, List<Tuple2<String, Object>> filters) {
+    public Uni<List<DPPMetadataEntry>> findByUpis(SqlConnection conn, Collection<String> upis) {
         String sql =
-                """
-                SELECT registry_id,metadata,created_at,modified_at
-                FROM dpp_metadata WHERE %s ORDER BY created_at DESC LIMIT 1
-                """;
+                (config.currentTableEnabled() ? SELECT_CURRENT_BY_UPIS : SELECT_BY_UPIS)
+                        .formatted(placeholders(upis.size()));
+        debug(LOG, () -> "Executing query %s".formatted(sql));
+        Uni<RowSet<DPPMetadataEntry>> rs =
+                conn.preparedQuery(sql)
+                        .mapping(r -> ROW_MAPPER.apply(r, asJsonMeta))
+                        .execute(Tuple.wrap(new ArrayList<Object>(upis)));
+        // rows are sorted by creation date: keep the most recent one of each UPI.
+        return rs.map(
+                        rows -> {
+                            Map<String, DPPMetadataEntry> latest = new LinkedHashMap<>();
+                            for (DPPMetadataEntry m : rows)
+                                latest.putIfAbsent(
+                                        m.getMetadata().get(config.upiFieldName()).asText(), m);
+                            return (List<DPPMetadataEntry>) new ArrayList<>(latest.values());
+                        })
+                .invoke(
+                        l ->
+                                debug(
+                                        LOG,
+                                        () ->
+                                                "Retrieved %s metadata entries by upis"
+                                                        .formatted(l.size())));
+    }
+
+    @Override
+    public Uni<List<DPPMetadataEntry>> findAllByUpis(SqlConnection conn, Collection<String> upis) {
+        String sql = SELECT_ALL_BY_UPIS.formatted(placeholders(upis.size()));
+        debug(LOG, () -> "Executing query %s".formatted(sql));
+        return conn.preparedQuery(sql)
+                .mapping(r -> ROW_MAPPER.apply(r, asJsonMeta))
+                .execute(Tuple.wrap(new ArrayList<Object>(upis)))
+                .map(SQLClientUtils::toList);
+    }
+
+    @Override
+    public Uni<Void> copyAll(SqlConnection conn, List<DPPMetadataEntry> metadata) {
+        debug(LOG, () -> "Copying %s metadata entries".formatted(metadata.size()));
+        if (metadata.isEmpty()) return Uni.createFrom().voidItem();
+        List<Tuple> batch = new ArrayList<>(metadata.size());
+        for (DPPMetadataEntry m : metadata)
+            batch.add(
+                    Tuple.of(
+                            m.getRegistryId(),
+                            m.getCreatedAt(),
+                            m.getModifiedAt(),
+                            codec.encode(m.getMetadata()),
+                            m.getContentHash(),
+                            m.getVersion()));
+        return conn.preparedQuery(COPY).executeBatch(batch).replaceWithVoid();
+    }
+
+    @Override
+    public Uni<Void> deleteByUpis(SqlConnection conn, Collection<String> upis) {
+        debug(LOG, () -> "Deleting the metadata entries of %s upis".formatted(upis.size()));
+        return conn.preparedQuery(DELETE_BY_UPIS.formatted(placeholders(upis.size())))
+                .execute(Tuple.wrap(new ArrayList<Object>(upis)))
+                .replaceWithVoid();
+    }
+
+    private static String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
+
+    @Override
+    public Uni<List<String>> findUpis(SqlConnection conn, String after, int limit) {
+        String sql = config.currentTableEnabled() ? SELECT_CURRENT_UPIS : SELECT_UPIS;
+        debug(LOG, () -> "Executing query %s".formatted(sql));
+        Uni<RowSet<String>> rs =
+                conn.preparedQuery(sql)
+                        .mapping(r -> r.getString("upi"))
+                        .execute(Tuple.of(after != null ? after : "", limit));
+        return rs.map(SQLClientUtils::toList);
+    }
+
+    @Override
+    public Uni<List<DPPMetadataEntry>> findVersions(SqlConnection conn, String upi) {
+        debug(LOG, () -> "Executing query %s".formatted(SELECT_VERSIONS));
+        return conn.preparedQuery(SELECT_VERSIONS)
+                .mapping(r -> ROW_MAPPER.apply(r, asJsonMeta))
+                .execute(Tuple.of(upi))
+                .map(SQLClientUtils::toList);
+    }
+
+    @Override
+    public Uni<DPPMetadataEntry> findByUpiAsOf(SqlConnection conn, String upi, LocalDateTime at) {
+        debug(LOG, () -> "Executing query %s".formatted(SELECT_BY_UPI_AS_OF));
+        return conn.preparedQuery(SELECT_BY_UPI_AS_OF)
+                .mapping(r -> ROW_MAPPER.apply(r, asJsonMeta))
+                .execute(Tuple.of(upi, at))
+                .map(SQLClientUtils::firstOrNull);
+    }
+
+    @Override
+    public Uni<DPPMetadataEntry> findBy(SqlConnection conn, List<Tuple2<String, Object>> filters) {
+        return findBy(conn, filters, null);
+    }
+
+    @Override
+    public Uni<DPPMetadataEntry> findBy(
+            SqlConnection conn, List<Tuple2<String, Object>> filters, List<String> fields) {
+        List<String> filterFields = filters.stream().map(Tuple2::getItem1).toList();
+        Function<Row, DPPMetadataEntry> mapper =
+                fields != null
+                        ? r -> DPPMetadataRepository.mapProjection(r, fields, asJsonMeta)
+                        : r -> ROW_MAPPER.apply(r, asJsonMeta);
         List<Object> params = filters.stream().map(Tuple2::getItem2).toList();
         Uni<RowSet<DPPMetadataEntry>> rs =
                 schemaCache
                         .get()
-                        .map(s -> jsonFilter(filters, s))
+                        .map(
+                                s ->
+                                        templates.get(
+                                                s,
+                                                indexManager.getUsableVersion(),
+                                                filterFields,
+                                                fields,
+                                                () ->
+                                                        SELECT_BY_FILTERS.formatted(
+                                                                selectColumns(fields),
+                                                                jsonFilter(filters, s))))
                         .flatMap(
-                                sf ->
-                                        conn.preparedQuery(sql.formatted(sf))
-                                                .mapping(r -> ROW_MAPPER.apply(r, AS_JSON_META))
+                                sql ->
+                                        conn.preparedQuery(sql)
+                                                .mapping(mapper)
                                                 .execute(Tuple.wrap(new ArrayList<>(params))));
         return rs.map(SQLClientUtils::firstOrNull)
                 .invoke(m -> debug(LOG, () -> "Retrieved metadata by filters is %s".formatted(m)));
@@ -123,29 +320,99 @@ public class MariaDBMetadataRepository implements DPPMetadataRepository {
 
     @Override
     public Uni<DPPMetadataEntry> save(SqlConnection conn, DPPMetadataEntry metadata) {
-        try {
-            debug(LOG, () -> "Persisting a metadata entry %s".formatted(metadata));
-            metadata.setRegistryId(CommonUtils.generateTimeBasedUUID());
-            Uni<RowSet<Row>> row =
-                    conn.preparedQuery(INSERT)
-                            .execute(
-                                    Tuple.of(
-                                            metadata.getRegistryId(),
-                                            metadata.getCreatedAt(),
-                                            metadata.getModifiedAt(),
-                                            objectMapper.writeValueAsString(
-                                                    metadata.getMetadata())));
-            return row.map(r -> metadata)
-                    .invoke(
-                            m ->
-                                    debug(
-                                            LOG,
-                                            () ->
-                                                    "Metadata entry %s persisted successfully"
-                                                            .formatted(m)));
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
+        debug(LOG, () -> "Persisting a metadata entry %s".formatted(metadata));
+        metadata.setRegistryId(CommonUtils.generateTimeBasedUUID());
+        Uni<RowSet<Row>> row =
+                conn.preparedQuery(INSERT)
+                        .execute(
+                                Tuple.of(
+                                        metadata.getRegistryId(),
+                                        metadata.getCreatedAt(),
+                                        metadata.getModifiedAt(),
+                                        codec.encode(metadata.getMetadata()),
+                                        metadata.getContentHash()));
+        return row.map(r -> metadata)
+                .invoke(
+                        m ->
+                                debug(
+                                        LOG,
+                                        () ->
+                                                "Metadata entry %s persisted successfully"
+                                                        .formatted(m)));
+    }
+
+    @Override
+    public Uni<List<DPPMetadataEntry>> saveAll(
+            SqlConnection conn, List<DPPMetadataEntry> metadata) {
+        debug(LOG, () -> "Persisting %s metadata entries".formatted(metadata.size()));
+        List<Tuple> batch = new ArrayList<>(metadata.size());
+        for (DPPMetadataEntry m : metadata) {
+            m.setRegistryId(CommonUtils.generateTimeBasedUUID());
+            batch.add(
+                    Tuple.of(
+                            m.getRegistryId(),
+                            m.getCreatedAt(),
+                            m.getModifiedAt(),
+                            codec.encode(m.getMetadata()),
+                            m.getContentHash()));
         }
+        return conn.preparedQuery(INSERT).executeBatch(batch).map(r -> metadata);
+    }
+
+    @Override
+    public Uni<List<DPPMetadataEntry>> updateAll(
+            SqlConnection conn, List<DPPMetadataEntry> metadata) {
+        debug(LOG, () -> "Updating %s metadata entries".formatted(metadata.size()));
+        List<Tuple> batch = new ArrayList<>(metadata.size());
+        for (DPPMetadataEntry m : metadata) {
+            batch.add(
+                    Tuple.of(
+                            m.getModifiedAt(),
+                            codec.encode(m.getMetadata()),
+                            m.getContentHash(),
+                            m.getMetadata().get(config.upiFieldName()).asText(),
+                            m.getVersion()));
+        }
+        return conn.preparedQuery(UPDATE)
+                .executeBatch(batch)
+                .map(r -> SQLClientUtils.checkUpdated(r, metadata, upiOf()));
+    }
+
+    @Override
+    public Uni<DPPMetadataEntry> upsert(SqlConnection conn, DPPMetadataEntry metadata) {
+        debug(LOG, () -> "Upserting metadata entry %s".formatted(metadata));
+        Uni<RowSet<DPPMetadataEntry>> rs =
+                conn.preparedQuery(UPSERT)
+                        .mapping(r -> ROW_MAPPER.apply(r, asJsonMeta))
+                        .execute(
+                                Tuple.of(
+                                        CommonUtils.generateTimeBasedUUID(),
+                                        metadata.getCreatedAt(),
+                                        metadata.getModifiedAt(),
+                                        codec.encode(metadata.getMetadata()),
+                                        metadata.getContentHash()));
+        return rs.map(SQLClientUtils::firstOrNull)
+                .map(written -> copyWritten(written, metadata))
+                .invoke(
+                        m ->
+                                debug(
+                                        LOG,
+                                        () ->
+                                                "Metadata entry %s upserted successfully"
+                                                        .formatted(m)));
+    }
+
+    private Function<DPPMetadataEntry, String> upiOf() {
+        return m -> m.getMetadata().get(config.upiFieldName()).asText();
+    }
+
+    private DPPMetadataEntry copyWritten(DPPMetadataEntry written, DPPMetadataEntry target) {
+        target.setRegistryId(written.getRegistryId());
+        target.setVersion(written.getVersion());
+        target.setMetadata(written.getMetadata());
+        target.setCreatedAt(written.getCreatedAt());
+        target.setModifiedAt(written.getModifiedAt());
+        return target;
     }
 
     @Override
@@ -154,9 +421,15 @@ public class MariaDBMetadataRepository implements DPPMetadataRepository {
         metadata.setModifiedAt(LocalDateTime.now());
         String upi = metadata.getMetadata().get(config.upiFieldName()).asText();
         Uni<RowSet<Row>> row =
-                con.preparedQuery(UPDATE.formatted(config.upiFieldName()))
-                        .execute(Tuple.of(metadata.getModifiedAt(), metadata.getMetadata(), upi));
-        return row.map(r -> metadata)
+                con.preparedQuery(UPDATE)
+                        .execute(
+                                Tuple.of(
+                                        metadata.getModifiedAt(),
+                                        codec.encode(metadata.getMetadata()),
+                                        metadata.getContentHash(),
+                                        upi,
+                                        metadata.getVersion()));
+        return row.map(r -> SQLClientUtils.checkUpdated(r, List.of(metadata), upiOf()).getFirst())
                 .invoke(
                         m ->
                                 debug(
@@ -166,6 +439,21 @@ public class MariaDBMetadataRepository implements DPPMetadataRepository {
                                                         .formatted(m)));
     }
 
+    // the metadata column or, when fields are given, a column for each of them.
+    private static String selectColumns(List<String> fields) {
+        List<String> columns = new ArrayList<>();
+        columns.add("registry_id");
+        if (fields == null) columns.add("metadata");
+        else
+            for (int i = 0; i < fields.size(); i++)
+                columns.add(
+                        "JSON_EXTRACT(metadata,'$.%s') AS %s%s"
+                                .formatted(fields.get(i), PROJECTION_PREFIX, i));
+        columns.add("created_at");
+        columns.add("modified_at");
+        return String.join(",", columns);
+    }
+
     private String jsonFilter(List<Tuple2<String, Object>> filters, Schema schema) {
         List<String> jsonFilters = new ArrayList<>();
         for (Tuple2<String, Object> filter : filters) {
@@ -177,20 +465,38 @@ public class MariaDBMetadataRepository implements DPPMetadataRepository {
     }
 
     private String jsonCondition(Tuple2<String, Object> tuple, Schema schema) {
-        String jproperty = tuple.getItem1();
-        String type = schema.getPropertyType(jproperty);
-        String mdbType = toMariaJsonType(type);
-        if (mdbType.equals("UNSIGNED")) {
-            return "CAST(JSON_VALUE(metadata,'$.%s') AS UNSIGNED) = ?".formatted(jproperty);
+        SchemaProperty property = schema.requireProperty(tuple.getItem1());
+        String jproperty = property.getName();
+        String type = property.getType();
+        // prefer the indexed virtual column, if any, extracting the same expression.
+        String column =
+                indexManager
+                        .findUsableIndex(jproperty)
+                        .filter(d -> d.getType().equals(type))
+                        .map(d -> "`%s`".formatted(d.getColumnName()))
+                        .orElseGet(() -> jsonExpression(jproperty, type));
+        return "%s = ?".formatted(column);
+    }
+
+    /**
+     * Build the SQL expression extracting a JSON field from the metadata column. Managed virtual
+     * columns (see {@link MariaDBMetadataIndexRepository}) are generated by the same expressions.
+     *
+     * @param jproperty the JSON field.
+     * @param schemaType the JSON schema type of the field.
+     * @return the SQL expression.
+     */
+    static String jsonExpression(String jproperty, String schemaType) {
+        if (columnType(schemaType).equals("BIGINT UNSIGNED")) {
+            return "CAST(JSON_VALUE(metadata,'$.%s') AS UNSIGNED)".formatted(jproperty);
         }
-        return "JSON_VALUE(metadata,'$.%s') = ?".formatted(jproperty);
+        return "JSON_VALUE(metadata,'$.%s')".formatted(jproperty);
     }
 
-    private String toMariaJsonType(String schemaType) {
+    static String columnType(String schemaType) {
         return switch (schemaType) {
-            case "string" -> "VARCHAR";
-            case "boolean" -> "BOOLEAN";
-            case "number", "integer" -> "UNSIGNED";
+            case "string", "boolean" -> "VARCHAR(255)";
+            case "number", "integer" -> "BIGINT UNSIGNED";
             default ->
                     throw new UnsupportedOperationException(
                             "Unsupported type %s".formatted(schemaType));
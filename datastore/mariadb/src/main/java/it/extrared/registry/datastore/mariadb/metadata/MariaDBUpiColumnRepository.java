@@ -0,0 +1,108 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.datastore.mariadb.metadata;
+
+import static it.extrared.registry.utils.CommonUtils.debug;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.SqlConnection;
+import it.extrared.registry.metadata.UpiColumnRepository;
+import jakarta.enterprise.context.ApplicationScoped;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.jboss.logging.Logger;
+
+/**
+ * MariaDB implementation of the {@link UpiColumnRepository}. The generation expression is replaced
+ * in place, so that the indexes and triggers on the column are kept, at the cost of a copy of the
+ * table.
+ */
+@ApplicationScoped
+public class MariaDBUpiColumnRepository implements UpiColumnRepository {
+
+    private static final String SELECT_EXPRESSION =
+            """
+            SELECT GENERATION_EXPRESSION FROM information_schema.COLUMNS
+            WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'dpp_metadata' AND COLUMN_NAME = 'upi'
+            """;
+
+    private static final String MODIFY_COLUMN =
+            """
+            ALTER TABLE dpp_metadata
+            MODIFY COLUMN upi VARCHAR(255) AS (JSON_VALUE(metadata,'$.%s')) STORED
+            """;
+
+    private static final String SELECT_CURRENT_TABLE =
+            """
+            SELECT COUNT(*) FROM information_schema.TABLES
+            WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'dpp_metadata_current'
+            """;
+
+    private static final String CLEAR_CURRENT = "DELETE FROM dpp_metadata_current";
+
+    // the pointers of the current table are keyed by the values of the previous column.
+    private static final String FILL_CURRENT =
+            """
+            INSERT IGNORE INTO dpp_metadata_current (upi, id, created_at)
+            SELECT m.upi, m.id, m.created_at FROM dpp_metadata m
+            WHERE m.upi IS NOT NULL AND NOT EXISTS (
+                SELECT 1 FROM dpp_metadata n WHERE n.upi = m.upi
+                AND (n.created_at > m.created_at OR (n.created_at = m.created_at AND n.id > m.id)))
+            ORDER BY m.upi
+            """;
+
+    private static final Pattern FIELD = Pattern.compile("'\\$\\.([^']*)'");
+
+    private static final Logger LOG = Logger.getLogger(MariaDBUpiColumnRepository.class);
+
+    @Override
+    public Uni<String> findUpiField(SqlConnection conn) {
+        return conn.query(SELECT_EXPRESSION)
+                .execute()
+                .map(
+                        rows -> {
+                            if (rows.size() == 0) return null;
+                            String expression = rows.iterator().next().getString(0);
+                            debug(
+                                    LOG,
+                                    () ->
+                                            "The upi column is generated as %s"
+                                                    .formatted(expression));
+                            if (expression == null) return null;
+                            Matcher m = FIELD.matcher(expression);
+                            return m.find() ? m.group(1) : null;
+                        });
+    }
+
+    @Override
+    public Uni<Void> changeUpiField(SqlConnection conn, String field) {
+        String modify = MODIFY_COLUMN.formatted(field);
+        debug(LOG, () -> "Executing statement %s".formatted(modify));
+        return conn.query(modify)
+                .execute()
+                .flatMap(r -> conn.query(SELECT_CURRENT_TABLE).execute())
+                .flatMap(
+                        rows -> {
+                            if (rows.iterator().next().getLong(0) == 0)
+                                return Uni.createFrom().voidItem();
+                            debug(LOG, () -> "Filling dpp_metadata_current again");
+                            return conn.query(CLEAR_CURRENT)
+                                    .execute()
+                                    .flatMap(r -> conn.query(FILL_CURRENT).execute())
+                                    .replaceWithVoid();
+                        });
+    }
+}
@@ -0,0 +1,33 @@
+-- Optional, required by registry.current-table-enabled=true. dpp_metadata_current points to the
+-- most recent row of each UPI and is kept up to date by triggers in the transaction writing
+-- dpp_metadata, so that the lookups by UPI read a single row instead of sorting all its versions.
+UPDATE dpp_metadata SET created_at = COALESCE(modified_at, CURRENT_TIMESTAMP)
+WHERE created_at IS NULL;
+
+CREATE TABLE IF NOT EXISTS dpp_metadata_current (
+    upi VARCHAR(255) PRIMARY KEY,
+    id BIGINT NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- id is assigned first, so that its condition reads the created_at of the pointer not yet updated.
+CREATE OR REPLACE TRIGGER dpp_metadata_current_insert AFTER INSERT ON dpp_metadata
+FOR EACH ROW
+    INSERT INTO dpp_metadata_current (upi, id, created_at)
+    SELECT NEW.upi, NEW.id, NEW.created_at FROM DUAL
+    WHERE NEW.upi IS NOT NULL AND NEW.created_at IS NOT NULL
+    ON DUPLICATE KEY UPDATE
+        id = IF(created_at <= VALUES(created_at), VALUES(id), id),
+        created_at = GREATEST(created_at, VALUES(created_at));
+
+-- the pointer is dropped with the row it points to, e.g. when a UPI is moved to another shard.
+CREATE OR REPLACE TRIGGER dpp_metadata_current_delete AFTER DELETE ON dpp_metadata
+FOR EACH ROW
+    DELETE FROM dpp_metadata_current WHERE upi = OLD.upi AND id = OLD.id;
+
+INSERT IGNORE INTO dpp_metadata_current (upi, id, created_at)
+SELECT m.upi, m.id, m.created_at FROM dpp_metadata m
+WHERE m.upi IS NOT NULL AND NOT EXISTS (
+    SELECT 1 FROM dpp_metadata n WHERE n.upi = m.upi
+    AND (n.created_at > m.created_at OR (n.created_at = m.created_at AND n.id > m.id)))
+ORDER BY m.upi;
@@ -0,0 +1,20 @@
+-- Optional, required by registry.partitioning-enabled=true. It partitions dpp_metadata by range
+-- of created_at: the existing rows go to the p_history partition, the monthly partitions are then
+-- split out of p_future by the registry. TIMESTAMP columns can be partitioned only through
+-- UNIX_TIMESTAMP. It cannot be applied together with upsert.sql, since a unique index on a
+-- partitioned table must include created_at. Detaching partitions requires MariaDB 10.7 or later.
+UPDATE dpp_metadata SET created_at = COALESCE(modified_at, CURRENT_TIMESTAMP)
+WHERE created_at IS NULL;
+
+ALTER TABLE dpp_metadata
+    MODIFY created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    DROP PRIMARY KEY,
+    ADD PRIMARY KEY (id, created_at);
+
+SET @partitioning = CONCAT('ALTER TABLE dpp_metadata PARTITION BY RANGE (UNIX_TIMESTAMP(created_at)) (',
+    'PARTITION p_history VALUES LESS THAN (UNIX_TIMESTAMP(''',
+    DATE_FORMAT(CURRENT_DATE, '%Y-%m-01'), ''')), ',
+    'PARTITION p_future VALUES LESS THAN MAXVALUE)');
+PREPARE stmt FROM @partitioning;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
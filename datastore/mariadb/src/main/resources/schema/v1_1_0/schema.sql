@@ -0,0 +1,15 @@
+-- Migration from v1_0_0. The generation expression must reference the field configured
+-- through registry.upi-field-name (default upi): adjust the JSON path below if it differs,
+-- otherwise the registry generates the column again from that field at startup.
+ALTER TABLE dpp_metadata
+    ADD COLUMN IF NOT EXISTS upi VARCHAR(255) AS (JSON_VALUE(metadata,'$.upi')) STORED;
+
+CREATE INDEX IF NOT EXISTS dpp_metadata_upi_created_at_idx ON dpp_metadata (upi, created_at DESC);
+
+-- Incremented by every update of a row, which is applied only if the row still has the version
+-- it was read with.
+ALTER TABLE dpp_metadata ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+
+-- Canonical hash of the metadata, used to skip the updates not changing them. Rows written
+-- before its introduction or by the bulk merge have none and are hashed when read.
+ALTER TABLE dpp_metadata ADD COLUMN IF NOT EXISTS content_hash CHAR(64);
@@ -0,0 +1,36 @@
+-- Optional, required by registry.upsert-enabled=true. It can be applied only together with the
+-- MODIFY update strategy, since APPEND_WITH_NEW_ID stores several rows for the same UPI.
+CREATE UNIQUE INDEX IF NOT EXISTS dpp_metadata_upi_uq ON dpp_metadata (upi);
+
+-- Server side counterpart of JsonMerger used by the upsert statement: overlay values replace the
+-- base ones, while arrays get the overlay items missing from the base array appended.
+DELIMITER //
+CREATE OR REPLACE FUNCTION dpp_metadata_merge(base LONGTEXT, overlay LONGTEXT) RETURNS LONGTEXT DETERMINISTIC
+BEGIN
+    DECLARE merged LONGTEXT DEFAULT base;
+    DECLARE fields LONGTEXT DEFAULT JSON_KEYS(overlay);
+    DECLARE i INT DEFAULT 0;
+    DECLARE j INT;
+    DECLARE field_path VARCHAR(512);
+    DECLARE base_val LONGTEXT;
+    DECLARE overlay_val LONGTEXT;
+    WHILE i < JSON_LENGTH(fields) DO
+        SET field_path = CONCAT('$.', JSON_EXTRACT(fields, CONCAT('$[', i, ']')));
+        SET base_val = JSON_EXTRACT(merged, field_path);
+        SET overlay_val = JSON_EXTRACT(overlay, field_path);
+        IF JSON_TYPE(base_val) = 'ARRAY' AND JSON_TYPE(overlay_val) = 'ARRAY' THEN
+            SET j = 0;
+            WHILE j < JSON_LENGTH(overlay_val) DO
+                IF NOT JSON_CONTAINS(base_val, JSON_EXTRACT(overlay_val, CONCAT('$[', j, ']'))) THEN
+                    SET merged = JSON_ARRAY_APPEND(merged, field_path, JSON_EXTRACT(overlay_val, CONCAT('$[', j, ']')));
+                END IF;
+                SET j = j + 1;
+            END WHILE;
+        ELSE
+            SET merged = JSON_SET(merged, field_path, JSON_EXTRACT(overlay, field_path));
+        END IF;
+        SET i = i + 1;
+    END WHILE;
+    RETURN merged;
+END //
+DELIMITER ;
@@ -13,6 +13,15 @@ CREATE TABLE IF NOT EXISTS dpp_metadata (
     metadata JSON NOT NULL
 );
 
+ALTER TABLE dpp_metadata
+    ADD COLUMN IF NOT EXISTS upi VARCHAR(255) AS (JSON_VALUE(metadata,'$.upi')) STORED;
+
+CREATE INDEX IF NOT EXISTS dpp_metadata_upi_created_at_idx ON dpp_metadata (upi, created_at DESC);
+
+ALTER TABLE dpp_metadata ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+
+ALTER TABLE dpp_metadata ADD COLUMN IF NOT EXISTS content_hash CHAR(64);
+
 CREATE TABLE IF NOT EXISTS json_schemas (
     id BIGINT PRIMARY KEY AUTO_INCREMENT,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.datastore.pgsql.datasource;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.Pool;
+import it.extrared.registry.datasource.ReplicaLagProbe;
+import jakarta.enterprise.context.ApplicationScoped;
+import java.time.Duration;
+
+/**
+ * PostgreSQL implementation of the {@link ReplicaLagProbe}: the lag is the time elapsed since the
+ * last replayed transaction, or zero when all the received WAL has been replayed, so that an idle
+ * primary does not make the replica look late. A server not in recovery is not lagging.
+ */
+@ApplicationScoped
+public class PgSQLReplicaLagProbe implements ReplicaLagProbe {
+
+    private static final String SELECT_LAG =
+            """
+            SELECT CASE WHEN NOT pg_is_in_recovery()
+            OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+            ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0)
+            END::bigint AS lag_millis
+            """;
+
+    @Override
+    public Uni<Duration> lag(Pool replica) {
+        return replica.query(SELECT_LAG)
+                .execute()
+                .map(rs -> Duration.ofMillis(rs.iterator().next().getLong("lag_millis")));
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.datastore.pgsql.jsonschema;
+
+import static it.extrared.registry.utils.CommonUtils.debug;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.core.Vertx;
+import io.vertx.mutiny.pgclient.pubsub.PgSubscriber;
+import io.vertx.mutiny.sqlclient.SqlConnection;
+import io.vertx.mutiny.sqlclient.Tuple;
+import io.vertx.pgclient.PgConnectOptions;
+import it.extrared.registry.MetadataRegistryConfig;
+import it.extrared.registry.jsonschema.SchemaCache;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+/**
+ * Propagates JSON schema changes between the nodes of the registry through PostgreSQL
+ * LISTEN/NOTIFY. The node changing the schema notifies the change in the same transaction, so that
+ * the notification is delivered only on commit; the other nodes, listening on a dedicated
+ * connection, reload the schema in the background (see {@link SchemaCache#refresh()}). Since
+ * notifications sent while the connection is down are lost, the schema is reloaded also when the
+ * listener reconnects. Failed connection attempts are retried and counted by the
+ * registry.schema.sync.failures metric, while registry.schema.sync.connected tells whether the node
+ * is listening.
+ */
+@ApplicationScoped
+public class PgSQLSchemaChangeChannel {
+
+    static final String CHANNEL = "registry_schema_changes";
+
+    private static final String NOTIFY = "SELECT pg_notify($1, $2)";
+
+    private static final long RECONNECT_DELAY_MILLIS = 5000;
+
+    private static final Logger LOG = Logger.getLogger(PgSQLSchemaChangeChannel.class);
+
+    @Inject MetadataRegistryConfig config;
+
+    @Inject SchemaCache schemaCache;
+
+    @Inject Vertx vertx;
+
+    @Inject MeterRegistry meterRegistry;
+
+    @ConfigProperty(name = "quarkus.datasource.reactive.url")
+    Optional<String> reactiveUrl;
+
+    @ConfigProperty(name = "quarkus.datasource.username")
+    Optional<String> username;
+
+    @ConfigProperty(name = "quarkus.datasource.password")
+    Optional<String> password;
+
+    // identifies the notifications sent by this node, which already invalidated its own cache.
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    private volatile PgSubscriber subscriber;
+
+    private Counter failures;
+
+    void onStart(@Observes StartupEvent event) {
+        if (!config.schemaSyncEnabled()) return;
+        if (reactiveUrl.isEmpty()) {
+            LOG.warn("No datasource url configured, JSON schema changes will not be propagated");
+            return;
+        }
+        registerMetrics();
+        // the policy is asked again for every failed attempt to re-establish a lost connection.
+        subscriber =
+                PgSubscriber.subscriber(vertx, connectOptions())
+                        .reconnectPolicy(
+                                retries -> {
+                                    if (retries > 0) failures.increment();
+                                    return RECONNECT_DELAY_MILLIS;
+                                });
+        subscriber
+                .channel(CHANNEL)
+                .subscribeHandler(this::onSubscribe)
+                .handler(this::onNotification);
+        connect();
+    }
+
+    // the reconnect policy only applies once connected: a failed first connection is retried here.
+    private void connect() {
+        subscriber
+                .connect()
+                .subscribe()
+                .with(
+                        v -> debug(LOG, () -> "Listening for JSON schema changes"),
+                        e -> {
+                            failures.increment();
+                            LOG.errorf(
+                                    e,
+                                    "Error while listening for JSON schema changes, retrying in %s ms",
+                                    RECONNECT_DELAY_MILLIS);
+                            if (!subscriber.closed())
+                                vertx.setTimer(RECONNECT_DELAY_MILLIS, id -> connect());
+                        });
+    }
+
+    private void registerMetrics() {
+        failures =
+                Counter.builder("registry.schema.sync.failures")
+                        .description("Failed connections of the JSON schema changes listener")
+                        .register(meterRegistry);
+        Gauge.builder("registry.schema.sync.connected", this, c -> c.isConnected() ? 1 : 0)
+                .description("Whether the node listens for JSON schema changes")
+                .register(meterRegistry);
+    }
+
+    private boolean isConnected() {
+        PgSubscriber current = subscriber;
+        return current != null && !current.closed() && current.actualConnection() != null;
+    }
+
+    void onStop(@Observes ShutdownEvent event) {
+        if (subscriber != null) subscriber.closeAndForget();
+    }
+
+    /**
+     * Notify the other nodes that the JSON schema changed. It must be executed with the connection
+     * of the transaction changing the schema.
+     *
+     * @param conn the {@link SqlConnection} of the transaction.
+     * @return empty result as a {@link Uni<Void>}.
+     */
+    public Uni<Void> publish(SqlConnection conn) {
+        if (!config.schemaSyncEnabled()) return Uni.createFrom().voidItem();
+        return conn.preparedQuery(NOTIFY).execute(Tuple.of(CHANNEL, nodeId)).replaceWithVoid();
+    }
+
+    private void onSubscribe() {
+        // changes may have been missed while reconnecting.
+        if (!subscribed.compareAndSet(false, true)) schemaCache.refresh();
+    }
+
+    private void onNotification(String payload) {
+        debug(LOG, () -> "Received a JSON schema change notification from %s".formatted(payload));
+        if (!nodeId.equals(payload)) schemaCache.refresh();
+    }
+
+    // the reactive url is [vertx-reactive:]postgresql://host:port/db, or a comma separated list of
+    // such urls, whose first one is listened to.
+    private PgConnectOptions connectOptions() {
+        String url = reactiveUrl.get().split(",")[0].trim();
+        PgConnectOptions options =
+                PgConnectOptions.fromUri(url.replaceFirst("^vertx-reactive:", ""));
+        username.ifPresent(options::setUser);
+        password.ifPresent(options::setPassword);
+        return options;
+    }
+}
@@ -36,6 +36,8 @@ public class PgSQLSchemaRepository implements JsonSchemaDBRepository {
 
     @Inject Pool pool;
 
+    @Inject PgSQLSchemaChangeChannel changeChannel;
+
     private static final String SELECT_MAX = "SELECT MAX(created_at) FROM json_schemas";
 
     private static final String SELECT_CURRENT =
@@ -76,18 +78,19 @@ public class PgSQLSchemaRepository implements JsonSchemaDBRepository {
         debug(LOGGER, () -> "Persisting a new JSON schema %s".formatted(schema));
         return pool.withTransaction(
                         c ->
-                                pool.preparedQuery(INSERT_SCHEMA)
+                                c.preparedQuery(INSERT_SCHEMA)
                                         .execute(
                                                 Tuple.of(
                                                         JsonUtils.toVertxJson(schema),
-                                                        LocalDateTime.now())))
-                .replaceWithVoid()
+                                                        LocalDateTime.now()))
+                                        .flatMap(r -> changeChannel.publish(c)))
                 .invoke(v -> debug(LOGGER, () -> "Schema was persisted successfully"));
     }
 
     @Override
     public Uni<Void> removeLastSchema() {
         debug(LOGGER, () -> "Removing the last JSON schema added to the repository...");
-        return pool.withTransaction(c -> pool.query(REMOVE_CURRENT).execute()).replaceWithVoid();
+        return pool.withTransaction(
+                c -> c.query(REMOVE_CURRENT).execute().flatMap(r -> changeChannel.publish(c)));
     }
 }
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.datastore.pgsql.metadata;
+
+import static it.extrared.registry.utils.CommonUtils.debug;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.networknt.schema.ValidationMessage;
+import it.extrared.registry.MetadataRegistryConfig;
+import it.extrared.registry.exceptions.SchemaValidationException;
+import it.extrared.registry.jsonschema.Schema;
+import it.extrared.registry.jsonschema.SchemaCache;
+import it.extrared.registry.metadata.BulkImportReport;
+import it.extrared.registry.metadata.BulkImporter;
+import it.extrared.registry.metadata.MetadataStreamReader;
+import it.extrared.registry.utils.CommonUtils;
+import it.extrared.registry.utils.JsonCodec;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.Set;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+/**
+ * PostgreSQL implementation of the {@link BulkImporter}. Valid entries are streamed through the
+ * COPY protocol into a temporary staging table, then merged into dpp_metadata by a single set-based
+ * statement chosen by the configured update strategy. The whole import runs in one transaction on a
+ * dedicated JDBC connection, since the reactive client does not support COPY. It requires the
+ * schema/v1_1_0/bulk-import.sql script.
+ */
+@ApplicationScoped
+public class PgSQLBulkImporter implements BulkImporter {
+
+    @Inject MetadataRegistryConfig config;
+
+    @Inject SchemaCache schemaCache;
+
+    @Inject ObjectMapper objectMapper;
+
+    @Inject JsonCodec codec;
+
+    @ConfigProperty(name = "quarkus.datasource.reactive.url")
+    Optional<String> reactiveUrl;
+
+    @ConfigProperty(name = "quarkus.datasource.username")
+    Optional<String> username;
+
+    @ConfigProperty(name = "quarkus.datasource.password")
+    Optional<String> password;
+
+    private static final Logger LOG = Logger.getLogger(PgSQLBulkImporter.class);
+
+    // characters buffered before being sent to the server as a COPY data message.
+    private static final int FLUSH_SIZE = 1 << 16;
+
+    private static final String CREATE_STAGING =
+            """
+            CREATE TEMP TABLE dpp_metadata_staging (
+            seq BIGINT NOT NULL, upi TEXT NOT NULL, registry_id VARCHAR(36) NOT NULL,
+            metadata JSONB NOT NULL) ON COMMIT DROP
+            """;
+
+    private static final String COPY_STAGING =
+            "COPY dpp_metadata_staging (seq,upi,registry_id,metadata) FROM STDIN WITH (FORMAT csv)";
+
+    private static final String INDEX_STAGING = "CREATE INDEX ON dpp_metadata_staging (upi, seq)";
+
+    private static final String ANALYZE_STAGING = "ANALYZE dpp_metadata_staging";
+
+    // the entries of a UPI are merged in input order, then merged into the stored rows.
+    private static final String MERGE_MODIFY =
+            """
+            WITH incoming AS (
+                SELECT upi, dpp_metadata_merge_agg(metadata ORDER BY seq) AS metadata, MIN(seq) AS seq
+                FROM dpp_metadata_staging GROUP BY upi
+            ), updated AS (
+                UPDATE dpp_metadata d SET modified_at = ?, version = d.version + 1,
+                metadata = dpp_metadata_merge(d.metadata, i.metadata), content_hash = NULL
+                FROM incoming i WHERE d.upi = i.upi
+                RETURNING 1
+            ), inserted AS (
+                INSERT INTO dpp_metadata (registry_id,created_at,modified_at,metadata)
+                SELECT s.registry_id, ?, ?, i.metadata
+                FROM incoming i JOIN dpp_metadata_staging s ON s.seq = i.seq
+                WHERE NOT EXISTS (SELECT 1 FROM dpp_metadata d WHERE d.upi = i.upi)
+                RETURNING 1
+            )
+            SELECT (SELECT COUNT(*) FROM inserted), (SELECT COUNT(*) FROM updated)
+            """;
+
+    // every entry becomes a new row holding the merge of the latest stored row and of the
+    // previous entries of the same UPI; creation times follow the input order.
+    private static final String MERGE_APPEND =
+            """
+            WITH incoming AS (
+                SELECT seq, upi, registry_id,
+                dpp_metadata_merge_agg(metadata) OVER (PARTITION BY upi ORDER BY seq) AS metadata
+                FROM dpp_metadata_staging
+            ), inserted AS (
+                INSERT INTO dpp_metadata (registry_id,created_at,modified_at,metadata)
+                SELECT i.registry_id, CAST(? AS TIMESTAMP) + i.seq * INTERVAL '1 microsecond', ?,
+                dpp_metadata_merge(COALESCE(l.metadata, '{}'::jsonb), i.metadata)
+                FROM incoming i LEFT JOIN LATERAL (
+                    SELECT d.metadata FROM dpp_metadata d WHERE d.upi = i.upi
+                    ORDER BY d.created_at DESC LIMIT 1) l ON TRUE
+                RETURNING 1
+            )
+            SELECT (SELECT COUNT(*) FROM inserted), 0
+            """;
+
+    // only the first entry of a UPI not stored yet is inserted.
+    private static final String MERGE_NONE =
+            """
+            WITH inserted AS (
+                INSERT INTO dpp_metadata (registry_id,created_at,modified_at,metadata)
+                SELECT DISTINCT ON (s.upi) s.registry_id, ?, ?, s.metadata
+                FROM dpp_metadata_staging s
+                WHERE NOT EXISTS (SELECT 1 FROM dpp_metadata d WHERE d.upi = s.upi)
+                ORDER BY s.upi, s.seq
+                RETURNING 1
+            )
+            SELECT (SELECT COUNT(*) FROM inserted), 0
+            """;
+
+    @Override
+    public BulkImportReport importEntries(InputStream ndjson) {
+        long start = System.currentTimeMillis();
+        Schema schema = schemaCache.get().await().indefinitely();
+        BulkImportReport report = new BulkImportReport();
+        try (Connection conn =
+                DriverManager.getConnection(
+                        jdbcUrl(), username.orElse(null), password.orElse(null))) {
+            conn.setAutoCommit(false);
+            execute(conn, CREATE_STAGING);
+            copy(conn, ndjson, schema, report);
+            execute(conn, INDEX_STAGING);
+            execute(conn, ANALYZE_STAGING);
+            merge(conn, report);
+            conn.commit();
+        } catch (SQLException | IOException e) {
+            throw new RuntimeException(e);
+        }
+        report.setDurationMillis(System.currentTimeMillis() - start);
+        LOG.infof("Bulk import completed: %s", report);
+        return report;
+    }
+
+    private void copy(Connection conn, InputStream ndjson, Schema schema, BulkImportReport report)
+            throws SQLException, IOException {
+        CopyIn copyIn = conn.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_STAGING);
+        try {
+            StringBuilder buffer = new StringBuilder(FLUSH_SIZE * 2);
+            long[] seq = {0};
+            new MetadataStreamReader(objectMapper, schema, config.upiFieldName())
+                    .readNdjson(
+                            ndjson,
+                            d -> {
+                                report.setRead(report.getRead() + 1);
+                                String error =
+                                        d.isValid() ? validate(d.metadata(), schema) : d.error();
+                                if (error != null) {
+                                    report.reject(d.line(), error);
+                                    return;
+                                }
+                                appendRow(
+                                        buffer,
+                                        ++seq[0],
+                                        d.metadata().get(config.upiFieldName()).asText(),
+                                        CommonUtils.generateTimeBasedUUID(),
+                                        codec.encode(d.metadata()));
+                                if (buffer.length() < FLUSH_SIZE) return;
+                                try {
+                                    flush(copyIn, buffer);
+                                } catch (SQLException e) {
+                                    throw new IOException(e);
+                                }
+                            });
+            flush(copyIn, buffer);
+            long copied = copyIn.endCopy();
+            debug(LOG, () -> "Copied %s entries into the staging table".formatted(copied));
+        } finally {
+            if (copyIn.isActive()) copyIn.cancelCopy();
+        }
+    }
+
+    // the entry was pre-validated while being parsed, the whole of it is validated here.
+    private String validate(JsonNode entry, Schema schema) {
+        Set<ValidationMessage> msgs = schema.validateJson(entry);
+        if (!msgs.isEmpty()) return SchemaValidationException.errorMessage(msgs);
+        return null;
+    }
+
+    private void merge(Connection conn, BulkImportReport report) throws SQLException {
+        String sql =
+                switch (config.updateStrategy()) {
+                    case MODIFY -> MERGE_MODIFY;
+                    case APPEND_WITH_NEW_ID -> MERGE_APPEND;
+                    case NONE -> MERGE_NONE;
+                };
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 1; i <= ps.getParameterMetaData().getParameterCount(); i++)
+                ps.setTimestamp(i, now);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                report.setInserted(rs.getLong(1));
+                report.setUpdated(rs.getLong(2));
+            }
+        }
+    }
+
+    private static void execute(Connection conn, String sql) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute(sql);
+        }
+    }
+
+    private static void appendRow(StringBuilder buffer, Object... values) {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) buffer.append(',');
+            buffer.append('"').append(values[i].toString().replace("\"", "\"\"")).append('"');
+        }
+        buffer.append('\n');
+    }
+
+    private static void flush(CopyIn copyIn, StringBuilder buffer) throws SQLException {
+        byte[] data = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(data, 0, data.length);
+        buffer.setLength(0);
+    }
+
+    // the JDBC url defaults to the reactive one: [vertx-reactive:]postgresql://host:port/db
+    String jdbcUrl() {
+        return config.bulkImportJdbcUrl()
+                .orElseGet(
+                        () -> {
+                            String url =
+                                    reactiveUrl
+                                            .orElseThrow(
+                                                    () ->
+                                                            new IllegalStateException(
+                                                                    "No datasource url configured"))
+                                            .replaceFirst("^vertx-reactive:", "");
+                            return "jdbc:" + url.replaceFirst("^postgres(ql)?://", "postgresql://");
+                        });
+    }
+}
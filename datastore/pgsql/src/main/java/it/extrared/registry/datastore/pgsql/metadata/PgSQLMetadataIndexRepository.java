@@ -0,0 +1,117 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.datastore.pgsql.metadata;
+
+import static it.extrared.registry.utils.CommonUtils.debug;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.Pool;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.RowSet;
+import it.extrared.registry.MetadataRegistryConfig;
+import it.extrared.registry.metadata.index.IndexDefinition;
+import it.extrared.registry.metadata.index.IndexState;
+import it.extrared.registry.metadata.index.MetadataIndexRepository;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.jboss.logging.Logger;
+
+/**
+ * PostgreSQL implementation of the {@link MetadataIndexRepository}. Scalar fields get a B-tree
+ * expression index matching the predicates built by {@link PgSQLMetadataRepository}, arrays a GIN
+ * jsonb_path_ops index serving containment predicates. Indexes are built and dropped concurrently,
+ * which cannot happen inside a transaction.
+ */
+@ApplicationScoped
+public class PgSQLMetadataIndexRepository implements MetadataIndexRepository {
+
+    @Inject Pool pool;
+
+    @Inject MetadataRegistryConfig config;
+
+    private static final Set<String> SUPPORTED_TYPES =
+            Set.of("string", "number", "integer", "boolean", "array");
+
+    private static final String SELECT_MANAGED =
+            """
+            SELECT c.relname, pg_get_indexdef(i.indexrelid), i.indisvalid
+            FROM pg_index i
+            JOIN pg_class c ON c.oid = i.indexrelid
+            JOIN pg_class t ON t.oid = i.indrelid
+            WHERE t.relname = 'dpp_metadata' AND pg_table_is_visible(t.oid)
+            AND c.relname LIKE 'dpp\\_auto\\_idx\\_%'
+            """;
+
+    private static final String CREATE_INDEX =
+            "CREATE INDEX CONCURRENTLY IF NOT EXISTS \"%s\" ON dpp_metadata (%s)";
+
+    private static final String CREATE_GIN_INDEX =
+            "CREATE INDEX CONCURRENTLY IF NOT EXISTS \"%s\" ON dpp_metadata USING GIN (%s jsonb_path_ops)";
+
+    private static final String DROP_INDEX = "DROP INDEX CONCURRENTLY IF EXISTS \"%s\"";
+
+    private static final Logger LOG = Logger.getLogger(PgSQLMetadataIndexRepository.class);
+
+    @Override
+    public boolean supports(IndexDefinition definition) {
+        return SUPPORTED_TYPES.contains(definition.getType());
+    }
+
+    @Override
+    public Uni<List<IndexState>> findManagedIndexes() {
+        Uni<RowSet<Row>> rs = pool.query(SELECT_MANAGED).execute();
+        return rs.map(
+                rows -> {
+                    List<IndexState> states = new ArrayList<>();
+                    for (Row r : rows) {
+                        IndexState.Status status =
+                                r.getBoolean(2)
+                                        ? IndexState.Status.PRESENT
+                                        : IndexState.Status.INVALID;
+                        states.add(new IndexState(r.getString(0), null, r.getString(1), status));
+                    }
+                    debug(LOG, () -> "Found managed indexes %s".formatted(states));
+                    return states;
+                });
+    }
+
+    @Override
+    public Uni<Void> createIndex(IndexDefinition definition) {
+        String expression =
+                PgSQLMetadataRepository.jsonExpression(definition.getField(), definition.getType());
+        String sql =
+                (definition.isArray() ? CREATE_GIN_INDEX : CREATE_INDEX)
+                        .formatted(definition.getIndexName(), expression);
+        return execute(sql);
+    }
+
+    @Override
+    public Uni<Void> dropIndex(String indexName) {
+        return execute(DROP_INDEX.formatted(indexName));
+    }
+
+    // CONCURRENTLY is not supported on a partitioned table: there the index is built on all the
+    // partitions in a single statement, blocking the writes until it completes.
+    private Uni<Void> execute(String statement) {
+        String sql =
+                config.partitioningEnabled() ? statement.replace(" CONCURRENTLY", "") : statement;
+        debug(LOG, () -> "Executing statement %s".formatted(sql));
+        return pool.query(sql).execute().replaceWithVoid();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.datastore.pgsql.metadata;
+
+import static it.extrared.registry.utils.CommonUtils.debug;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.Pool;
+import io.vertx.mutiny.sqlclient.Row;
+import it.extrared.registry.metadata.partition.MetadataPartitionRepository;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import org.jboss.logging.Logger;
+
+/**
+ * PostgreSQL implementation of the {@link MetadataPartitionRepository}: each month is held by a
+ * dpp_metadata_pYYYY_MM table attached to the dpp_metadata table partitioned by range of
+ * created_at. The rows of a new partition already stored in dpp_metadata_default, which would
+ * prevent its creation, are moved to it. Detached partitions are left in place as standalone
+ * tables.
+ */
+@ApplicationScoped
+public class PgSQLMetadataPartitionRepository implements MetadataPartitionRepository {
+
+    @Inject Pool pool;
+
+    private static final String PREFIX = "dpp_metadata_p";
+
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    private static final String SELECT_PARTITIONS =
+            """
+            SELECT c.relname
+            FROM pg_inherits i
+            JOIN pg_class c ON c.oid = i.inhrelid
+            JOIN pg_class p ON p.oid = i.inhparent
+            WHERE p.relname = 'dpp_metadata' AND pg_table_is_visible(p.oid)
+            AND c.relname ~ '^dpp_metadata_p[0-9]{4}_[0-9]{2}$'
+            """;
+
+    // blocks the writes until the partition is created, so that no new row lands in the default
+    // one.
+    private static final String LOCK = "LOCK TABLE dpp_metadata IN SHARE ROW EXCLUSIVE MODE";
+
+    private static final String CREATE_MOVED =
+            "CREATE TEMP TABLE dpp_metadata_moved (LIKE dpp_metadata_default) ON COMMIT DROP";
+
+    private static final String TAKE_DEFAULT_ROWS =
+            """
+            WITH moved AS (DELETE FROM dpp_metadata_default
+            WHERE created_at >= '%s' AND created_at < '%s' RETURNING *)
+            INSERT INTO dpp_metadata_moved SELECT * FROM moved
+            """;
+
+    // upi is generated again by the insert.
+    private static final String INSERT_MOVED =
+            """
+            INSERT INTO dpp_metadata
+            (id,registry_id,created_at,modified_at,metadata,version,content_hash)
+            SELECT id,registry_id,created_at,modified_at,metadata,version,content_hash
+            FROM dpp_metadata_moved
+            """;
+
+    private static final String CREATE_PARTITION =
+            "CREATE TABLE IF NOT EXISTS %s PARTITION OF dpp_metadata FOR VALUES FROM ('%s') TO ('%s')";
+
+    private static final String DETACH_PARTITION = "ALTER TABLE dpp_metadata DETACH PARTITION %s";
+
+    private static final Logger LOG = Logger.getLogger(PgSQLMetadataPartitionRepository.class);
+
+    @Override
+    public Uni<List<YearMonth>> findPartitions() {
+        return pool.query(SELECT_PARTITIONS)
+                .execute()
+                .map(
+                        rows -> {
+                            List<YearMonth> months = new ArrayList<>();
+                            for (Row r : rows)
+                                months.add(
+                                        YearMonth.parse(
+                                                r.getString(0).substring(PREFIX.length()), SUFFIX));
+                            debug(LOG, () -> "Found partitions %s".formatted(months));
+                            return months;
+                        });
+    }
+
+    @Override
+    public Uni<Void> createPartition(YearMonth month) {
+        LocalDate from = month.atDay(1);
+        LocalDate to = month.plusMonths(1).atDay(1);
+        List<String> statements =
+                List.of(
+                        LOCK,
+                        CREATE_MOVED,
+                        TAKE_DEFAULT_ROWS.formatted(from, to),
+                        CREATE_PARTITION.formatted(tableName(month), from, to),
+                        INSERT_MOVED);
+        return pool.withTransaction(
+                c -> {
+                    Uni<Void> executed = Uni.createFrom().voidItem();
+                    for (String sql : statements)
+                        executed =
+                                executed.call(
+                                        v -> {
+                                            debug(
+                                                    LOG,
+                                                    () -> "Executing statement %s".formatted(sql));
+                                            return c.query(sql).execute();
+                                        });
+                    return executed;
+                });
+    }
+
+    @Override
+    public Uni<Void> detachPartition(YearMonth month) {
+        return execute(DETACH_PARTITION.formatted(tableName(month)));
+    }
+
+    private static String tableName(YearMonth month) {
+        return PREFIX + month.format(SUFFIX);
+    }
+
+    private Uni<Void> execute(String sql) {
+        debug(LOG, () -> "Executing statement %s".formatted(sql));
+        return pool.query(sql).execute().replaceWithVoid();
+    }
+}
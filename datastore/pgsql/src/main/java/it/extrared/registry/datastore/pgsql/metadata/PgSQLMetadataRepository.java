@@ -20,20 +20,24 @@ import static it.extrared.registry.utils.CommonUtils.debug;
 import com.fasterxml.jackson.databind.JsonNode;
 import io.smallrye.mutiny.Uni;
 import io.smallrye.mutiny.tuples.Tuple2;
-import io.smallrye.mutiny.unchecked.Unchecked;
+import io.vertx.core.json.JsonArray;
 import io.vertx.mutiny.sqlclient.*;
 import it.extrared.registry.MetadataRegistryConfig;
 import it.extrared.registry.jsonschema.Schema;
 import it.extrared.registry.jsonschema.SchemaCache;
+import it.extrared.registry.jsonschema.SchemaProperty;
 import it.extrared.registry.metadata.DPPMetadataEntry;
 import it.extrared.registry.metadata.DPPMetadataRepository;
 import it.extrared.registry.utils.CommonUtils;
-import it.extrared.registry.utils.JsonUtils;
+import it.extrared.registry.utils.JsonCodec;
+import it.extrared.registry.utils.QueryTemplateCache;
 import it.extrared.registry.utils.SQLClientUtils;
+import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.function.Function;
 import org.jboss.logging.Logger;
@@ -47,33 +51,125 @@ public class PgSQLMetadataRepository implements DPPMetadataRepository {
 
     @Inject SchemaCache schemaCache;
 
-    private static final Function<Row, JsonNode> AS_JSON_META =
-            Unchecked.function(r -> JsonUtils.fromVertxJson(r.getJsonObject("metadata")));
+    @Inject JsonCodec codec;
+
+    // metadata are bound and selected as text, see JsonCodec.
+    private final Function<String, JsonNode> asJsonMeta = json -> codec.decode(json);
 
     private static final String INSERT =
             """
-            INSERT INTO dpp_metadata (registry_id,created_at,modified_at,metadata)
-            VALUES($1,$2,$3,$4)
+            INSERT INTO dpp_metadata (registry_id,created_at,modified_at,metadata,content_hash)
+            VALUES($1,$2,$3,$4::text::jsonb,$5)
             """;
 
     private static final String UPDATE =
             """
-            UPDATE dpp_metadata SET modified_at=$1, metadata=$2 WHERE
-            metadata ->> '%s' = $3
+            UPDATE dpp_metadata SET modified_at=$1, metadata=$2::text::jsonb, content_hash=$3,
+            version=version+1 WHERE upi = $4 AND version = $5
+            """;
+
+    private static final String UPSERT =
+            """
+            INSERT INTO dpp_metadata (registry_id,created_at,modified_at,metadata,content_hash)
+            VALUES($1,$2,$3,$4::text::jsonb,$5)
+            ON CONFLICT (upi) DO UPDATE SET modified_at=EXCLUDED.modified_at,
+            metadata=dpp_metadata_merge(dpp_metadata.metadata,EXCLUDED.metadata),
+            content_hash=EXCLUDED.content_hash, version=dpp_metadata.version+1
+            RETURNING registry_id,metadata::text AS metadata,created_at,modified_at,version,
+            content_hash
+            """;
+
+    private static final String SELECT_BY_UPIS =
+            """
+            SELECT DISTINCT ON (upi) registry_id,metadata::text AS metadata,created_at,modified_at,
+            version,content_hash
+            FROM dpp_metadata WHERE upi = ANY($1) ORDER BY upi, created_at DESC
+            """;
+
+    private static final String SELECT_ALL_BY_UPIS =
+            """
+            SELECT registry_id,metadata::text AS metadata,created_at,modified_at,version,content_hash
+            FROM dpp_metadata WHERE upi = ANY($1) FOR UPDATE
+            """;
+
+    // skips the rows conflicting with the unique UPI index, written meanwhile in the target shard.
+    private static final String COPY =
+            """
+            INSERT INTO dpp_metadata (registry_id,created_at,modified_at,metadata,content_hash,version)
+            VALUES($1,$2,$3,$4::text::jsonb,$5,$6) ON CONFLICT DO NOTHING
+            """;
+
+    private static final String DELETE_BY_UPIS =
+            """
+            DELETE FROM dpp_metadata WHERE upi = ANY($1)
+            """;
+
+    private static final String SELECT_UPIS =
+            """
+            SELECT DISTINCT upi FROM dpp_metadata WHERE upi > $1 ORDER BY upi LIMIT $2
+            """;
+
+    private static final String SELECT_BY_UPI =
+            """
+            SELECT registry_id,metadata::text AS metadata,created_at,modified_at,version,content_hash
+            FROM dpp_metadata WHERE upi = $1 ORDER BY created_at DESC LIMIT 1
+            """;
+
+    private static final String SELECT_CURRENT_BY_UPI =
+            """
+            SELECT m.registry_id,m.metadata::text AS metadata,m.created_at,m.modified_at,m.version,
+            m.content_hash
+            FROM dpp_metadata_current c
+            JOIN dpp_metadata m ON m.id = c.id AND m.created_at = c.created_at WHERE c.upi = $1
+            """;
+
+    private static final String SELECT_CURRENT_BY_UPIS =
+            """
+            SELECT m.registry_id,m.metadata::text AS metadata,m.created_at,m.modified_at,m.version,
+            m.content_hash
+            FROM dpp_metadata_current c
+            JOIN dpp_metadata m ON m.id = c.id AND m.created_at = c.created_at
+            WHERE c.upi = ANY($1)
+            """;
+
+    private static final String SELECT_CURRENT_UPIS =
+            """
+            SELECT upi FROM dpp_metadata_current WHERE upi > $1 ORDER BY upi LIMIT $2
+            """;
+
+    private static final String SELECT_VERSIONS =
+            """
+            SELECT registry_id,metadata::text AS metadata,created_at,modified_at,version,content_hash
+            FROM dpp_metadata WHERE upi = $1 ORDER BY created_at DESC
             """;
 
+    private static final String SELECT_BY_UPI_AS_OF =
+            """
+            SELECT registry_id,metadata::text AS metadata,created_at,modified_at,version,content_hash
+            FROM dpp_metadata WHERE upi = $1 AND created_at <= $2 ORDER BY created_at DESC LIMIT 1
+            """;
+
+    private static final String SELECT_BY_FILTERS =
+            """
+            SELECT %s
+            FROM dpp_metadata WHERE %s ORDER BY created_at DESC LIMIT 1
+            """;
+
+    // SQL of the lookups by metadata fields, by schema and filtered fields.
+    private QueryTemplateCache templates;
+
+    @PostConstruct
+    void init() {
+        templates = new QueryTemplateCache(config.queryTemplateCacheSize());
+    }
+
     @Override
     public Uni<DPPMetadataEntry> findByUpi(SqlConnection conn, String upi) {
-        String sql =
-                        """
-                SELECT registry_id,metadata,created_at,modified_at
-                FROM dpp_metadata WHERE metadata ->> '%s' = $1 ORDER BY created_at DESC LIMIT 1
-                """
-                        .formatted(config.upiFieldName());
+        String sql = config.currentTableEnabled() ? SELECT_CURRENT_BY_UPI : SELECT_BY_UPI;
         debug(LOG, () -> "Executing query %s".formatted(sql));
         Uni<RowSet<DPPMetadataEntry>> rs =
                 conn.preparedQuery(sql)
-                        .mapping(r -> ROW_MAPPER.apply(r, AS_JSON_META))
+                        .mapping(r -> ROW_MAPPER.apply(r, asJsonMeta))
                         .execute(Tuple.of(upi));
         return rs.map(SQLClientUtils::firstOrNull)
                 .invoke(
@@ -85,27 +181,143 @@ public class PgSQLMetadataRepository implements DPPMetadataRepository {
                                                         .formatted(upi, m)));
     }
 
+    @Override
+    public Uni<List<DPPMetadataEntry>> findByUpis(SqlConnection conn, Collection<String> upis) {
+        String sql = config.currentTableEnabled() ? SELECT_CURRENT_BY_UPIS : SELECT_BY_UPIS;
+        debug(LOG, () -> "Executing query %s".formatted(sql));
+        Uni<RowSet<DPPMetadataEntry>> rs =
+                conn.preparedQuery(sql)
+                        .mapping(r -> ROW_MAPPER.apply(r, asJsonMeta))
+                        .execute(Tuple.of(upis.toArray(new String[0])));
+        return rs.map(SQLClientUtils::toList)
+                .invoke(
+                        l ->
+                                debug(
+                                        LOG,
+                                        () ->
+                                                "Retrieved %s metadata entries by upis"
+                                                        .formatted(l.size())));
+    }
+
+    @Override
+    public Uni<List<DPPMetadataEntry>> findAllByUpis(SqlConnection conn, Collection<String> upis) {
+        debug(LOG, () -> "Executing query %s".formatted(SELECT_ALL_BY_UPIS));
+        return conn.preparedQuery(SELECT_ALL_BY_UPIS)
+                .mapping(r -> ROW_MAPPER.apply(r, asJsonMeta))
+                .execute(Tuple.of(upis.toArray(new String[0])))
+                .map(SQLClientUtils::toList);
+    }
+
+    @Override
+    public Uni<Void> copyAll(SqlConnection conn, List<DPPMetadataEntry> metadata) {
+        debug(LOG, () -> "Copying %s metadata entries".formatted(metadata.size()));
+        if (metadata.isEmpty()) return Uni.createFrom().voidItem();
+        List<Tuple> batch = new ArrayList<>(metadata.size());
+        for (DPPMetadataEntry m : metadata)
+            batch.add(
+                    Tuple.of(
+                            m.getRegistryId(),
+                            m.getCreatedAt(),
+                            m.getModifiedAt(),
+                            codec.encode(m.getMetadata()),
+                            m.getContentHash(),
+                            m.getVersion()));
+        return conn.preparedQuery(COPY).executeBatch(batch).replaceWithVoid();
+    }
+
+    @Override
+    public Uni<Void> deleteByUpis(SqlConnection conn, Collection<String> upis) {
+        debug(LOG, () -> "Deleting the metadata entries of %s upis".formatted(upis.size()));
+        return conn.preparedQuery(DELETE_BY_UPIS)
+                .execute(Tuple.of(upis.toArray(new String[0])))
+                .replaceWithVoid();
+    }
+
+    @Override
+    public Uni<List<String>> findUpis(SqlConnection conn, String after, int limit) {
+        String sql = config.currentTableEnabled() ? SELECT_CURRENT_UPIS : SELECT_UPIS;
+        debug(LOG, () -> "Executing query %s".formatted(sql));
+        Uni<RowSet<String>> rs =
+                conn.preparedQuery(sql)
+                        .mapping(r -> r.getString("upi"))
+                        .execute(Tuple.of(after != null ? after : "", limit));
+        return rs.map(SQLClientUtils::toList);
+    }
+
+    @Override
+    public Uni<List<DPPMetadataEntry>> findVersions(SqlConnection conn, String upi) {
+        debug(LOG, () -> "Executing query %s".formatted(SELECT_VERSIONS));
+        return conn.preparedQuery(SELECT_VERSIONS)
+                .mapping(r -> ROW_MAPPER.apply(r, asJsonMeta))
+                .execute(Tuple.of(upi))
+                .map(SQLClientUtils::toList);
+    }
+
+    @Override
+    public Uni<DPPMetadataEntry> findByUpiAsOf(SqlConnection conn, String upi, LocalDateTime at) {
+        debug(LOG, () -> "Executing query %s".formatted(SELECT_BY_UPI_AS_OF));
+        return conn.preparedQuery(SELECT_BY_UPI_AS_OF)
+                .mapping(r -> ROW_MAPPER.apply(r, asJsonMeta))
+                .execute(Tuple.of(upi, at))
+                .map(SQLClientUtils::firstOrNull);
+    }
+
     @Override
     public Uni<DPPMetadataEntry> findBy(SqlConnection conn, List<Tuple2<String, Object>> filters) {
-        String sql =
-                """
-                SELECT registry_id,metadata,created_at,modified_at
-                FROM dpp_metadata WHERE %s ORDER BY created_at DESC LIMIT 1
-                """;
-        List<Object> params = filters.stream().map(Tuple2::getItem2).toList();
+        return findBy(conn, filters, null);
+    }
+
+    @Override
+    public Uni<DPPMetadataEntry> findBy(
+            SqlConnection conn, List<Tuple2<String, Object>> filters, List<String> fields) {
+        List<String> filterFields = filters.stream().map(Tuple2::getItem1).toList();
+        Function<Row, DPPMetadataEntry> mapper =
+                fields != null
+                        ? r -> DPPMetadataRepository.mapProjection(r, fields, asJsonMeta)
+                        : r -> ROW_MAPPER.apply(r, asJsonMeta);
+        List<Object> params =
+                filters.stream()
+                        .map(Tuple2::getItem2)
+                        .map(PgSQLMetadataRepository::toParam)
+                        .toList();
         Uni<RowSet<DPPMetadataEntry>> rs =
                 schemaCache
                         .get()
-                        .map(s -> jsonFilter(filters, s))
+                        .map(
+                                s ->
+                                        templates.get(
+                                                s,
+                                                0,
+                                                filterFields,
+                                                fields,
+                                                () ->
+                                                        SELECT_BY_FILTERS.formatted(
+                                                                selectColumns(fields),
+                                                                jsonFilter(filters, s))))
                         .flatMap(
-                                sf ->
-                                        conn.preparedQuery(sql.formatted(sf))
-                                                .mapping(r -> ROW_MAPPER.apply(r, AS_JSON_META))
+                                sql ->
+                                        conn.preparedQuery(sql)
+                                                .mapping(mapper)
                                                 .execute(Tuple.wrap(new ArrayList<>(params))));
         return rs.map(SQLClientUtils::firstOrNull)
                 .invoke(m -> debug(LOG, () -> "Retrieved metadata by filters is %s".formatted(m)));
     }
 
+    // the metadata column or, when fields are given, a column for each of them.
+    private static String selectColumns(List<String> fields) {
+        List<String> columns = new ArrayList<>();
+        columns.add("registry_id");
+        if (fields == null) columns.add("metadata::text AS metadata");
+        else
+            for (int i = 0; i < fields.size(); i++)
+                columns.add(
+                        "(metadata -> '%s')::text AS %s%s"
+                                .formatted(fields.get(i), PROJECTION_PREFIX, i));
+        columns.add("created_at");
+        columns.add("modified_at");
+        return String.join(",", columns);
+    }
+
     private String jsonFilter(List<Tuple2<String, Object>> filters, Schema schema) {
         List<String> jsonFilters = new ArrayList<>();
         for (int i = 0; i < filters.size(); i++) {
@@ -118,23 +330,42 @@ public class PgSQLMetadataRepository implements DPPMetadataRepository {
     }
 
     private String jsonCondition(Tuple2<String, Object> tuple, Schema schema, int paramIndex) {
-        String jproperty = tuple.getItem1();
-        String type = schema.getPropertyType(jproperty);
-        String pgType = toPgSQLJsonType(type);
-        return "metadata ->> '%s'::%s = $%s".formatted(jproperty, pgType, paramIndex);
+        SchemaProperty property = schema.requireProperty(tuple.getItem1());
+        String operator = property.isArray() ? "@>" : "=";
+        return "%s %s $%s"
+                .formatted(
+                        jsonExpression(property.getName(), property.getType()),
+                        operator,
+                        paramIndex);
     }
 
-    private String toPgSQLJsonType(String schemaType) {
+    /**
+     * Build the SQL expression extracting a JSON field from the metadata column. Managed indexes
+     * (see {@link PgSQLMetadataIndexRepository}) are built on the same expressions, so that the
+     * planner can match them with the findBy predicates.
+     *
+     * @param jproperty the JSON field.
+     * @param schemaType the JSON schema type of the field.
+     * @return the SQL expression.
+     */
+    static String jsonExpression(String jproperty, String schemaType) {
         return switch (schemaType) {
-            case "string" -> "text";
-            case "boolean" -> "boolean";
-            case "number", "integer" -> "numeric";
+            case "string" -> "(metadata ->> '%s')".formatted(jproperty);
+            case "boolean" -> "((metadata ->> '%s')::boolean)".formatted(jproperty);
+            case "number", "integer" -> "((metadata ->> '%s')::numeric)".formatted(jproperty);
+            case "array" -> "(metadata -> '%s')".formatted(jproperty);
             default ->
                     throw new UnsupportedOperationException(
                             "Unsupported type %s".formatted(schemaType));
         };
     }
 
+    private static Object toParam(Object value) {
+        // array filters are matched by containment against a JSONB array.
+        if (value instanceof List<?> l) return new JsonArray(new ArrayList<>(l));
+        return value;
+    }
+
     @Override
     public Uni<DPPMetadataEntry> save(SqlConnection conn, DPPMetadataEntry metadata) {
         debug(LOG, () -> "Persisting a metadata entry %s".formatted(metadata));
@@ -146,7 +377,8 @@ public class PgSQLMetadataRepository implements DPPMetadataRepository {
                                         metadata.getRegistryId(),
                                         metadata.getCreatedAt(),
                                         metadata.getModifiedAt(),
-                                        JsonUtils.toVertxJson(metadata.getMetadata())));
+                                        codec.encode(metadata.getMetadata()),
+                                        metadata.getContentHash()));
         return row.map(r -> metadata)
                 .invoke(
                         m ->
@@ -157,19 +389,95 @@ public class PgSQLMetadataRepository implements DPPMetadataRepository {
                                                         .formatted(m)));
     }
 
+    @Override
+    public Uni<List<DPPMetadataEntry>> saveAll(
+            SqlConnection conn, List<DPPMetadataEntry> metadata) {
+        debug(LOG, () -> "Persisting %s metadata entries".formatted(metadata.size()));
+        List<Tuple> batch = new ArrayList<>(metadata.size());
+        for (DPPMetadataEntry m : metadata) {
+            m.setRegistryId(CommonUtils.generateTimeBasedUUID());
+            batch.add(
+                    Tuple.of(
+                            m.getRegistryId(),
+                            m.getCreatedAt(),
+                            m.getModifiedAt(),
+                            codec.encode(m.getMetadata()),
+                            m.getContentHash()));
+        }
+        return conn.preparedQuery(INSERT).executeBatch(batch).map(r -> metadata);
+    }
+
+    @Override
+    public Uni<List<DPPMetadataEntry>> updateAll(
+            SqlConnection conn, List<DPPMetadataEntry> metadata) {
+        debug(LOG, () -> "Updating %s metadata entries".formatted(metadata.size()));
+        List<Tuple> batch = new ArrayList<>(metadata.size());
+        for (DPPMetadataEntry m : metadata) {
+            batch.add(
+                    Tuple.of(
+                            m.getModifiedAt(),
+                            codec.encode(m.getMetadata()),
+                            m.getContentHash(),
+                            m.getMetadata().get(config.upiFieldName()).asText(),
+                            m.getVersion()));
+        }
+        return conn.preparedQuery(UPDATE)
+                .executeBatch(batch)
+                .map(r -> SQLClientUtils.checkUpdated(r, metadata, upiOf()));
+    }
+
+    @Override
+    public Uni<DPPMetadataEntry> upsert(SqlConnection conn, DPPMetadataEntry metadata) {
+        debug(LOG, () -> "Upserting metadata entry %s".formatted(metadata));
+        Uni<RowSet<DPPMetadataEntry>> rs =
+                conn.preparedQuery(UPSERT)
+                        .mapping(r -> ROW_MAPPER.apply(r, asJsonMeta))
+                        .execute(
+                                Tuple.of(
+                                        CommonUtils.generateTimeBasedUUID(),
+                                        metadata.getCreatedAt(),
+                                        metadata.getModifiedAt(),
+                                        codec.encode(metadata.getMetadata()),
+                                        metadata.getContentHash()));
+        return rs.map(SQLClientUtils::firstOrNull)
+                .map(written -> copyWritten(written, metadata))
+                .invoke(
+                        m ->
+                                debug(
+                                        LOG,
+                                        () ->
+                                                "Metadata entry %s upserted successfully"
+                                                        .formatted(m)));
+    }
+
+    private Function<DPPMetadataEntry, String> upiOf() {
+        return m -> m.getMetadata().get(config.upiFieldName()).asText();
+    }
+
+    private DPPMetadataEntry copyWritten(DPPMetadataEntry written, DPPMetadataEntry target) {
+        target.setRegistryId(written.getRegistryId());
+        target.setVersion(written.getVersion());
+        target.setMetadata(written.getMetadata());
+        target.setCreatedAt(written.getCreatedAt());
+        target.setModifiedAt(written.getModifiedAt());
+        return target;
+    }
+
     @Override
     public Uni<DPPMetadataEntry> update(SqlConnection con, DPPMetadataEntry metadata) {
         metadata.setModifiedAt(LocalDateTime.now());
         debug(LOG, () -> "Updating metadata entry %s".formatted(metadata));
         String upi = metadata.getMetadata().get(config.upiFieldName()).asText();
         Uni<RowSet<Row>> row =
-                con.preparedQuery(UPDATE.formatted(config.upiFieldName()))
+                con.preparedQuery(UPDATE)
                         .execute(
                                 Tuple.of(
                                         metadata.getModifiedAt(),
-                                        JsonUtils.toVertxJson(metadata.getMetadata()),
-                                        upi));
-        return row.map(r -> metadata)
+                                        codec.encode(metadata.getMetadata()),
+                                        metadata.getContentHash(),
+                                        upi,
+                                        metadata.getVersion()));
+        return row.map(r -> SQLClientUtils.checkUpdated(r, List.of(metadata), upiOf()).getFirst())
                 .invoke(
                         m ->
                                 debug(
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.datastore.pgsql.metadata;
+
+import static it.extrared.registry.utils.CommonUtils.debug;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.SqlConnection;
+import it.extrared.registry.metadata.UpiColumnRepository;
+import jakarta.enterprise.context.ApplicationScoped;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.jboss.logging.Logger;
+
+/**
+ * PostgreSQL implementation of the {@link UpiColumnRepository}. Since a generation expression can
+ * only be replaced from PostgreSQL 17, the column is dropped and added again, after saving the
+ * definitions of the indexes and triggers depending on it, which are then created again. DDL being
+ * transactional, the change is applied entirely or not at all.
+ */
+@ApplicationScoped
+public class PgSQLUpiColumnRepository implements UpiColumnRepository {
+
+    private static final String SELECT_EXPRESSION =
+            """
+            SELECT pg_get_expr(d.adbin, d.adrelid)
+            FROM pg_attrdef d
+            JOIN pg_attribute a ON a.attrelid = d.adrelid AND a.attnum = d.adnum
+            WHERE d.adrelid = 'dpp_metadata'::regclass AND a.attname = 'upi'
+            """;
+
+    // the indexes on partitions and the triggers cloned to them follow the ones of the table.
+    private static final String SELECT_DEPENDENTS =
+            """
+            SELECT t.tgname,
+            CASE WHEN t.oid IS NULL THEN pg_get_indexdef(dp.objid) ELSE pg_get_triggerdef(t.oid) END
+            FROM pg_depend dp
+            JOIN pg_attribute a ON a.attrelid = dp.refobjid AND a.attnum = dp.refobjsubid
+            LEFT JOIN pg_trigger t ON dp.classid = 'pg_trigger'::regclass AND t.oid = dp.objid
+            WHERE dp.refclassid = 'pg_class'::regclass AND dp.refobjid = 'dpp_metadata'::regclass
+            AND a.attname = 'upi' AND dp.classid IN ('pg_class'::regclass, 'pg_trigger'::regclass)
+            ORDER BY dp.classid, dp.objid
+            """;
+
+    private static final String DROP_TRIGGER = "DROP TRIGGER \"%s\" ON dpp_metadata";
+
+    private static final String DROP_COLUMN = "ALTER TABLE dpp_metadata DROP COLUMN upi";
+
+    private static final String ADD_COLUMN =
+            """
+            ALTER TABLE dpp_metadata
+            ADD COLUMN upi TEXT GENERATED ALWAYS AS (metadata ->> '%s') STORED
+            """;
+
+    // the pointers of the current table are keyed by the values of the previous column.
+    private static final String REFILL_CURRENT =
+            """
+            DO $$
+            BEGIN
+                IF to_regclass('dpp_metadata_current') IS NOT NULL THEN
+                    TRUNCATE dpp_metadata_current;
+                    INSERT INTO dpp_metadata_current (upi, id, created_at)
+                    SELECT DISTINCT ON (upi) upi, id, created_at FROM dpp_metadata
+                    WHERE upi IS NOT NULL AND created_at IS NOT NULL
+                    ORDER BY upi, created_at DESC, id DESC;
+                END IF;
+            END $$
+            """;
+
+    private static final Pattern FIELD = Pattern.compile("->>\\s*'([^']*)'");
+
+    private static final Logger LOG = Logger.getLogger(PgSQLUpiColumnRepository.class);
+
+    @Override
+    public Uni<String> findUpiField(SqlConnection conn) {
+        return conn.query(SELECT_EXPRESSION)
+                .execute()
+                .map(
+                        rows -> {
+                            if (rows.size() == 0) return null;
+                            String expression = rows.iterator().next().getString(0);
+                            debug(
+                                    LOG,
+                                    () ->
+                                            "The upi column is generated as %s"
+                                                    .formatted(expression));
+                            Matcher m = FIELD.matcher(expression);
+                            return m.find() ? m.group(1) : null;
+                        });
+    }
+
+    @Override
+    public Uni<Void> changeUpiField(SqlConnection conn, String field) {
+        return conn.query(SELECT_DEPENDENTS)
+                .execute()
+                .flatMap(
+                        rows -> {
+                            List<String> statements = new ArrayList<>();
+                            List<String> recreate = new ArrayList<>();
+                            for (Row r : rows) {
+                                String trigger = r.getString(0);
+                                if (trigger != null)
+                                    statements.add(DROP_TRIGGER.formatted(trigger));
+                                // an index of a partitioned table is described as ON ONLY it.
+                                recreate.add(r.getString(1).replace(" ON ONLY ", " ON "));
+                            }
+                            statements.add(DROP_COLUMN);
+                            statements.add(ADD_COLUMN.formatted(field));
+                            statements.addAll(recreate);
+                            statements.add(REFILL_CURRENT);
+                            return execute(conn, statements);
+                        });
+    }
+
+    private static Uni<Void> execute(SqlConnection conn, List<String> statements) {
+        Uni<Void> executed = Uni.createFrom().voidItem();
+        for (String sql : statements)
+            executed =
+                    executed.call(
+                            v -> {
+                                debug(LOG, () -> "Executing statement %s".formatted(sql));
+                                return conn.query(sql).execute();
+                            });
+        return executed;
+    }
+}
@@ -0,0 +1,17 @@
+-- Optional, required by the bulk import (POST /admin/v1/import). The merge function is the same
+-- defined by upsert.sql, the aggregate merges several entries of the same UPI in input order.
+CREATE OR REPLACE FUNCTION dpp_metadata_merge(base JSONB, overlay JSONB) RETURNS JSONB AS $$
+SELECT base || COALESCE(jsonb_object_agg(o.key,
+    CASE WHEN jsonb_typeof(base -> o.key) = 'array' AND jsonb_typeof(o.value) = 'array'
+    THEN (base -> o.key) || COALESCE((SELECT jsonb_agg(i.value ORDER BY i.ord)
+        FROM jsonb_array_elements(o.value) WITH ORDINALITY AS i(value, ord)
+        WHERE NOT (base -> o.key) @> jsonb_build_array(i.value)), '[]'::jsonb)
+    ELSE o.value END), '{}'::jsonb)
+FROM jsonb_each(overlay) AS o
+$$ LANGUAGE SQL IMMUTABLE;
+
+CREATE OR REPLACE AGGREGATE dpp_metadata_merge_agg(JSONB) (
+    SFUNC = dpp_metadata_merge,
+    STYPE = JSONB,
+    INITCOND = '{}'
+);
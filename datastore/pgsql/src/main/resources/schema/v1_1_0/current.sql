@@ -0,0 +1,41 @@
+-- Optional, required by registry.current-table-enabled=true. dpp_metadata_current points to the
+-- most recent row of each UPI and is kept up to date by triggers in the transaction writing
+-- dpp_metadata, so that the lookups by UPI read a single row instead of sorting all its versions.
+-- The pointer holds created_at as well, so that it also prunes the partitions of dpp_metadata
+-- when partitioning.sql is applied.
+UPDATE dpp_metadata SET created_at = COALESCE(modified_at, CURRENT_TIMESTAMP)
+WHERE created_at IS NULL;
+
+CREATE TABLE IF NOT EXISTS dpp_metadata_current (
+    upi TEXT PRIMARY KEY,
+    id BIGINT NOT NULL,
+    created_at TIMESTAMP NOT NULL
+);
+
+CREATE OR REPLACE FUNCTION dpp_metadata_current_insert() RETURNS TRIGGER AS $$
+BEGIN
+    INSERT INTO dpp_metadata_current (upi, id, created_at) VALUES (NEW.upi, NEW.id, NEW.created_at)
+    ON CONFLICT (upi) DO UPDATE SET id = EXCLUDED.id, created_at = EXCLUDED.created_at
+    WHERE dpp_metadata_current.created_at <= EXCLUDED.created_at;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+-- the pointer is dropped with the row it points to, e.g. when a UPI is moved to another shard.
+CREATE OR REPLACE FUNCTION dpp_metadata_current_delete() RETURNS TRIGGER AS $$
+BEGIN
+    DELETE FROM dpp_metadata_current WHERE upi = OLD.upi AND id = OLD.id;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE TRIGGER dpp_metadata_current_insert AFTER INSERT ON dpp_metadata
+FOR EACH ROW WHEN (NEW.upi IS NOT NULL AND NEW.created_at IS NOT NULL) EXECUTE FUNCTION dpp_metadata_current_insert();
+
+CREATE OR REPLACE TRIGGER dpp_metadata_current_delete AFTER DELETE ON dpp_metadata
+FOR EACH ROW EXECUTE FUNCTION dpp_metadata_current_delete();
+
+INSERT INTO dpp_metadata_current (upi, id, created_at)
+SELECT DISTINCT ON (upi) upi, id, created_at FROM dpp_metadata WHERE upi IS NOT NULL AND created_at IS NOT NULL
+ORDER BY upi, created_at DESC, id DESC
+ON CONFLICT (upi) DO NOTHING;
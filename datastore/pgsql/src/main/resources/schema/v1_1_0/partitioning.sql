@@ -0,0 +1,73 @@
+-- Optional, required by registry.partitioning-enabled=true. It turns dpp_metadata into a table
+-- partitioned by range of created_at: the existing rows become the dpp_metadata_history partition,
+-- bounded by the end of the month of the most recent row, or of the current month, and the
+-- partitions of the two following months are created. The next ones are then created by the
+-- registry and rows falling outside of them are stored in dpp_metadata_default. It cannot be
+-- applied together with upsert.sql, since a unique index on a partitioned table must include
+-- created_at. It can be applied before or after current.sql: the triggers of dpp_metadata are
+-- moved to the partitioned table, and the indexes managed by the registry are renamed, so that
+-- the registry creates them again on the partitioned table.
+DO $$
+DECLARE
+    history_end DATE;
+    month_start DATE;
+    upi_expression TEXT;
+    r RECORD;
+    triggers TEXT[] := '{}';
+    trigger_def TEXT;
+BEGIN
+    UPDATE dpp_metadata SET created_at = COALESCE(modified_at, CURRENT_TIMESTAMP)
+    WHERE created_at IS NULL;
+    SELECT date_trunc('month', GREATEST(max(created_at), CURRENT_TIMESTAMP)) + INTERVAL '1 month'
+    INTO history_end FROM dpp_metadata;
+    -- the upi column may have been generated from a field other than upi by the registry.
+    SELECT pg_get_expr(d.adbin, d.adrelid) INTO upi_expression
+    FROM pg_attrdef d
+    JOIN pg_attribute a ON a.attrelid = d.adrelid AND a.attnum = d.adnum
+    WHERE d.adrelid = 'dpp_metadata'::regclass AND a.attname = 'upi';
+
+    FOR r IN SELECT t.tgname, pg_get_triggerdef(t.oid) AS def FROM pg_trigger t
+        WHERE t.tgrelid = 'dpp_metadata'::regclass AND NOT t.tgisinternal LOOP
+        triggers := triggers || r.def;
+        EXECUTE format('DROP TRIGGER %I ON dpp_metadata', r.tgname);
+    END LOOP;
+    FOR r IN SELECT c.relname FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid
+        WHERE i.indrelid = 'dpp_metadata'::regclass AND c.relname LIKE 'dpp\_auto\_idx\_%' LOOP
+        EXECUTE format('ALTER INDEX %I RENAME TO %I', r.relname,
+            'dpp_history_idx_' || substr(r.relname, length('dpp_auto_idx_') + 1));
+    END LOOP;
+
+    ALTER TABLE dpp_metadata RENAME TO dpp_metadata_history;
+    ALTER INDEX dpp_metadata_upi_created_at_idx RENAME TO dpp_metadata_history_upi_created_at_idx;
+    ALTER TABLE dpp_metadata_history ALTER COLUMN created_at SET NOT NULL;
+    ALTER TABLE dpp_metadata_history DROP CONSTRAINT dpp_metadata_pkey;
+    ALTER TABLE dpp_metadata_history ADD PRIMARY KEY (id, created_at);
+
+    EXECUTE format('CREATE TABLE dpp_metadata ('
+        'id BIGINT NOT NULL DEFAULT nextval(''dpp_metadata_seq''), '
+        'registry_id VARCHAR(36) NOT NULL, '
+        'created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, '
+        'modified_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, '
+        'metadata JSONB NOT NULL, '
+        'upi TEXT GENERATED ALWAYS AS (%s) STORED, '
+        'version BIGINT NOT NULL DEFAULT 0, '
+        'content_hash CHAR(64), '
+        'PRIMARY KEY (id, created_at)'
+        ') PARTITION BY RANGE (created_at)', upi_expression);
+
+    EXECUTE format('ALTER TABLE dpp_metadata ATTACH PARTITION dpp_metadata_history '
+        'FOR VALUES FROM (MINVALUE) TO (%L)', history_end);
+    FOR i IN 0..1 LOOP
+        month_start := history_end + make_interval(months => i);
+        EXECUTE format('CREATE TABLE %I PARTITION OF dpp_metadata FOR VALUES FROM (%L) TO (%L)',
+            'dpp_metadata_p' || to_char(month_start, 'YYYY_MM'), month_start,
+            month_start + INTERVAL '1 month');
+    END LOOP;
+    CREATE TABLE dpp_metadata_default PARTITION OF dpp_metadata DEFAULT;
+    CREATE INDEX dpp_metadata_upi_created_at_idx ON dpp_metadata (upi, created_at DESC);
+    -- the definitions name dpp_metadata, now the partitioned table: the triggers created on it are
+    -- cloned to every partition.
+    FOREACH trigger_def IN ARRAY triggers LOOP
+        EXECUTE trigger_def;
+    END LOOP;
+END $$;
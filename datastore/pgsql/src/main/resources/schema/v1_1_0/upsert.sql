@@ -0,0 +1,15 @@
+-- Optional, required by registry.upsert-enabled=true. It can be applied only together with the
+-- MODIFY update strategy, since APPEND_WITH_NEW_ID stores several rows for the same UPI.
+CREATE UNIQUE INDEX IF NOT EXISTS dpp_metadata_upi_uq ON dpp_metadata (upi);
+
+-- Server side counterpart of JsonMerger used by the upsert statement: overlay values replace the
+-- base ones, while arrays get the overlay items missing from the base array appended.
+CREATE OR REPLACE FUNCTION dpp_metadata_merge(base JSONB, overlay JSONB) RETURNS JSONB AS $$
+SELECT base || COALESCE(jsonb_object_agg(o.key,
+    CASE WHEN jsonb_typeof(base -> o.key) = 'array' AND jsonb_typeof(o.value) = 'array'
+    THEN (base -> o.key) || COALESCE((SELECT jsonb_agg(i.value ORDER BY i.ord)
+        FROM jsonb_array_elements(o.value) WITH ORDINALITY AS i(value, ord)
+        WHERE NOT (base -> o.key) @> jsonb_build_array(i.value)), '[]'::jsonb)
+    ELSE o.value END), '{}'::jsonb)
+FROM jsonb_each(overlay) AS o
+$$ LANGUAGE SQL IMMUTABLE;
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2024-2027 CIRPASS-2
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.extrared.registry.datastore.pgsql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.vertx.mutiny.sqlclient.Pool;
+import it.extrared.registry.metadata.BulkImportReport;
+import it.extrared.registry.metadata.BulkImporter;
+import it.extrared.registry.metadata.DPPMetadataEntry;
+import it.extrared.registry.metadata.DPPMetadataRepository;
+import jakarta.inject.Inject;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+@QuarkusTest
+public class PgSQLBulkImporterTest {
+
+    private static final String FIRST =
+            """
+            {"upi":"urn:epc:id:sgtin:9999999.107346.2024","reoId":"LEI-529900T8BM49AURSDO55","commodityCode":"85176200","dataCarrierTypes":["QR_CODE"]}
+            {"upi":"urn:epc:id:sgtin:9999999.107346.2025","reoId":"LEI-529900T8BM49AURSDO55","commodityCode":"invalid"}
+            not json
+            {"upi":"urn:epc:id:sgtin:9999999.107346.2024","reoId":"LEI-529900T8BM49AURSDO55","commodityCode":"85176200","dataCarrierTypes":["RFID"]}
+            """;
+
+    private static final String SECOND =
+            """
+            {"upi":"urn:epc:id:sgtin:9999999.107346.2024","reoId":"LEI-529900T8BM49AURSDO55","commodityCode":"85176211","dataCarrierTypes":["NFC"]}
+            {"upi":"urn:epc:id:sgtin:9999999.107346.2026","reoId":"LEI-529900T8BM49AURSDO55","commodityCode":"85176200"}
+            """;
+
+    @Inject BulkImporter importer;
+
+    @Inject DPPMetadataRepository repository;
+
+    @Inject Pool pool;
+
+    @Test
+    public void testImport() {
+        BulkImportReport first = importer.importEntries(toStream(FIRST));
+        assertEquals(4, first.getRead());
+        assertEquals(2, first.getRejected());
+        assertEquals(1, first.getInserted());
+        assertEquals(0, first.getUpdated());
+
+        BulkImportReport second = importer.importEntries(toStream(SECOND));
+        assertEquals(2, second.getRead());
+        assertEquals(0, second.getRejected());
+        assertEquals(1, second.getInserted());
+        assertEquals(1, second.getUpdated());
+
+        DPPMetadataEntry merged =
+                pool.withConnection(
+                                c ->
+                                        repository.findByUpi(
+                                                c, "urn:epc:id:sgtin:9999999.107346.2024"))
+                        .await()
+                        .indefinitely();
+        assertEquals("85176211", merged.getMetadata().get("commodityCode").asText());
+        assertEquals(3, merged.getMetadata().get("dataCarrierTypes").size());
+    }
+
+    private static ByteArrayInputStream toStream(String ndjson) {
+        return new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8));
+    }
+}
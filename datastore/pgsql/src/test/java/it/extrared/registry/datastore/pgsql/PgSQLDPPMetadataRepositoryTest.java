@@ -16,6 +16,7 @@
 package it.extrared.registry.datastore.pgsql;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -74,6 +75,22 @@ public class PgSQLDPPMetadataRepositoryTest {
                 });
     }
 
+    @Test
+    @RunOnVertxContext
+    public void testFindByProjection(UniAsserter asserter) {
+        List<Tuple2<String, Object>> filters =
+                List.of(Tuple2.of("reoId", "LEI-529900T8BM49AURSDO55"));
+        asserter.assertThat(
+                () ->
+                        pool.withConnection(
+                                c -> repository.findBy(c, filters, List.of("reoId", "notStored"))),
+                m -> {
+                    assertNotNull(m.getRegistryId());
+                    assertEquals(1, m.getMetadata().size());
+                    assertEquals("LEI-529900T8BM49AURSDO55", m.getMetadata().get("reoId").asText());
+                });
+    }
+
     @Test
     @RunOnVertxContext
     public void testFindByUpi(UniAsserter asserter) {
@@ -9,6 +9,31 @@ modified_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
 metadata JSONB NOT NULL
 );
 
+ALTER TABLE dpp_metadata
+ADD COLUMN IF NOT EXISTS upi TEXT GENERATED ALWAYS AS (metadata ->> 'upi') STORED;
+
+CREATE INDEX IF NOT EXISTS dpp_metadata_upi_created_at_idx ON dpp_metadata (upi, created_at DESC);
+
+ALTER TABLE dpp_metadata ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+
+ALTER TABLE dpp_metadata ADD COLUMN IF NOT EXISTS content_hash CHAR(64);
+
+CREATE OR REPLACE FUNCTION dpp_metadata_merge(base JSONB, overlay JSONB) RETURNS JSONB AS $$
+SELECT base || COALESCE(jsonb_object_agg(o.key,
+    CASE WHEN jsonb_typeof(base -> o.key) = 'array' AND jsonb_typeof(o.value) = 'array'
+    THEN (base -> o.key) || COALESCE((SELECT jsonb_agg(i.value ORDER BY i.ord)
+        FROM jsonb_array_elements(o.value) WITH ORDINALITY AS i(value, ord)
+        WHERE NOT (base -> o.key) @> jsonb_build_array(i.value)), '[]'::jsonb)
+    ELSE o.value END), '{}'::jsonb)
+FROM jsonb_each(overlay) AS o
+$$ LANGUAGE SQL IMMUTABLE;
+
+CREATE OR REPLACE AGGREGATE dpp_metadata_merge_agg(JSONB) (
+    SFUNC = dpp_metadata_merge,
+    STYPE = JSONB,
+    INITCOND = '{}'
+);
+
 CREATE SEQUENCE IF NOT EXISTS json_schema_seq;
 
 CREATE TABLE IF NOT EXISTS json_schemas (